@@ -0,0 +1,119 @@
+package sx.blah.discord.api;
+
+/**
+ * This determines which kinds of objects a client requests and CACHES from discord. Objects which aren't cached are
+ * neither requested nor stored, and their gateway updates are not diffed (events about them are still dispatched where
+ * possible). Use {@link #ALL} or {@link #NONE} and adjust it with the {@code with} methods, then pass it to
+ * {@link ClientBuilder#withCachePolicy(CachePolicy)}.
+ * <p>
+ * NOTE: The client's own membership and voice states are always cached, since permissions and audio depend on them.
+ */
+public class CachePolicy {
+
+	/**
+	 * Caches everything, this is the default.
+	 */
+	public static final CachePolicy ALL = new CachePolicy(true, true, true, true);
+
+	/**
+	 * Caches neither members, presences, voice states nor message history.
+	 */
+	public static final CachePolicy NONE = new CachePolicy(false, false, false, false);
+
+	private final boolean members;
+	private final boolean presences;
+	private final boolean voiceStates;
+	private final boolean messageHistory;
+
+	private CachePolicy(boolean members, boolean presences, boolean voiceStates, boolean messageHistory) {
+		this.members = members;
+		this.presences = presences;
+		this.voiceStates = voiceStates;
+		this.messageHistory = messageHistory;
+	}
+
+	/**
+	 * Sets whether guild members are cached. If not, the offline members of large guilds aren't requested and members
+	 * sent by discord aren't stored.
+	 *
+	 * @param cache Whether to cache members.
+	 * @return The new policy.
+	 */
+	public CachePolicy withMembers(boolean cache) {
+		return new CachePolicy(cache, presences, voiceStates, messageHistory);
+	}
+
+	/**
+	 * Sets whether presences and statuses are cached. If not, presence updates are skipped without being decoded.
+	 *
+	 * @param cache Whether to cache presences.
+	 * @return The new policy.
+	 */
+	public CachePolicy withPresences(boolean cache) {
+		return new CachePolicy(members, cache, voiceStates, messageHistory);
+	}
+
+	/**
+	 * Sets whether the voice states of other users are cached.
+	 *
+	 * @param cache Whether to cache voice states.
+	 * @return The new policy.
+	 */
+	public CachePolicy withVoiceStates(boolean cache) {
+		return new CachePolicy(members, presences, cache, messageHistory);
+	}
+
+	/**
+	 * Sets whether message history is loaded. If not, {@link sx.blah.discord.util.MessageList}s never request history
+	 * on their own and only hold the messages received while the client is running (see
+	 * {@link ClientBuilder#withMessageCacheLimit(long)} to bound those).
+	 *
+	 * @param cache Whether to load message history.
+	 * @return The new policy.
+	 */
+	public CachePolicy withMessageHistory(boolean cache) {
+		return new CachePolicy(members, presences, voiceStates, cache);
+	}
+
+	/**
+	 * Gets whether guild members are cached.
+	 *
+	 * @return True if cached, false if otherwise.
+	 */
+	public boolean cachesMembers() {
+		return members;
+	}
+
+	/**
+	 * Gets whether presences and statuses are cached.
+	 *
+	 * @return True if cached, false if otherwise.
+	 */
+	public boolean cachesPresences() {
+		return presences;
+	}
+
+	/**
+	 * Gets whether the voice states of other users are cached.
+	 *
+	 * @return True if cached, false if otherwise.
+	 */
+	public boolean cachesVoiceStates() {
+		return voiceStates;
+	}
+
+	/**
+	 * Gets whether message history is loaded.
+	 *
+	 * @return True if loaded, false if otherwise.
+	 */
+	public boolean cachesMessageHistory() {
+		return messageHistory;
+	}
+
+	@Override
+	public String toString() {
+		return "CachePolicy[members="+members+", presences="+presences+", voiceStates="+voiceStates
+				+", messageHistory="+messageHistory+"]";
+	}
+}
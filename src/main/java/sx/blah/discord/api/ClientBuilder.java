@@ -1,7 +1,11 @@
 package sx.blah.discord.api;
 
+import sx.blah.discord.api.events.DispatchStrategy;
 import sx.blah.discord.api.internal.DiscordClientImpl;
+import sx.blah.discord.api.internal.EventLanes;
+import sx.blah.discord.api.internal.Requests;
 import sx.blah.discord.util.DiscordException;
+import sx.blah.discord.util.MessageCacheManager;
 
 /**
  * Use this as a factory to create {@link IDiscordClient} instances
@@ -15,6 +19,22 @@ public class ClientBuilder {
 	private String botToken;
 	private boolean isDaemon = false;
 	private int reconnectAttempts = 4;
+	private boolean transportCompression = false;
+	private int shardCount = 1;
+	private int firstShard = 0;
+	private int lastShard = -1;
+	private int eventLaneCount = EventLanes.DEFAULT_LANE_COUNT;
+	private int eventLaneCapacity = EventLanes.DEFAULT_QUEUE_CAPACITY;
+	private DispatchStrategy dispatchStrategy = null;
+	private long messageCacheSize = MessageCacheManager.UNLIMITED;
+	private long messageCacheBytes = MessageCacheManager.UNLIMITED;
+	private boolean compactMessageCache = false;
+	private boolean lazyHistory = false;
+	private int historyPrefetchCount = 0;
+	private int maxConnections = Requests.DEFAULT_MAX_CONNECTIONS;
+	private long connectionKeepAlive = Requests.DEFAULT_KEEP_ALIVE;
+	private long idleConnectionTimeout = Requests.DEFAULT_IDLE_TIMEOUT;
+	private CachePolicy cachePolicy = CachePolicy.ALL;
 
 	/**
 	 * Sets the login info for the client.
@@ -102,6 +122,166 @@ public class ClientBuilder {
 		return this;
 	}
 
+	/**
+	 * Makes the client request zlib-stream transport compression from the gateway (it is NOT compressed by default).
+	 * The whole connection is then compressed as a single zlib stream rather than compressing large payloads
+	 * individually, which considerably reduces the inbound bandwidth of busy clients.
+	 *
+	 * @return The instance of the builder.
+	 */
+	public ClientBuilder withTransportCompression() {
+		this.transportCompression = true;
+		return this;
+	}
+
+	/**
+	 * Splits the bot over several gateway connections (shards), each one handling a subset of the bot's guilds. This
+	 * client will handle every shard unless {@link #withShardRange(int, int)} is used.
+	 *
+	 * @param shardCount The total amount of shards.
+	 * @return The instance of the builder.
+	 */
+	public ClientBuilder withShards(int shardCount) {
+		this.shardCount = shardCount;
+		return this;
+	}
+
+	/**
+	 * Makes the client only handle some of the bot's shards, this allows for the shards to be split over several
+	 * processes. The total amount of shards is set with {@link #withShards(int)}.
+	 *
+	 * @param from The first shard handled by this client (inclusive).
+	 * @param to The last shard handled by this client (inclusive).
+	 * @return The instance of the builder.
+	 */
+	public ClientBuilder withShardRange(int from, int to) {
+		this.firstShard = from;
+		this.lastShard = to;
+		return this;
+	}
+
+	/**
+	 * Configures how gateway events are processed. Events are processed on several lanes (threads) in parallel, where
+	 * all events of a guild are processed in order on the same lane.
+	 *
+	 * @param laneCount The amount of lanes. Setting this to any value below 1 will make events be processed on the
+	 * websocket's thread.
+	 * @param queueCapacity The maximum amount of events waiting on a lane, when a lane is full the websocket waits until
+	 * there is room again.
+	 * @return The instance of the builder.
+	 */
+	public ClientBuilder withEventLanes(int laneCount, int queueCapacity) {
+		this.eventLaneCount = laneCount;
+		this.eventLaneCapacity = queueCapacity;
+		return this;
+	}
+
+	/**
+	 * Sets how event listeners are called. By default, listeners are called on an unbounded pool of threads
+	 * ({@link DispatchStrategy#unbounded()}).
+	 * NOTE: Listeners which block (i.e. using {@link sx.blah.discord.api.events.EventDispatcher#waitFor(Class)}) occupy
+	 * a worker while they wait, so bounded strategies should only be used if listeners never block.
+	 *
+	 * @param strategy The dispatch strategy, see {@link DispatchStrategy#pooled(int, int, DispatchStrategy.RejectionPolicy)},
+	 * {@link DispatchStrategy#serialPerListener(int, int, DispatchStrategy.RejectionPolicy)} and
+	 * {@link DispatchStrategy#sameThread()}.
+	 * @return The instance of the builder.
+	 */
+	public ClientBuilder withDispatchStrategy(DispatchStrategy strategy) {
+		this.dispatchStrategy = strategy;
+		return this;
+	}
+
+	/**
+	 * Limits the total amount of messages cached by all channels (there is no limit by default). When the limit is
+	 * exceeded, messages of the least recently used channels are evicted first. This applies in addition to each
+	 * {@link sx.blah.discord.util.MessageList}'s own capacity. With a limit, channel history is still loaded
+	 * automatically when the client is in more than {@link sx.blah.discord.util.MessageList#MAX_GUILD_COUNT} guilds.
+	 *
+	 * @param maxMessages The maximum amount of cached messages, or {@link MessageCacheManager#UNLIMITED}.
+	 * @return The instance of the builder.
+	 */
+	public ClientBuilder withMessageCacheLimit(long maxMessages) {
+		this.messageCacheSize = maxMessages;
+		return this;
+	}
+
+	/**
+	 * Limits the estimated memory used by the messages cached by all channels (there is no limit by default). When the
+	 * limit is exceeded, messages of the least recently used channels are evicted first. With a limit, channel history is
+	 * still loaded automatically when the client is in more than {@link sx.blah.discord.util.MessageList#MAX_GUILD_COUNT}
+	 * guilds.
+	 *
+	 * @param maxBytes The maximum estimated memory (in bytes), or {@link MessageCacheManager#UNLIMITED}.
+	 * @return The instance of the builder.
+	 *
+	 * @see MessageCacheManager#estimateSize(sx.blah.discord.handle.obj.IMessage)
+	 */
+	public ClientBuilder withMessageCacheMemoryLimit(long maxBytes) {
+		this.messageCacheBytes = maxBytes;
+		return this;
+	}
+
+	/**
+	 * Makes the client cache messages compactly (they are NOT compact by default). Cached messages are then stored as
+	 * small records with their content in shared byte slabs, and message objects are only created when a cached
+	 * message is accessed. This considerably reduces the memory used by large message caches.
+	 *
+	 * @return The instance of the builder.
+	 */
+	public ClientBuilder withCompactMessageCache() {
+		this.compactMessageCache = true;
+		return this;
+	}
+
+	/**
+	 * Makes channels load their message history lazily (it is loaded when a channel is created by default). A channel's
+	 * history is then only loaded when its {@link sx.blah.discord.util.MessageList} is first accessed or
+	 * {@link sx.blah.discord.util.MessageList#requestHistory()} is called, which avoids flooding discord with history
+	 * requests on startup.
+	 *
+	 * @param prefetchCount The maximum amount of the most active channels whose history is loaded in the background
+	 * every {@link sx.blah.discord.util.MessageHistoryLoader#PREFETCH_INTERVAL} ms. Setting this to any value below 1
+	 * disables prefetching.
+	 * @return The instance of the builder.
+	 */
+	public ClientBuilder withLazyMessageHistory(int prefetchCount) {
+		this.lazyHistory = true;
+		this.historyPrefetchCount = prefetchCount;
+		return this;
+	}
+
+	/**
+	 * Configures the pool of http connections used by the client's REST requests. By default, it holds up to
+	 * {@link Requests#DEFAULT_MAX_CONNECTIONS} connections which are kept alive for up to
+	 * {@link Requests#DEFAULT_KEEP_ALIVE} ms and closed after being idle for {@link Requests#DEFAULT_IDLE_TIMEOUT} ms.
+	 * Each client has its own pool, which is shut down when the client logs out.
+	 *
+	 * @param maxConnections The maximum amount of pooled connections, this also bounds the amount of asynchronous
+	 * requests executed at a time.
+	 * @param keepAlive The maximum time (in ms) a connection is kept alive.
+	 * @param idleTimeout The time (in ms) after which idle connections are closed.
+	 * @return The instance of the builder.
+	 */
+	public ClientBuilder withConnectionPool(int maxConnections, long keepAlive, long idleTimeout) {
+		this.maxConnections = maxConnections;
+		this.connectionKeepAlive = keepAlive;
+		this.idleConnectionTimeout = idleTimeout;
+		return this;
+	}
+
+	/**
+	 * Sets which kinds of objects the client requests and caches (everything is cached by default). Disabling what a
+	 * bot doesn't use saves the memory of storing it and the work of processing its updates.
+	 *
+	 * @param policy The cache policy, see {@link CachePolicy#ALL} and {@link CachePolicy#NONE}.
+	 * @return The instance of the builder.
+	 */
+	public ClientBuilder withCachePolicy(CachePolicy policy) {
+		this.cachePolicy = policy;
+		return this;
+	}
+
 	/**
 	 * Creates the discord instance with the desired features
 	 *
@@ -113,10 +293,39 @@ public class ClientBuilder {
 		if ((loginInfo.length < 2 && !isBot) && botToken == null)
 			throw new DiscordException("No login info present!");
 
+		int lastShard = this.lastShard == -1 ? shardCount-1 : this.lastShard;
+		if (shardCount < 1 || firstShard < 0 || firstShard > lastShard || lastShard >= shardCount)
+			throw new DiscordException("Invalid shard range "+firstShard+"-"+lastShard+" for "+shardCount+" shards!");
+
+		if (eventLaneCount > 0 && eventLaneCapacity < 1)
+			throw new DiscordException("Event lanes must be able to hold at least one event!");
+
+		if ((messageCacheSize < 0 && messageCacheSize != MessageCacheManager.UNLIMITED)
+				|| (messageCacheBytes < 0 && messageCacheBytes != MessageCacheManager.UNLIMITED))
+			throw new DiscordException("Invalid message cache limit!");
+
+		if (maxConnections < 1 || connectionKeepAlive < 0 || idleConnectionTimeout < 0)
+			throw new DiscordException("Invalid connection pool configuration!");
+
+		if (cachePolicy == null)
+			throw new DiscordException("No cache policy present!");
+
+		//Without message history, channels never load it on creation and nothing is prefetched
+		boolean lazyHistory = this.lazyHistory || !cachePolicy.cachesMessageHistory();
+		int historyPrefetchCount = cachePolicy.cachesMessageHistory() ? this.historyPrefetchCount : 0;
+
 		if (isBot) {
-			return new DiscordClientImpl(botToken, timeoutTime, maxMissedPingCount, isDaemon, reconnectAttempts);
+			return new DiscordClientImpl(botToken, timeoutTime, maxMissedPingCount, isDaemon, reconnectAttempts,
+					transportCompression, shardCount, firstShard, lastShard, eventLaneCount, eventLaneCapacity,
+					dispatchStrategy, messageCacheSize, messageCacheBytes,
+					compactMessageCache, lazyHistory, historyPrefetchCount, maxConnections, connectionKeepAlive,
+					idleConnectionTimeout, cachePolicy);
 		} else {
-			return new DiscordClientImpl(loginInfo[0], loginInfo[1], timeoutTime, maxMissedPingCount, isDaemon, reconnectAttempts);
+			return new DiscordClientImpl(loginInfo[0], loginInfo[1], timeoutTime, maxMissedPingCount, isDaemon,
+					reconnectAttempts, transportCompression, shardCount, firstShard, lastShard, eventLaneCount,
+					eventLaneCapacity, dispatchStrategy, messageCacheSize, messageCacheBytes,
+					compactMessageCache, lazyHistory, historyPrefetchCount, maxConnections, connectionKeepAlive,
+					idleConnectionTimeout, cachePolicy);
 		}
 	}
 
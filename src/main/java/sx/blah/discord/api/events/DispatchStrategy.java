@@ -0,0 +1,329 @@
+package sx.blah.discord.api.events;
+
+import sx.blah.discord.Discord4J;
+import sx.blah.discord.util.LogMarkers;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This determines how (on which threads) the {@link EventDispatcher} calls event listeners. Use one of the factory
+ * methods to create a strategy and pass it to {@link sx.blah.discord.api.ClientBuilder#withDispatchStrategy(DispatchStrategy)}.
+ * <p>
+ * NOTE: A strategy owns its threads, so each client needs its own instance. Bounded strategies can deadlock if a
+ * listener waits for another event (i.e. using {@link EventDispatcher#waitFor(Class)}) while all workers are busy, so
+ * they should only be used if listeners never block.
+ */
+public abstract class DispatchStrategy {
+
+	/**
+	 * The suggested amount of worker threads for bounded strategies.
+	 */
+	public static final int DEFAULT_THREAD_COUNT = Math.max(4, Runtime.getRuntime().availableProcessors()*2);
+
+	/**
+	 * The suggested capacity of the queue of events waiting for a worker for bounded strategies.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+	/**
+	 * The amount of events which were dropped because the queue was full.
+	 */
+	protected final AtomicLong droppedEvents = new AtomicLong();
+
+	/**
+	 * Creates a strategy which calls listeners on an unbounded pool of worker threads, a new worker is started whenever
+	 * all others are busy and idle workers exit after a minute. This is the default, since listeners which block never
+	 * prevent other events from being handled.
+	 *
+	 * @return The strategy.
+	 */
+	public static DispatchStrategy unbounded() {
+		return new Unbounded();
+	}
+
+	/**
+	 * Creates a strategy which calls listeners on a fixed amount of worker threads, with a bounded queue of events
+	 * waiting for a worker. The listeners of an event are called in order on the same worker, but different events may
+	 * be handled concurrently and therefore out of order.
+	 *
+	 * @param threads The amount of worker threads.
+	 * @param queueCapacity The maximum amount of events waiting for a worker.
+	 * @param policy What to do when an event is dispatched while the queue is full.
+	 * @return The strategy.
+	 */
+	public static DispatchStrategy pooled(int threads, int queueCapacity, RejectionPolicy policy) {
+		return new Pooled(threads, queueCapacity, policy, false);
+	}
+
+	/**
+	 * Creates a strategy which calls listeners on a fixed amount of worker threads, where each listener is always called
+	 * on the same worker. This guarantees that a listener receives events one at a time and in the order they were
+	 * dispatched, while different listeners are still called concurrently.
+	 *
+	 * @param threads The amount of worker threads.
+	 * @param queueCapacity The maximum amount of listener calls waiting for each worker.
+	 * @param policy What to do when a listener call is dispatched while the worker's queue is full.
+	 * @return The strategy.
+	 */
+	public static DispatchStrategy serialPerListener(int threads, int queueCapacity, RejectionPolicy policy) {
+		return new Pooled(threads, queueCapacity, policy, true);
+	}
+
+	/**
+	 * Creates a strategy which calls listeners directly on the thread dispatching the event. This is mostly useful for
+	 * tests, as a slow listener will stall the processing of gateway events.
+	 *
+	 * @return The strategy.
+	 */
+	public static DispatchStrategy sameThread() {
+		return new SameThread();
+	}
+
+	/**
+	 * Executes a task.
+	 *
+	 * @param key The listener the task calls, or null if the task calls all listeners of an event.
+	 * @param task The task.
+	 */
+	abstract void execute(Object key, Runnable task);
+
+	/**
+	 * Checks whether listeners need to be called one at a time, by individual tasks keyed by the listener.
+	 *
+	 * @return True if the listeners must be submitted individually, false if otherwise.
+	 */
+	abstract boolean isSerialPerListener();
+
+	/**
+	 * Stops the current workers once they have handled the tasks already queued. New workers are started for tasks
+	 * executed afterwards.
+	 */
+	abstract void shutdown();
+
+	/**
+	 * Gets the amount of tasks currently waiting for a worker.
+	 *
+	 * @return The queue depth.
+	 */
+	public abstract int getQueueDepth();
+
+	/**
+	 * Gets the amount of workers currently calling listeners.
+	 *
+	 * @return The amount of active workers.
+	 */
+	public abstract int getActiveWorkers();
+
+	/**
+	 * Gets the amount of events (or listener calls in per-listener serial mode) dropped because the queue was full.
+	 *
+	 * @return The amount of dropped events.
+	 */
+	public long getDroppedEvents() {
+		return droppedEvents.get();
+	}
+
+	/**
+	 * This represents what happens when a task is dispatched while the queue is full.
+	 */
+	public enum RejectionPolicy {
+		/**
+		 * The dispatching thread waits until there is room in the queue, which applies back-pressure to the gateway.
+		 */
+		BLOCK,
+		/**
+		 * The dispatching thread calls the listeners itself.
+		 */
+		CALLER_RUNS,
+		/**
+		 * The new task is dropped.
+		 */
+		DROP_NEWEST,
+		/**
+		 * The oldest waiting task is dropped to make room for the new one.
+		 */
+		DROP_OLDEST
+	}
+
+	/**
+	 * Calls listeners on the dispatching thread.
+	 */
+	private static class SameThread extends DispatchStrategy {
+
+		@Override
+		void execute(Object key, Runnable task) {
+			task.run();
+		}
+
+		@Override
+		boolean isSerialPerListener() {
+			return false;
+		}
+
+		@Override
+		void shutdown() {}
+
+		@Override
+		public int getQueueDepth() {
+			return 0;
+		}
+
+		@Override
+		public int getActiveWorkers() {
+			return 0;
+		}
+	}
+
+	/**
+	 * Calls listeners on a cached thread pool.
+	 */
+	private static class Unbounded extends DispatchStrategy {
+
+		private volatile ThreadPoolExecutor executor = createExecutor();
+
+		private static ThreadPoolExecutor createExecutor() {
+			return (ThreadPoolExecutor) Executors.newCachedThreadPool(runnable -> { //Ensures all threads are daemons
+				Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+				thread.setName("Event Dispatch Thread");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		@Override
+		void execute(Object key, Runnable task) {
+			executor.execute(task);
+		}
+
+		@Override
+		boolean isSerialPerListener() {
+			return false;
+		}
+
+		@Override
+		synchronized void shutdown() {
+			ThreadPoolExecutor old = executor;
+			executor = createExecutor();
+			old.shutdown();
+		}
+
+		@Override
+		public int getQueueDepth() {
+			return 0; //Tasks never wait, they are handed to a new worker
+		}
+
+		@Override
+		public int getActiveWorkers() {
+			return executor.getActiveCount();
+		}
+	}
+
+	/**
+	 * Calls listeners on fixed thread pools. In per-listener serial mode, every worker has its own queue and listeners
+	 * are assigned to a worker by their identity, otherwise all workers share a single queue.
+	 */
+	private static class Pooled extends DispatchStrategy {
+
+		private final int threads;
+		private final int queueCapacity;
+		private final RejectionPolicy policy;
+		private final boolean serialPerListener;
+		private volatile ThreadPoolExecutor[] executors;
+
+		private Pooled(int threads, int queueCapacity, RejectionPolicy policy, boolean serialPerListener) {
+			this.threads = threads;
+			this.queueCapacity = queueCapacity;
+			this.policy = policy;
+			this.serialPerListener = serialPerListener;
+			this.executors = createExecutors();
+		}
+
+		private ThreadPoolExecutor[] createExecutors() {
+			if (serialPerListener) {
+				ThreadPoolExecutor[] executors = new ThreadPoolExecutor[threads];
+				for (int i = 0; i < threads; i++)
+					executors[i] = createExecutor(1, queueCapacity, policy, "Event Dispatch Thread "+i);
+				return executors;
+			} else {
+				return new ThreadPoolExecutor[]{createExecutor(threads, queueCapacity, policy, null)};
+			}
+		}
+
+		private ThreadPoolExecutor createExecutor(int threads, int queueCapacity, RejectionPolicy policy, String name) {
+			return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(queueCapacity), runnable -> { //Ensures all threads are daemons
+				Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+				thread.setName(name == null ? "Event Dispatch Thread" : name);
+				thread.setDaemon(true);
+				return thread;
+			}, (task, executor) -> reject(task, executor, policy));
+		}
+
+		private void reject(Runnable task, ThreadPoolExecutor executor, RejectionPolicy policy) {
+			if (executor.isShutdown())
+				return;
+
+			switch (policy) {
+				case BLOCK:
+					try {
+						executor.getQueue().put(task);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						droppedEvents.incrementAndGet();
+						Discord4J.LOGGER.error(LogMarkers.EVENTS, "Interrupted while waiting for the event queue, the event has been dropped!");
+					}
+					break;
+				case CALLER_RUNS:
+					task.run();
+					break;
+				case DROP_OLDEST:
+					if (executor.getQueue().poll() != null)
+						droppedEvents.incrementAndGet();
+					executor.execute(task);
+					break;
+				case DROP_NEWEST:
+					droppedEvents.incrementAndGet();
+					break;
+			}
+		}
+
+		@Override
+		void execute(Object key, Runnable task) {
+			ThreadPoolExecutor[] executors = this.executors;
+			if (key == null || executors.length == 1)
+				executors[0].execute(task);
+			else
+				executors[Math.floorMod(System.identityHashCode(key), executors.length)].execute(task);
+		}
+
+		@Override
+		boolean isSerialPerListener() {
+			return serialPerListener;
+		}
+
+		@Override
+		synchronized void shutdown() {
+			ThreadPoolExecutor[] old = executors;
+			executors = createExecutors(); //Threads are only started once tasks are executed
+			for (ThreadPoolExecutor executor : old)
+				executor.shutdown();
+		}
+
+		@Override
+		public int getQueueDepth() {
+			int depth = 0;
+			for (ThreadPoolExecutor executor : executors)
+				depth += executor.getQueue().size();
+			return depth;
+		}
+
+		@Override
+		public int getActiveWorkers() {
+			int active = 0;
+			for (ThreadPoolExecutor executor : executors)
+				active += executor.getActiveCount();
+			return active;
+		}
+	}
+}
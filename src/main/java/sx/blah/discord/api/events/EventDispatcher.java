@@ -6,10 +6,16 @@ import sx.blah.discord.api.IDiscordClient;
 import sx.blah.discord.handle.impl.events.DiscordDisconnectedEvent;
 import sx.blah.discord.util.LogMarkers;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 
 /**
@@ -17,18 +23,33 @@ import java.util.function.Predicate;
  */
 public class EventDispatcher {
 
-	private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Method, CopyOnWriteArrayList<ListenerPair<Object>>>> methodListeners = new ConcurrentHashMap<>();
-	private final ConcurrentHashMap<Class<?>, CopyOnWriteArrayList<ListenerPair<IListener>>> classListeners = new ConcurrentHashMap<>();
-	private final ExecutorService eventExecutor = Executors.newCachedThreadPool(runnable -> { //Ensures all threads are daemons
-		Thread thread = Executors.defaultThreadFactory().newThread(runnable);
-		thread.setName("Event Dispatch Thread");
-		thread.setDaemon(true);
-		return thread;
-	});
+	/**
+	 * The type of the generated invokers of annotated methods, (listener event)void.
+	 */
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Object.class);
+
+	private final CopyOnWriteArrayList<ListenerPair> methodListeners = new CopyOnWriteArrayList<>();
+	private final CopyOnWriteArrayList<ListenerPair> classListeners = new CopyOnWriteArrayList<>();
+	/**
+	 * The listeners to call for each concrete event class. When a listener is (un)registered, only the entries of the
+	 * event classes it can receive are removed.
+	 */
+	private final Map<Class<?>, ListenerPair[]> listenerCache = new ConcurrentHashMap<>();
+	/**
+	 * Incremented whenever the listener lists are modified, used to discard arrays built concurrently with a
+	 * modification.
+	 */
+	private final AtomicLong listenerVersion = new AtomicLong();
+	private final DispatchStrategy strategy;
 	private final IDiscordClient client;
 
 	public EventDispatcher(IDiscordClient client) {
+		this(client, DispatchStrategy.unbounded());
+	}
+
+	public EventDispatcher(IDiscordClient client, DispatchStrategy strategy) {
 		this.client = client;
+		this.strategy = strategy;
 	}
 
 	/**
@@ -72,13 +93,19 @@ public class EventDispatcher {
 					method.setAccessible(true);
 					Class<?> eventClass = method.getParameterTypes()[0];
 					if (Event.class.isAssignableFrom(eventClass)) {
-						if (!methodListeners.containsKey(eventClass))
-							methodListeners.put(eventClass, new ConcurrentHashMap<>());
-
-						if (!methodListeners.get(eventClass).containsKey(method))
-							methodListeners.get(eventClass).put(method, new CopyOnWriteArrayList<>());
+						MethodHandle invoker;
+						try {
+							invoker = MethodHandles.lookup().unreflect(method);
+							if (listener != null)
+								invoker = invoker.bindTo(listener);
+							invoker = invoker.asType(INVOKER_TYPE);
+						} catch (IllegalAccessException e) {
+							Discord4J.LOGGER.error(LogMarkers.EVENTS, "Unable to register method listener "+listenerClass.getSimpleName()+"#"+method.getName(), e);
+							continue;
+						}
 
-						methodListeners.get(eventClass).get(method).add(new ListenerPair<>(isTemporary, listener));
+						methodListeners.add(new ListenerPair(isTemporary, listener, eventClass, invoker));
+						invalidateCache(eventClass);
 						Discord4J.LOGGER.trace(LogMarkers.EVENTS, "Registered method listener {}#{}", listenerClass.getSimpleName(), method.getName());
 					}
 				}
@@ -89,11 +116,9 @@ public class EventDispatcher {
 	private <T extends Event> void registerListener(IListener<T> listener, boolean isTemporary) {
 		Class<?> rawType = TypeResolver.resolveRawArgument(IListener.class, listener.getClass());
 		if (Event.class.isAssignableFrom(rawType)) {
-			if (!classListeners.containsKey(rawType))
-				classListeners.put(rawType, new CopyOnWriteArrayList<>());
-
 			Discord4J.LOGGER.trace(LogMarkers.EVENTS, "Registered IListener {}", listener.getClass().getSimpleName());
-			classListeners.get(rawType).add(new ListenerPair<>(isTemporary, listener));
+			classListeners.add(new ListenerPair(isTemporary, listener, rawType, null));
+			invalidateCache(rawType);
 		}
 	}
 
@@ -232,17 +257,15 @@ public class EventDispatcher {
 	 * @param listener The listener.
 	 */
 	public void unregisterListener(Object listener) {
-		for (Method method : listener.getClass().getMethods()) {
-			if (method.getParameterCount() == 1) {
-				Class<?> eventClass = method.getParameterTypes()[0];
-				if (Event.class.isAssignableFrom(eventClass)) {
-					if (methodListeners.containsKey(eventClass))
-						if (methodListeners.get(eventClass).containsKey(method)) {
-							methodListeners.get(eventClass).get(method).removeIf((ListenerPair pair) -> pair.listener == listener); //Yes, the == is intentional. We want the exact same instance.
-							Discord4J.LOGGER.trace(LogMarkers.EVENTS, "Unregistered method listener {}", listener.getClass().getSimpleName(), method.toString());
-						}
-				}
-			}
+		List<ListenerPair> removed = new ArrayList<>();
+		for (ListenerPair pair : methodListeners)
+			if (pair.listener == listener) //Yes, the == is intentional. We want the exact same instance.
+				removed.add(pair);
+
+		if (methodListeners.removeAll(removed)) {
+			for (ListenerPair pair : removed)
+				invalidateCache(pair.eventClass);
+			Discord4J.LOGGER.trace(LogMarkers.EVENTS, "Unregistered method listener {}", listener.getClass().getSimpleName());
 		}
 	}
 
@@ -252,70 +275,124 @@ public class EventDispatcher {
 	 * @param listener The listener.
 	 */
 	public void unregisterListener(IListener listener) {
-		Class<?> rawType = TypeResolver.resolveRawArgument(IListener.class, listener.getClass());
-		if (Event.class.isAssignableFrom(rawType)) {
-			if (classListeners.containsKey(rawType)) {
-				classListeners.get(rawType).removeIf((ListenerPair pair) -> pair.listener == listener); //Yes, the == is intentional. We want the exact same instance.
-				Discord4J.LOGGER.trace(LogMarkers.EVENTS, "Unregistered IListener {}", listener.getClass().getSimpleName());
-			}
+		List<ListenerPair> removed = new ArrayList<>();
+		for (ListenerPair pair : classListeners)
+			if (pair.listener == listener) //Yes, the == is intentional. We want the exact same instance.
+				removed.add(pair);
+
+		if (classListeners.removeAll(removed)) {
+			for (ListenerPair pair : removed)
+				invalidateCache(pair.eventClass);
+			Discord4J.LOGGER.trace(LogMarkers.EVENTS, "Unregistered IListener {}", listener.getClass().getSimpleName());
 		}
 	}
 
+	/**
+	 * Discards the precomputed listener arrays of the event classes a listener can receive, this must be called after
+	 * the listener lists have been modified.
+	 *
+	 * @param eventClass The class of events the added or removed listener handles.
+	 */
+	private void invalidateCache(Class<?> eventClass) {
+		listenerVersion.incrementAndGet();
+		listenerCache.keySet().removeIf(eventClass::isAssignableFrom);
+	}
+
+	/**
+	 * Gets the listeners to call for an event class. Method listeners come first, followed by {@link IListener}s, each in
+	 * the order they were registered.
+	 *
+	 * @param eventClass The concrete event class.
+	 * @return The listeners.
+	 */
+	private ListenerPair[] getListeners(Class<?> eventClass) {
+		ListenerPair[] cached = listenerCache.get(eventClass);
+		if (cached != null)
+			return cached;
+
+		long version = listenerVersion.get();
+		List<ListenerPair> listeners = new ArrayList<>();
+		for (ListenerPair pair : methodListeners)
+			if (pair.eventClass.isAssignableFrom(eventClass))
+				listeners.add(pair);
+		for (ListenerPair pair : classListeners)
+			if (pair.eventClass.isAssignableFrom(eventClass))
+				listeners.add(pair);
+		ListenerPair[] array = listeners.toArray(new ListenerPair[listeners.size()]);
+
+		listenerCache.put(eventClass, array);
+		if (listenerVersion.get() != version) //The lists were modified while building, the array may be outdated
+			listenerCache.remove(eventClass, array);
+		return array;
+	}
+
 	/**
 	 * Dispatches an event.
 	 *
 	 * @param event The event.
 	 */
-	public synchronized void dispatch(Event event) {
+	public void dispatch(Event event) {
 		if (client.isReady() || event instanceof DiscordDisconnectedEvent) {
-			eventExecutor.submit(() -> {
-				Discord4J.LOGGER.trace(LogMarkers.EVENTS, "Dispatching event of type {}", event.getClass().getSimpleName());
-				event.client = client;
-
-				methodListeners.entrySet().stream()
-						.filter(e -> e.getKey().isAssignableFrom(event.getClass()))
-						.map(e -> e.getValue())
-						.forEach(m ->
-								m.forEach((k, v) ->
-										v.forEach(o -> {
-											try {
-												k.invoke(o.listener, event);
-												if (o.isTemporary)
-													unregisterListener(o.listener);
-											} catch (IllegalAccessException e) {
-												Discord4J.LOGGER.error(LogMarkers.EVENTS, "Error dispatching event " + event.getClass().getSimpleName(), e);
-											} catch(InvocationTargetException e) {
-												Discord4J.LOGGER.error(LogMarkers.EVENTS, "Unhandled exception caught dispatching event "+event.getClass().getSimpleName(), e.getCause());
-											} catch (Exception e) {
-												Discord4J.LOGGER.error(LogMarkers.EVENTS, "Unhandled exception caught dispatching event "+event.getClass().getSimpleName(), e);
-											}
-										})));
-
-				classListeners.entrySet().stream()
-						.filter(e -> e.getKey().isAssignableFrom(event.getClass()))
-						.map(e -> e.getValue())
-						.forEach(s -> s.forEach(l -> {
-							try {
-								l.listener.handle(event);
-
-								if (l.isTemporary)
-									unregisterListener(l.listener);
-							} catch (ClassCastException e) {
-								//FIXME: This occurs when a lambda expression is used to create an IListener leading it to be registered under the type 'Event'. This is due to a bug in TypeTools: https://github.com/jhalterman/typetools/issues/14
-						 	} catch (Exception e) {
-								Discord4J.LOGGER.error(LogMarkers.EVENTS, "Unhandled exception caught dispatching event "+event.getClass().getSimpleName(), e);
-							}
-						}));
-			});
+			Discord4J.LOGGER.trace(LogMarkers.EVENTS, "Dispatching event of type {}", event.getClass().getSimpleName());
+			event.client = client;
+
+			ListenerPair[] listeners = getListeners(event.getClass());
+			if (strategy.isSerialPerListener()) {
+				for (ListenerPair pair : listeners)
+					strategy.execute(pair.listener == null ? pair : pair.listener, () -> callListener(pair, event));
+			} else if (listeners.length > 0) {
+				strategy.execute(null, () -> {
+					for (ListenerPair pair : listeners)
+						callListener(pair, event);
+				});
+			}
+		}
+	}
+
+	private void callListener(ListenerPair pair, Event event) {
+		try {
+			if (pair.invoker != null) {
+				pair.invoker.invokeExact((Object) event);
+			} else {
+				((IListener) pair.listener).handle(event);
+			}
+
+			if (pair.isTemporary) {
+				if (pair.invoker != null)
+					unregisterListener(pair.listener);
+				else
+					unregisterListener((IListener) pair.listener);
+			}
+		} catch (ClassCastException e) {
+			if (pair.invoker != null)
+				Discord4J.LOGGER.error(LogMarkers.EVENTS, "Unhandled exception caught dispatching event "+event.getClass().getSimpleName(), e);
+			//FIXME: Otherwise this occurs when a lambda expression is used to create an IListener leading it to be registered under the type 'Event'. This is due to a bug in TypeTools: https://github.com/jhalterman/typetools/issues/14
+		} catch (Throwable e) {
+			Discord4J.LOGGER.error(LogMarkers.EVENTS, "Unhandled exception caught dispatching event "+event.getClass().getSimpleName(), e);
 		}
 	}
 
 	/**
-	 * This is used to differentiate temporary event listeners from permanent ones.
+	 * Stops the threads calling listeners once the events already dispatched have been handled. This is called when the
+	 * client logs out, listeners are called on new threads if events are dispatched afterwards.
+	 */
+	public void shutdown() {
+		strategy.shutdown();
+	}
+
+	/**
+	 * Gets the strategy used to call listeners, it exposes the dispatch queue's metrics.
 	 *
-	 * @param <V> The type of listener, either {@link Object} or {@link IListener}
+	 * @return The dispatch strategy.
+	 */
+	public DispatchStrategy getDispatchStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * This is used to differentiate temporary event listeners from permanent ones.
 	 */
-	private static class ListenerPair<V> {
+	private static class ListenerPair {
 
 		/**
 		 * Whether the listener is temporary.
@@ -323,13 +400,24 @@ public class EventDispatcher {
 		 */
 		final boolean isTemporary;
 		/**
-		 * The actual listener object instance.
+		 * The actual listener object instance, either an {@link IListener} or the instance an annotated method belongs to
+		 * (null for static methods).
+		 */
+		final Object listener;
+		/**
+		 * The class of events the listener handles.
+		 */
+		final Class<?> eventClass;
+		/**
+		 * The generated invoker of an annotated method, null for {@link IListener}s.
 		 */
-		final V listener;
+		final MethodHandle invoker;
 
-		private ListenerPair(boolean isTemporary, V listener) {
+		private ListenerPair(boolean isTemporary, Object listener, Class<?> eventClass, MethodHandle invoker) {
 			this.isTemporary = isTemporary;
 			this.listener = listener;
+			this.eventClass = eventClass;
+			this.invoker = invoker;
 		}
 	}
 }
@@ -3,7 +3,9 @@ package sx.blah.discord.api.internal;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.message.BasicNameValuePair;
 import sx.blah.discord.Discord4J;
+import sx.blah.discord.api.CachePolicy;
 import sx.blah.discord.api.IDiscordClient;
+import sx.blah.discord.api.events.DispatchStrategy;
 import sx.blah.discord.api.events.EventDispatcher;
 import sx.blah.discord.handle.impl.events.DiscordDisconnectedEvent;
 import sx.blah.discord.handle.impl.events.PresenceUpdateEvent;
@@ -16,6 +18,9 @@ import sx.blah.discord.modules.ModuleLoader;
 import sx.blah.discord.util.DiscordException;
 import sx.blah.discord.util.Image;
 import sx.blah.discord.util.LogMarkers;
+import sx.blah.discord.util.MessageCacheManager;
+import sx.blah.discord.util.MessageHistoryLoader;
+import sx.blah.discord.util.MessageListRouter;
 import sx.blah.discord.util.RateLimitException;
 
 import java.io.UnsupportedEncodingException;
@@ -37,13 +42,6 @@ public final class DiscordClientImpl implements IDiscordClient {
 		ServiceUtil.loadServices();
 	}
 
-	/**
-	 * Used for keep alive. Keeps last time (in ms)
-	 * that we sent the keep alive so we can accurately
-	 * time our keep alive messages.
-	 */
-	protected volatile long timer = System.currentTimeMillis();
-
 	/**
 	 * User we are logged in as
 	 */
@@ -55,15 +53,14 @@ public final class DiscordClientImpl implements IDiscordClient {
 	protected volatile String token;
 
 	/**
-	 * Time (in ms) between keep alive
-	 * messages.
+	 * Local copy of all guilds/servers.
 	 */
-	protected volatile long heartbeat;
+	protected final List<IGuild> guildList = new CopyOnWriteArrayList<>();
 
 	/**
-	 * Local copy of all guilds/servers.
+	 * Index of all cached entities, keyed by their ids.
 	 */
-	protected final List<IGuild> guildList = new CopyOnWriteArrayList<>();
+	public final EntityIndex index = new EntityIndex();
 
 	/**
 	 * Private copy of the email you logged in with.
@@ -76,9 +73,14 @@ public final class DiscordClientImpl implements IDiscordClient {
 	protected volatile String password;
 
 	/**
-	 * WebSocket over which to communicate with Discord.
+	 * The WebSockets (one per shard) over which to communicate with Discord.
+	 */
+	public final ShardManager shards;
+
+	/**
+	 * The lanes gateway events are processed on.
 	 */
-	public volatile DiscordWS ws;
+	public final EventLanes eventLanes;
 
 	/**
 	 * Holds the active connections to voice sockets.
@@ -100,16 +102,6 @@ public final class DiscordClientImpl implements IDiscordClient {
 	 */
 	protected volatile boolean isReady = false;
 
-	/**
-	 * The websocket session id.
-	 */
-	protected volatile String sessionId;
-
-	/**
-	 * Caches the last operation done by the websocket, required for handling redirects.
-	 */
-	protected volatile long lastSequence = 0;
-
 	/**
 	 * Caches the available regions for discord.
 	 */
@@ -145,6 +137,11 @@ public final class DiscordClientImpl implements IDiscordClient {
 	 */
 	protected final int reconnectAttempts;
 
+	/**
+	 * Whether the gateway connection uses zlib-stream transport compression.
+	 */
+	protected final boolean transportCompression;
+
 	/**
 	 * When this client was logged into. Useful for determining uptime.
 	 */
@@ -153,26 +150,80 @@ public final class DiscordClientImpl implements IDiscordClient {
 	/**
 	 * The requests holder object.
 	 */
-	public final Requests REQUESTS = new Requests(this);
+	public final Requests REQUESTS;
+
+	/**
+	 * The router which keeps the message lists of all channels up to date.
+	 */
+	public final MessageListRouter messageLists = new MessageListRouter(this);
+
+	/**
+	 * The manager enforcing the budget of all message lists' caches.
+	 */
+	public final MessageCacheManager messageCache;
+
+	/**
+	 * The loader of the message lists' history.
+	 */
+	public final MessageHistoryLoader historyLoader;
+
+	/**
+	 * Which kinds of objects are requested and CACHED.
+	 */
+	public final CachePolicy cachePolicy;
 
-	private DiscordClientImpl(long timeoutTime, int maxMissedPingCount, boolean isDaemon, boolean isBot, int reconnectAttempts) {
+	/**
+	 * The scheduler requesting the offline members of large guilds.
+	 */
+	public final MemberRequestScheduler memberRequests = new MemberRequestScheduler(this);
+
+	private DiscordClientImpl(long timeoutTime, int maxMissedPingCount, boolean isDaemon, boolean isBot, int reconnectAttempts,
+							  boolean transportCompression, int shardCount, int firstShard, int lastShard, int eventLaneCount,
+							  int eventLaneCapacity, DispatchStrategy dispatchStrategy, long messageCacheSize,
+							  long messageCacheBytes, boolean compactMessageCache, boolean lazyHistory,
+							  int historyPrefetchCount, int maxConnections, long connectionKeepAlive,
+							  long idleConnectionTimeout, CachePolicy cachePolicy) {
+		this.REQUESTS = new Requests(this, maxConnections, connectionKeepAlive, idleConnectionTimeout);
 		this.timeoutTime = timeoutTime;
 		this.maxMissedPingCount = maxMissedPingCount;
 		this.isDaemon = isDaemon;
 		this.isBot = isBot;
 		this.reconnectAttempts = reconnectAttempts;
-		this.dispatcher = new EventDispatcher(this);
+		this.cachePolicy = cachePolicy;
+		this.transportCompression = transportCompression;
+		this.shards = new ShardManager(this, shardCount, firstShard, lastShard);
+		this.eventLanes = new EventLanes(eventLaneCount, eventLaneCapacity);
+		this.messageCache = new MessageCacheManager(messageCacheSize, messageCacheBytes, compactMessageCache);
+		this.historyLoader = new MessageHistoryLoader(this, lazyHistory, historyPrefetchCount);
+		this.dispatcher = dispatchStrategy == null ? new EventDispatcher(this) : new EventDispatcher(this, dispatchStrategy);
+		this.dispatcher.registerListener(messageLists);
 		this.loader = new ModuleLoader(this);
 	}
 
-	public DiscordClientImpl(String email, String password, long timeoutTime, int maxMissedPingCount, boolean isDaemon, int reconnectAttempts) {
-		this(timeoutTime, maxMissedPingCount, isDaemon, false, reconnectAttempts);
+	public DiscordClientImpl(String email, String password, long timeoutTime, int maxMissedPingCount, boolean isDaemon, int reconnectAttempts,
+							 boolean transportCompression, int shardCount, int firstShard, int lastShard, int eventLaneCount,
+							 int eventLaneCapacity, DispatchStrategy dispatchStrategy, long messageCacheSize,
+							 long messageCacheBytes, boolean compactMessageCache, boolean lazyHistory,
+							 int historyPrefetchCount, int maxConnections, long connectionKeepAlive,
+							 long idleConnectionTimeout, CachePolicy cachePolicy) {
+		this(timeoutTime, maxMissedPingCount, isDaemon, false, reconnectAttempts, transportCompression, shardCount,
+				firstShard, lastShard, eventLaneCount, eventLaneCapacity, dispatchStrategy,
+				messageCacheSize, messageCacheBytes, compactMessageCache, lazyHistory, historyPrefetchCount,
+				maxConnections, connectionKeepAlive, idleConnectionTimeout, cachePolicy);
 		this.email = email;
 		this.password = password;
 	}
 
-	public DiscordClientImpl(String token, long timeoutTime, int maxMissedPingCount, boolean isDaemon, int reconnectAttempts) {
-		this(timeoutTime, maxMissedPingCount, isDaemon, true, reconnectAttempts);
+	public DiscordClientImpl(String token, long timeoutTime, int maxMissedPingCount, boolean isDaemon, int reconnectAttempts,
+							 boolean transportCompression, int shardCount, int firstShard, int lastShard, int eventLaneCount,
+							 int eventLaneCapacity, DispatchStrategy dispatchStrategy, long messageCacheSize,
+							 long messageCacheBytes, boolean compactMessageCache, boolean lazyHistory,
+							 int historyPrefetchCount, int maxConnections, long connectionKeepAlive,
+							 long idleConnectionTimeout, CachePolicy cachePolicy) {
+		this(timeoutTime, maxMissedPingCount, isDaemon, true, reconnectAttempts, transportCompression, shardCount,
+				firstShard, lastShard, eventLaneCount, eventLaneCapacity, dispatchStrategy,
+				messageCacheSize, messageCacheBytes, compactMessageCache, lazyHistory, historyPrefetchCount,
+				maxConnections, connectionKeepAlive, idleConnectionTimeout, cachePolicy);
 		this.token = isBot ? "Bot " + token : token;
 	}
 
@@ -194,12 +245,7 @@ public final class DiscordClientImpl implements IDiscordClient {
 	@Override
 	public void login(boolean async) throws DiscordException {
 		try {
-			if (ws != null) {
-				ws.disconnect(DiscordDisconnectedEvent.Reason.RECONNECTING);
-
-				lastSequence = 0;
-				sessionId = null; //Prevents the websocket from sending a resume request.
-			}
+			shards.disconnect(DiscordDisconnectedEvent.Reason.RECONNECTING); //New connections have no session so they won't resume
 
 			if (!isBot) {
 				LoginResponse response = DiscordUtils.GSON.fromJson(REQUESTS.POST.makeRequest(DiscordEndpoints.LOGIN,
@@ -211,8 +257,7 @@ public final class DiscordClientImpl implements IDiscordClient {
 					throw new DiscordException("Invalid token!");
 			}
 
-			this.ws = new DiscordWS(this, obtainGateway(getToken()), timeoutTime, maxMissedPingCount, isDaemon,
-					reconnectAttempts, async);
+			shards.connect(obtainGateway(getToken()), async);
 
 			launchTime = LocalDateTime.now();
 		} catch (Exception e) {
@@ -243,7 +288,11 @@ public final class DiscordClientImpl implements IDiscordClient {
 				REQUESTS.POST.makeRequest(DiscordEndpoints.LOGOUT,
 						new BasicNameValuePair("authorization", getToken()));
 
-			ws.disconnect(DiscordDisconnectedEvent.Reason.LOGGED_OUT);
+			shards.disconnect(DiscordDisconnectedEvent.Reason.LOGGED_OUT);
+			shards.shutdown();
+			eventLanes.shutdown();
+			dispatcher.shutdown();
+			REQUESTS.close();
 		} else
 			Discord4J.LOGGER.error(LogMarkers.API, "Bot has not signed in yet!");
 	}
@@ -335,7 +384,7 @@ public final class DiscordClientImpl implements IDiscordClient {
 			dispatcher.dispatch(new PresenceUpdateEvent(getOurUser(), oldPresence, newPresence));
 		}
 
-		ws.send(DiscordUtils.GSON.toJson(new PresenceUpdateRequest(isIdle ? System.currentTimeMillis() : null, status)));
+		shards.send(new PresenceUpdateRequest(isIdle ? System.currentTimeMillis() : null, status));
 	}
 
 	@Override
@@ -350,7 +399,7 @@ public final class DiscordClientImpl implements IDiscordClient {
 
 	@Override
 	public boolean isReady() {
-		return isReady && ws != null && ws.isConnected.get() && !ws.isReconnecting.get();
+		return isReady && shards.isConnected();
 	}
 
 	@Override
@@ -380,9 +429,7 @@ public final class DiscordClientImpl implements IDiscordClient {
 
 	@Override
 	public IChannel getChannelByID(String id) {
-		return getChannels(true).stream()
-				.filter(c -> c.getID().equalsIgnoreCase(id))
-				.findAny().orElse(null);
+		return index.getChannel(id);
 	}
 
 	@Override
@@ -395,9 +442,7 @@ public final class DiscordClientImpl implements IDiscordClient {
 
 	@Override
 	public IVoiceChannel getVoiceChannelByID(String id) {
-		return getVoiceChannels().stream()
-				.filter(c -> c.getID().equalsIgnoreCase(id))
-				.findAny().orElse(null);
+		return index.getVoiceChannel(id);
 	}
 
 	@Override
@@ -407,30 +452,20 @@ public final class DiscordClientImpl implements IDiscordClient {
 
 	@Override
 	public IGuild getGuildByID(String guildID) {
-		return guildList.stream()
-				.filter(g -> g.getID().equalsIgnoreCase(guildID))
-				.findAny().orElse(null);
+		return index.getGuild(guildID);
 	}
 
 	@Override
 	public List<IUser> getUsers() {
-		return guildList.stream()
-				.map(IGuild::getUsers)
-				.flatMap(List::stream)
-				.distinct()
-				.collect(Collectors.toList());
+		return index.getUsers();
 	}
 
 	@Override
 	public IUser getUserByID(String userID) {
-		IGuild guild = guildList.stream()
-				.filter(g -> g.getUserByID(userID) != null)
-				.findFirst()
-				.orElse(null);
-
-		IUser user = guild != null ? guild.getUserByID(userID) : null;
+		if (ourUser != null && ourUser.getID().equals(userID)) // List of users doesn't include the bot user. Check if the id is that of the bot.
+			return ourUser;
 
-		return ourUser != null && ourUser.getID().equals(userID) ? ourUser : user; // List of users doesn't include the bot user. Check if the id is that of the bot.
+		return index.getUser(userID);
 	}
 
 	@Override
@@ -443,9 +478,7 @@ public final class DiscordClientImpl implements IDiscordClient {
 
 	@Override
 	public IRole getRoleByID(String roleID) {
-		return getRoles().stream()
-				.filter(r -> r.getID().equalsIgnoreCase(roleID))
-				.findAny().orElse(null);
+		return index.getRole(roleID);
 	}
 
 	@Override
@@ -503,6 +536,7 @@ public final class DiscordClientImpl implements IDiscordClient {
 
 			IPrivateChannel channel = DiscordUtils.getPrivateChannelFromJSON(this, response);
 			privateChannels.add(channel);
+			index.addChannel(channel);
 			return channel;
 		} catch (UnsupportedEncodingException e) {
 			Discord4J.LOGGER.error(LogMarkers.API, "Error creating creating a private channel!", e);
@@ -574,6 +608,7 @@ public final class DiscordClientImpl implements IDiscordClient {
 					new BasicNameValuePair("content-type", "application/json")), GuildResponse.class);
 			IGuild guild = DiscordUtils.getGuildFromJSON(this, guildResponse);
 			guildList.add(guild);
+			index.addGuild(guild);
 			return guild;
 		} catch (UnsupportedEncodingException e) {
 			Discord4J.LOGGER.error(LogMarkers.API, "Discord4J Internal Exception", e);
@@ -583,7 +618,7 @@ public final class DiscordClientImpl implements IDiscordClient {
 
 	@Override
 	public long getResponseTime() {
-		return ws.getResponseTime();
+		return shards.getResponseTime();
 	}
 
 	@Override
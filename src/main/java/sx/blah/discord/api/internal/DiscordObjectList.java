@@ -0,0 +1,303 @@
+package sx.blah.discord.api.internal;
+
+import sx.blah.discord.handle.obj.IDiscordObject;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * This is a {@link List} of discord objects backed by a concurrent map keyed by the objects' ids. Lookups by id,
+ * additions and removals are constant time, while index based access is served from a snapshot (in insertion order,
+ * like the list this replaced) which is only rebuilt after the list has been modified.
+ * <p>
+ * NOTE: Positional modifications ({@link #add(int, IDiscordObject)}, {@link #set(int, IDiscordObject)} and
+ * {@link #sort(Comparator)}) are supported but renumber the whole list, so they are linear time.
+ *
+ * @param <T> The type of discord object held by this list.
+ */
+public class DiscordObjectList<T extends IDiscordObject<?>> extends AbstractList<T> {
+
+	/**
+	 * The backing map (key = snowflake id).
+	 */
+	private final Map<Long, Entry<T>> objects = new ConcurrentHashMap<>();
+
+	/**
+	 * The source of the insertion sequence numbers which determine the order of this list.
+	 */
+	private final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * Incremented on every modification, used to determine whether {@link #snapshot} is stale.
+	 */
+	private final AtomicLong version = new AtomicLong();
+
+	/**
+	 * The last ordered snapshot of this list.
+	 */
+	private volatile Snapshot snapshot;
+
+	public DiscordObjectList() {}
+
+	public DiscordObjectList(Collection<? extends T> objects) {
+		addAll(objects);
+	}
+
+	/**
+	 * Gets an object by its id.
+	 *
+	 * @param id The id.
+	 * @return The object, or null if not found.
+	 */
+	public T get(String id) {
+		Entry<T> entry = objects.get(EntityIndex.toSnowflake(id));
+		return entry == null ? null : entry.object;
+	}
+
+	/**
+	 * Checks whether an object with the provided id is contained in this list.
+	 *
+	 * @param id The id.
+	 * @return True if found, false if otherwise.
+	 */
+	public boolean containsID(String id) {
+		return objects.containsKey(EntityIndex.toSnowflake(id));
+	}
+
+	@Override
+	public T get(int index) {
+		Object[] elements = elements();
+		if (index < 0 || index >= elements.length)
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+elements.length);
+
+		return (T) elements[index];
+	}
+
+	@Override
+	public int size() {
+		return objects.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return objects.isEmpty();
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (!(o instanceof IDiscordObject))
+			return false;
+
+		T object = get(((IDiscordObject) o).getID());
+		return object != null && object.equals(o);
+	}
+
+	/**
+	 * Adds an object to this list, this is a no-op if an object with the same id is already present.
+	 *
+	 * @param object The object.
+	 * @return True if the object was added, false if otherwise.
+	 */
+	@Override
+	public boolean add(T object) {
+		if (object == null)
+			return false;
+
+		boolean added = objects.putIfAbsent(EntityIndex.toSnowflake(object.getID()), new Entry<>(sequence.incrementAndGet(), object)) == null;
+		if (added)
+			version.incrementAndGet();
+		return added;
+	}
+
+	/**
+	 * Inserts an object at a position, this is a no-op if an object with the same id is already present.
+	 *
+	 * @param index The position.
+	 * @param object The object.
+	 */
+	@Override
+	public synchronized void add(int index, T object) {
+		List<T> elements = new ArrayList<>(snapshotList());
+		if (index < 0 || index > elements.size())
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+elements.size());
+		if (object == null || containsID(object.getID()))
+			return;
+
+		elements.add(index, object);
+		renumber(elements, object);
+	}
+
+	/**
+	 * Replaces the object at a position. If the new object is already present elsewhere in this list, it is moved.
+	 *
+	 * @param index The position.
+	 * @param object The new object.
+	 * @return The replaced object.
+	 */
+	@Override
+	public synchronized T set(int index, T object) {
+		Objects.requireNonNull(object);
+		List<T> elements = new ArrayList<>(snapshotList());
+		T old = elements.set(index, object);
+		for (int i = 0; i < elements.size(); i++)
+			if (i != index && elements.get(i).getID().equals(object.getID()))
+				elements.remove(i--);
+
+		if (!old.getID().equals(object.getID()))
+			objects.remove(EntityIndex.toSnowflake(old.getID()));
+		renumber(elements, object);
+		return old;
+	}
+
+	@Override
+	public synchronized void sort(Comparator<? super T> c) {
+		List<T> elements = new ArrayList<>(snapshotList());
+		elements.sort(c);
+		renumber(elements, null);
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!contains(o))
+			return false;
+
+		boolean removed = objects.remove(EntityIndex.toSnowflake(((IDiscordObject) o).getID())) != null;
+		if (removed)
+			version.incrementAndGet();
+		return removed;
+	}
+
+	@Override
+	public T remove(int index) {
+		T object = get(index);
+		return remove(object) ? object : null;
+	}
+
+	@Override
+	public boolean removeIf(Predicate<? super T> filter) {
+		boolean removed = objects.values().removeIf(entry -> filter.test(entry.object));
+		if (removed)
+			version.incrementAndGet();
+		return removed;
+	}
+
+	@Override
+	public void clear() {
+		objects.clear();
+		version.incrementAndGet();
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		if (!contains(o))
+			return -1;
+
+		Object[] elements = elements();
+		for (int i = 0; i < elements.length; i++)
+			if (elements[i].equals(o))
+				return i;
+
+		return -1;
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		return indexOf(o); //Ids are unique
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return snapshotList().iterator();
+	}
+
+	@Override
+	public ListIterator<T> listIterator(int index) {
+		return snapshotList().listIterator(index);
+	}
+
+	@Override
+	public Spliterator<T> spliterator() {
+		return (Spliterator<T>) (Spliterator<?>) Spliterators.spliterator(elements(),Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+	}
+
+	@Override
+	public Object[] toArray() {
+		return elements().clone();
+	}
+
+	private List<T> snapshotList() {
+		return Collections.unmodifiableList((List<T>) (List<?>) Arrays.asList(elements()));
+	}
+
+	/**
+	 * Stores the provided objects in this order, replacing the positions of the objects already present. Only the
+	 * inserted object is added, objects which have been removed since the elements were read (e.g. by a concurrent
+	 * {@link #remove(Object)}) stay removed.
+	 *
+	 * @param elements The objects in their new order.
+	 * @param inserted The object which is inserted, or null if none is.
+	 */
+	private void renumber(List<T> elements, T inserted) {
+		for (T object : elements) {
+			long id = EntityIndex.toSnowflake(object.getID());
+			long position = sequence.incrementAndGet();
+			if (object == inserted)
+				objects.put(id, new Entry<>(position, object));
+			else
+				objects.computeIfPresent(id, (key, entry) -> new Entry<>(position, entry.object));
+		}
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Gets the current ordered snapshot, rebuilding it if this list has been modified since it was last built.
+	 *
+	 * @return The elements of this list, in insertion order.
+	 */
+	private Object[] elements() {
+		long currentVersion = version.get();
+		Snapshot current = snapshot;
+		if (current == null || current.version != currentVersion) {
+			List<Entry<T>> entries = new ArrayList<>(objects.values());
+			entries.sort(Comparator.comparingLong(entry -> entry.sequence));
+
+			Object[] elements = new Object[entries.size()];
+			for (int i = 0; i < elements.length; i++)
+				elements[i] = entries.get(i).object;
+
+			current = new Snapshot(currentVersion, elements);
+			snapshot = current;
+		}
+		return current.elements;
+	}
+
+	/**
+	 * An object of this list and its position.
+	 */
+	private static class Entry<T> {
+
+		final long sequence;
+		final T object;
+
+		private Entry(long sequence, T object) {
+			this.sequence = sequence;
+			this.object = object;
+		}
+	}
+
+	/**
+	 * An immutable, ordered view of this list at a specific version.
+	 */
+	private static class Snapshot {
+
+		final long version;
+		final Object[] elements;
+
+		private Snapshot(long version, Object[] elements) {
+			this.version = version;
+			this.elements = elements;
+		}
+	}
+}
@@ -5,11 +5,11 @@ import com.google.gson.GsonBuilder;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import sx.blah.discord.Discord4J;
+import sx.blah.discord.api.CachePolicy;
 import sx.blah.discord.api.IDiscordClient;
 import sx.blah.discord.api.internal.json.generic.PermissionOverwrite;
 import sx.blah.discord.api.internal.json.generic.RoleResponse;
 import sx.blah.discord.api.internal.json.generic.StatusObject;
-import sx.blah.discord.api.internal.json.requests.GuildMembersRequest;
 import sx.blah.discord.api.internal.json.responses.*;
 import sx.blah.discord.handle.audio.impl.AudioManager;
 import sx.blah.discord.handle.impl.obj.*;
@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -208,7 +209,8 @@ public class DiscordUtils {
 	}
 
 	/**
-	 * Creates a guild object from a json response.
+	 * Creates a guild object from a json response. NOTE: If the guild is already CACHED, it is reconciled with the
+	 * response instead and the resulting role, channel and user leave events are dispatched.
 	 *
 	 * @param client The discord client.
 	 * @param json   The json response.
@@ -218,28 +220,9 @@ public class DiscordUtils {
 		Guild guild;
 
 		if ((guild = (Guild) client.getGuildByID(json.id)) != null) {
-			guild.setIcon(json.icon);
-			guild.setName(json.name);
-			guild.setOwnerID(json.owner_id);
-			guild.setAFKChannel(json.afk_channel_id);
-			guild.setAfkTimeout(json.afk_timeout);
-			guild.setRegion(json.region);
-
-			List<IRole> newRoles = new ArrayList<>();
-			for (RoleResponse roleResponse : json.roles) {
-				newRoles.add(getRoleFromJSON(guild, roleResponse));
-			}
-			guild.getRoles().clear();
-			guild.getRoles().addAll(newRoles);
-
-			for (IUser user : guild.getUsers()) { //Removes all deprecated roles
-				for (IRole role : user.getRolesForGuild(guild)) {
-					if (guild.getRoleByID(role.getID()) == null) {
-						user.getRolesForGuild(guild).remove(role);
-					}
-				}
-			}
+			GuildReconciler.reconcile(client, guild, json).forEach(client.getDispatcher()::dispatch);
 		} else {
+			CachePolicy policy = ((DiscordClientImpl) client).cachePolicy;
 			guild = new Guild(client, json.name, json.id, json.icon, json.owner_id, json.afk_channel_id,
 					json.afk_timeout, json.region);
 
@@ -249,28 +232,14 @@ public class DiscordUtils {
 				}
 
 			if (json.members != null)
-				for (GuildResponse.MemberResponse member : json.members) {
-					IUser user = getUserFromGuildMemberResponse(client, guild, member);
-					guild.addUser(user);
-				}
+				addMembersFromJSON(client, guild, json.members);
 
-			if (json.large) { //The guild is large, we have to send a request to get the offline users
-				((DiscordClientImpl) client).ws.send(DiscordUtils.GSON.toJson(new GuildMembersRequest(json.id)));
+			if (json.large && policy.cachesMembers()) { //The guild is large, we have to request the offline users
+				((DiscordClientImpl) client).memberRequests.request(json.id, json.member_count);
 			}
 
 			if (json.presences != null)
-				for (PresenceResponse presence : json.presences) {
-					User user = (User) guild.getUserByID(presence.user.id);
-					if (user != null) {
-						Status status = getStatusFromJSON(presence.game);
-						if (status.getType() == Status.StatusType.STREAM) {
-							user.setPresence(Presences.STREAMING);
-						} else {
-							user.setPresence(Presences.valueOf((presence.status).toUpperCase()));
-						}
-						user.setStatus(status);
-					}
-				}
+				addPresencesFromJSON(client, guild, json.presences);
 
 			if (json.channels != null)
 				for (ChannelResponse channelResponse : json.channels) {
@@ -282,15 +251,68 @@ public class DiscordUtils {
 					}
 				}
 
-			if (json.voice_states != null) {
-				for (VoiceStateResponse voiceState : json.voice_states) {
-					((User) guild.getUserByID(voiceState.user_id)).getConnectedVoiceChannels()
-							.add(guild.getVoiceChannelByID(voiceState.channel_id));
+			if (json.voice_states != null)
+				addVoiceStatesFromJSON(client, guild, json.voice_states);
+		}
+
+		return guild;
+	}
+
+	/**
+	 * CACHES the presences of a guild's members, if the client's {@link CachePolicy} caches presences.
+	 *
+	 * @param client The discord client.
+	 * @param guild The guild the members belong to.
+	 * @param presences The json responses.
+	 */
+	public static void addPresencesFromJSON(IDiscordClient client, Guild guild, PresenceResponse[] presences) {
+		if (!((DiscordClientImpl) client).cachePolicy.cachesPresences())
+			return;
+
+		for (PresenceResponse presence : presences) {
+			User user = (User) guild.getUserByID(presence.user.id);
+			if (user != null) {
+				Status status = getStatusFromJSON(presence.game);
+				if (status.getType() == Status.StatusType.STREAM) {
+					user.setPresence(Presences.STREAMING);
+				} else {
+					user.setPresence(Presences.valueOf((presence.status).toUpperCase()));
 				}
+				user.setStatus(status);
 			}
 		}
+	}
 
-		return guild;
+	/**
+	 * CACHES the voice channels a guild's members are connected to. Only the client's own voice state is cached if the
+	 * client's {@link CachePolicy} doesn't cache voice states.
+	 *
+	 * @param client The discord client.
+	 * @param guild The guild the members belong to.
+	 * @param voiceStates The json responses.
+	 */
+	public static void addVoiceStatesFromJSON(IDiscordClient client, Guild guild, VoiceStateResponse[] voiceStates) {
+		boolean cachesVoiceStates = ((DiscordClientImpl) client).cachePolicy.cachesVoiceStates();
+		for (VoiceStateResponse voiceState : voiceStates) {
+			User user = (User) guild.getUserByID(voiceState.user_id);
+			IVoiceChannel channel = guild.getVoiceChannelByID(voiceState.channel_id);
+			if (user != null && channel != null && (cachesVoiceStates || user.equals(client.getOurUser()))
+					&& !user.getConnectedVoiceChannels().contains(channel))
+				user.getConnectedVoiceChannels().add(channel);
+		}
+	}
+
+	/**
+	 * Checks whether a guild member should be CACHED according to the client's {@link CachePolicy}. The client's own
+	 * membership is always cached.
+	 *
+	 * @param client The discord client.
+	 * @param userID The id of the member.
+	 * @return True if the member should be cached, false if otherwise.
+	 */
+	public static boolean isCachedMember(IDiscordClient client, String userID) {
+		return ((DiscordClientImpl) client).cachePolicy.cachesMembers()
+				|| (client.getOurUser() != null && client.getOurUser().getID().equals(userID));
 	}
 
 	/**
@@ -312,7 +334,7 @@ public class DiscordUtils {
 	}
 
 	/**
-	 * Creates a user object from a guild member json response.
+	 * Creates a user object from a guild member json response and CACHES its membership in the guild.
 	 *
 	 * @param client The discord client.
 	 * @param guild  The guild the member belongs to.
@@ -321,21 +343,60 @@ public class DiscordUtils {
 	 */
 	public static IUser getUserFromGuildMemberResponse(IDiscordClient client, IGuild guild,
 													   GuildResponse.MemberResponse json) {
-		User user = getUserFromJSON(client, json.user);
+		Member member = ((Guild) guild).addUser(getUserFromJSON(client, json.user));
+
+		List<IRole> roles = new ArrayList<>();
 		for (String role : json.roles) {
-			Role roleObj = (Role) guild.getRoleByID(role);
-			if (roleObj != null && !user.getRolesForGuild(guild).contains(roleObj))
-				user.addRole(guild.getID(), roleObj);
+			IRole roleObj = guild.getRoleByID(role);
+			if (roleObj != null && !roles.contains(roleObj))
+				roles.add(roleObj);
 		}
-		user.addRole(guild.getID(), guild.getRoleByID(guild.getID())); //@everyone role
+		roles.add(guild.getRoleByID(guild.getID())); //@everyone role
+		member.setRoles(roles);
 
-		user.addNick(guild.getID(), json.nick);
+		member.setNick(json.nick);
 
-		user.setIsDeaf(guild.getID(), json.deaf);
-		user.setIsMute(guild.getID(), json.mute);
+		member.setIsDeaf(json.deaf);
+		member.setIsMute(json.mute);
 
-		((Guild) guild).getJoinTimes().put(user, convertFromTimestamp(json.joined_at));
-		return user;
+		member.setJoinTime(convertFromTimestamp(json.joined_at));
+		return member.getUser();
+	}
+
+	/**
+	 * CACHES the memberships of many users in a guild at once, like the members of a member chunk. Members which
+	 * shouldn't be cached according to the client's {@link CachePolicy} are skipped.
+	 *
+	 * @param client The discord client.
+	 * @param guild The guild the members belong to.
+	 * @param members The json responses.
+	 */
+	public static void addMembersFromJSON(IDiscordClient client, Guild guild, GuildResponse.MemberResponse[] members) {
+		IRole everyone = guild.getRoleByID(guild.getID());
+		boolean cachesMembers = ((DiscordClientImpl) client).cachePolicy.cachesMembers();
+		String ourID = client.getOurUser() == null ? null : client.getOurUser().getID();
+
+		List<IRole> roles = new ArrayList<>();
+		for (GuildResponse.MemberResponse json : members) {
+			if (!cachesMembers && !json.user.id.equals(ourID))
+				continue;
+
+			Member member = guild.addUser(getUserFromJSON(client, json.user));
+
+			roles.clear();
+			for (String role : json.roles) {
+				IRole roleObj = guild.getRoleByID(role);
+				if (roleObj != null && !roles.contains(roleObj))
+					roles.add(roleObj);
+			}
+			roles.add(everyone);
+			member.setRoles(roles);
+
+			member.setNick(json.nick);
+			member.setIsDeaf(json.deaf);
+			member.setIsMute(json.mute);
+			member.setJoinTime(convertFromTimestamp(json.joined_at));
+		}
 	}
 
 	/**
@@ -386,6 +447,7 @@ public class DiscordUtils {
 					json.edited_timestamp == null ? null : convertFromTimestamp(json.edited_timestamp));
 			message.setPinned(json.pinned);
 			message.setChannelMentions();
+			channel.getMessages().update(message);
 
 			return message;
 		} else
@@ -421,6 +483,7 @@ public class DiscordUtils {
 			channel.getUserOverrides().putAll(userOverrides);
 			channel.getRoleOverrides().clear();
 			channel.getRoleOverrides().putAll(roleOverrides);
+			channel.invalidatePermissions();
 		} else {
 			channel = new Channel(client, json.name, json.id, guild, json.topic, json.position, roleOverrides,
 					userOverrides);
@@ -518,6 +581,7 @@ public class DiscordUtils {
 			channel.getUserOverrides().putAll(userOverrides);
 			channel.getRoleOverrides().clear();
 			channel.getRoleOverrides().putAll(roleOverrides);
+			channel.invalidatePermissions();
 		} else {
 			channel = new VoiceChannel(client, json.name, json.id, guild, json.topic, json.position, json.user_limit,
 					json.bitrate, roleOverrides, userOverrides);
@@ -578,6 +642,21 @@ public class DiscordUtils {
 	 */
 	public static void checkPermissions(IUser user, IChannel channel, EnumSet<Permissions> required) throws
 			MissingPermissionsException {
+		if (channel instanceof Channel && !channel.isPrivate()) { //Checks the CACHED bitmask without building sets
+			int contained = (int) ((Channel) channel).getPermissionsMask(user);
+			if (Permissions.ADMINISTRATOR.hasPermission(contained, false))
+				return;
+
+			EnumSet<Permissions> missing = EnumSet.noneOf(Permissions.class);
+			for (Permissions requiredPermission : required) {
+				if (!requiredPermission.hasPermission(contained, false))
+					missing.add(requiredPermission);
+			}
+			if (missing.size() > 0)
+				throw new MissingPermissionsException(missing);
+			return;
+		}
+
 		try {
 			EnumSet<Permissions> contained = channel.getModifiedPermissions(user);
 			checkPermissions(contained, required);
@@ -774,4 +853,17 @@ public class DiscordUtils {
 
 		return AudioSystem.getAudioInputStream(audioFormat, pcmStream);
 	}
+
+	/**
+	 * Creates a future which has already completed exceptionally.
+	 *
+	 * @param cause The exception.
+	 * @param <T> The type of the future's result.
+	 * @return The future.
+	 */
+	public static <T> CompletableFuture<T> failedFuture(Throwable cause) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(cause);
+		return future;
+	}
 }
@@ -23,10 +23,7 @@ import sx.blah.discord.api.internal.json.requests.VoiceUDPConnectRequest;
 import sx.blah.discord.api.internal.json.responses.VoiceUpdateResponse;
 import sx.blah.discord.util.LogMarkers;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.*;
 import java.nio.ByteBuffer;
 import java.util.concurrent.Executors;
@@ -34,7 +31,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.zip.InflaterInputStream;
+import java.util.zip.DataFormatException;
 
 @WebSocket(maxBinaryMessageSize = Integer.MAX_VALUE, maxIdleTime = Integer.MAX_VALUE, maxTextMessageSize = Integer.MAX_VALUE)
 public class DiscordVoiceWS {
@@ -57,6 +54,7 @@ public class DiscordVoiceWS {
 	});
 
 	private DiscordClientImpl client;
+	private final ZlibDecompressor decompressor = new ZlibDecompressor();
 
 	private IGuild guild;
 
@@ -69,6 +67,11 @@ public class DiscordVoiceWS {
 
 	private byte[] secret;
 
+	/**
+	 * Used for keep alive. Keeps last time (in ms) that we sent the keep alive so we can accurately time our keep alives.
+	 */
+	private volatile long timer = System.currentTimeMillis();
+
 	private Session session;
 
 	public static DiscordVoiceWS connect(VoiceUpdateResponse response, IDiscordClient client) throws Exception {
@@ -92,15 +95,22 @@ public class DiscordVoiceWS {
 	@OnWebSocketConnect
 	public void onOpen(Session session) {
 		this.session = session;
-		send(DiscordUtils.GSON.toJson(new VoiceConnectRequest(event.guild_id, client.ourUser.getID(), client.sessionId, event.token)));
+		DiscordWS ws = client.shards.getForGuild(event.guild_id);
+		if (ws == null) {
+			Discord4J.LOGGER.error(LogMarkers.VOICE_WEBSOCKET, "The shard of guild {} isn't connected, the voice connection can't be identified.", event.guild_id);
+			disconnect(VoiceDisconnectedEvent.Reason.INIT_ERROR);
+			return;
+		}
+		send(DiscordUtils.GSON.toJson(new VoiceConnectRequest(event.guild_id, client.ourUser.getID(), ws.sessionId, event.token)));
 		Discord4J.LOGGER.info(LogMarkers.VOICE_WEBSOCKET, "Connected to the Discord Voice websocket.");
 	}
 
 	@OnWebSocketMessage
 	public final void onMessage(Session session, String message) {
-		JsonParser parser = new JsonParser();
-		JsonObject object = parser.parse(message).getAsJsonObject();
+		onMessage(new JsonParser().parse(message).getAsJsonObject());
+	}
 
+	private void onMessage(JsonObject object) {
 		int op = object.get("op").getAsInt();
 
 		switch (op) {
@@ -186,7 +196,7 @@ public class DiscordVoiceWS {
 					if (isConnected.get()) {
 						byte[] data = guild.getAudioManager().getAudio();
 						if (data != null && data.length > 0 && !Discord4J.audioDisabled.get()) {
-							client.timer = System.currentTimeMillis();
+							timer = System.currentTimeMillis();
 							AudioPacket packet = new AudioPacket(seq, timestamp, ssrc, data, secret);
 							if (!isSpeaking)
 								setSpeaking(true);
@@ -230,37 +240,24 @@ public class DiscordVoiceWS {
 	private void startKeepalive(int hearbeat_interval) {
 		Runnable keepAlive = ()->{
 			if (this.isConnected.get()) {
-				long l = System.currentTimeMillis()-client.timer;
+				long l = System.currentTimeMillis()-timer;
 				Discord4J.LOGGER.debug(LogMarkers.KEEPALIVE, "Sending keep alive... ({}). Took {} ms.", System.currentTimeMillis(), l);
 				send(DiscordUtils.GSON.toJson(new VoiceKeepAliveRequest(System.currentTimeMillis())));
-				client.timer = System.currentTimeMillis();
+				timer = System.currentTimeMillis();
 			}
 		};
 		executorService.scheduleAtFixedRate(keepAlive,
-				client.timer+hearbeat_interval-System.currentTimeMillis(),
+				timer+hearbeat_interval-System.currentTimeMillis(),
 				hearbeat_interval, TimeUnit.MILLISECONDS);
 	}
 
 	@OnWebSocketMessage
 	public void onMessage(Session session, byte[] buf, int offset, int length) {
 
-		//Converts binary data to readable string data
+		//Inflates the binary data and parses it directly
 		try {
-			InflaterInputStream inputStream = new InflaterInputStream(new ByteArrayInputStream(buf));
-			BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-
-			StringBuilder sb = new StringBuilder();
-			String read;
-			while ((read = reader.readLine()) != null) {
-				sb.append(read);
-			}
-
-			String data = sb.toString();
-			reader.close();
-			inputStream.close();
-
-			onMessage(session, data);
-		} catch (IOException e) {
+			onMessage(new JsonParser().parse(decompressor.inflate(buf, offset, length)).getAsJsonObject());
+		} catch (DataFormatException e) {
 			Discord4J.LOGGER.error(LogMarkers.VOICE_WEBSOCKET, "Discord Internal Exception", e);
 		}
 	}
@@ -323,6 +320,7 @@ public class DiscordVoiceWS {
 			if (reason != VoiceDisconnectedEvent.Reason.INIT_ERROR) {
 				session.close();
 			}
+			decompressor.close();
 		}
 	}
 
@@ -2,7 +2,6 @@ package sx.blah.discord.api.internal;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.annotations.*;
@@ -23,16 +22,16 @@ import sx.blah.discord.util.LogMarkers;
 import sx.blah.discord.util.MessageList;
 import sx.blah.discord.util.RequestBuilder;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
 import java.nio.channels.UnresolvedAddressException;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadLocalRandom;
@@ -42,7 +41,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.zip.InflaterInputStream;
+import java.util.zip.DataFormatException;
 
 //This is what Hlaaftana uses so it must be good :shrug:
 @WebSocket(maxBinaryMessageSize = Integer.MAX_VALUE, maxIdleTime = Integer.MAX_VALUE, maxTextMessageSize = Integer.MAX_VALUE)
@@ -56,6 +55,31 @@ public class DiscordWS {
 	private volatile ScheduledExecutorService executorService;
 	private final AtomicBoolean startingUp = new AtomicBoolean(false);
 	protected final AtomicBoolean isReconnecting = new AtomicBoolean(false);
+
+	/**
+	 * The shard this connection handles.
+	 */
+	protected final int shard;
+
+	/**
+	 * Time (in ms) between keep alive messages.
+	 */
+	protected volatile long heartbeat;
+
+	/**
+	 * Used for keep alive. Keeps last time (in ms) that we sent the keep alive so we can accurately time our keep alives.
+	 */
+	protected volatile long timer = System.currentTimeMillis();
+
+	/**
+	 * The websocket session id.
+	 */
+	protected volatile String sessionId;
+
+	/**
+	 * Caches the last operation done by the websocket, required for handling redirects.
+	 */
+	protected volatile long lastSequence = 0;
 	private final Supplier<TimerTask> cancelReconnectTaskSupplier = new Supplier<TimerTask>() {
 		private volatile CancelTask task;
 
@@ -98,6 +122,12 @@ public class DiscordWS {
 	private final AtomicInteger missedPingCount = new AtomicInteger(0);
 	private final AtomicInteger reconnectAttempts = new AtomicInteger(0);
 	private final int maxReconnectAttempts;
+	private final ZlibDecompressor decompressor = new ZlibDecompressor();
+	/**
+	 * The guilds of the channels received through this connection (key = channel id, value = guild id), used to route
+	 * events which only carry a channel id to their guild's lane.
+	 */
+	private final Map<String, String> channelGuilds = new ConcurrentHashMap<>();
 	private static final int INITIAL_RECONNECT_TIME = 15; //The factor by which the reconnect time is exponentially increased by on successive failures
 	private static final String GATEWAY_VERSION = "5";
 	private static final int READY_TIMEOUT = 10; //Time in seconds where the ready event will timeout from wait for guilds
@@ -119,9 +149,10 @@ public class DiscordWS {
 	 */
 	public static final int LARGE_THRESHOLD = 250; //250 is currently the max handled by discord
 
-	public DiscordWS(IDiscordClient client, String gateway, long timeout, int maxMissedPingCount, boolean isDaemon,
+	public DiscordWS(IDiscordClient client, String gateway, int shard, long timeout, int maxMissedPingCount, boolean isDaemon,
 					 int reconnectAttempts, boolean async) throws Exception {
 		this.client = (DiscordClientImpl)client;
+		this.shard = shard;
 		this.timeoutTime = timeout;
 		this.maxMissedPingCount = maxMissedPingCount;
 		this.isDaemon = isDaemon;
@@ -130,9 +161,13 @@ public class DiscordWS {
 		this.startingUp.set(true);
 		this.async = async;
 		//Ensuring gateway is ready
-		if (!gateway.endsWith("/"))
-			gateway += "/";
-		gateway += "?encoding=json&v="+GATEWAY_VERSION;
+		if (!gateway.contains("?")) { //Reconnects reuse the already formatted gateway
+			if (!gateway.endsWith("/"))
+				gateway += "/";
+			gateway += "?encoding=json&v="+GATEWAY_VERSION;
+			if (this.client.transportCompression)
+				gateway += "&compress=zlib-stream";
+		}
 		this.gateway = gateway;
 
 		SslContextFactory sslFactory = new SslContextFactory();
@@ -202,7 +237,7 @@ public class DiscordWS {
 
 				if (reason == DiscordDisconnectedEvent.Reason.INIT_ERROR || reason == DiscordDisconnectedEvent.Reason.INVALID_SESSION) {
 					try {
-						client.ws = new DiscordWS(client, gateway, timeoutTime, maxMissedPingCount, isDaemon, maxReconnectAttempts, async);
+						client.shards.replace(this, new DiscordWS(client, gateway, shard, timeoutTime, maxMissedPingCount, isDaemon, maxReconnectAttempts, async));
 						disconnect(DiscordDisconnectedEvent.Reason.RECONNECTING);
 					} catch (Exception e) {
 						Discord4J.LOGGER.error(LogMarkers.WEBSOCKET, "Error caught while attempting to reconnect.", e);
@@ -224,8 +259,12 @@ public class DiscordWS {
 		sentPing.set(false);
 		missedPingCount.set(0);
 		if(!isReconnecting.get()) { //Doesn't let the bot actually disconnect unless reconnecting has failed
-			client.ws = null;
-			for (DiscordVoiceWS vws : client.voiceConnections.values()) { //Ensures that voice connections are closed.
+			client.shards.remove(this);
+			for (Map.Entry<IGuild, DiscordVoiceWS> entry : client.voiceConnections.entrySet()) { //Ensures that voice connections are closed.
+				if (client.shards.getShardForGuild(entry.getKey().getID()) != shard)
+					continue;
+
+				DiscordVoiceWS vws = entry.getValue();
 				VoiceDisconnectedEvent.Reason voiceReason;
 				try {
 					voiceReason = VoiceDisconnectedEvent.Reason.valueOf(reason.toString());
@@ -238,6 +277,7 @@ public class DiscordWS {
 			if (reason != DiscordDisconnectedEvent.Reason.INIT_ERROR) {
 				session.close();
 			}
+			decompressor.close();
 		}
 	}
 
@@ -245,13 +285,26 @@ public class DiscordWS {
 	 * Clears the api's cache
 	 */
 	protected void clearCache() {
-		client.sessionId = null;
-		client.voiceConnections.clear();
-		client.guildList.clear();
-		client.heartbeat = 0;
-		client.lastSequence = 0;
-		client.ourUser = null;
-		client.privateChannels.clear();
+		sessionId = null;
+		heartbeat = 0;
+		lastSequence = 0;
+		client.shards.markUnready(shard);
+		client.memberRequests.clear(shard);
+		channelGuilds.clear();
+		decompressor.close(); //A new connection starts a new zlib stream anyways
+		for (IGuild guild : client.guildList) {
+			if (client.shards.getShardForGuild(guild.getID()) == shard) {
+				client.voiceConnections.remove(guild);
+				client.guildList.remove(guild);
+				client.index.removeGuild(guild);
+			}
+		}
+		if (shard == 0) { //Only the first shard receives private channels
+			client.privateChannels.forEach(client.index::removeChannel);
+			client.privateChannels.clear();
+		}
+		if (!client.shards.hasReadyShards())
+			client.ourUser = null;
 		client.REGIONS.clear();
 	}
 
@@ -286,6 +339,7 @@ public class DiscordWS {
 	@OnWebSocketConnect
 	public void onOpen(Session session) {
 		this.session = session;
+		decompressor.reset(); //Each connection starts a new zlib stream
 	}
 
 	private void startKeepalive() {
@@ -303,24 +357,24 @@ public class DiscordWS {
 					if (missedPingCount.get() > maxMissedPingCount && maxMissedPingCount > 0) {
 						Discord4J.LOGGER.warn(LogMarkers.KEEPALIVE, "Missed {} heartbeat responses in a row, disconnecting...", missedPingCount);
 						disconnect(DiscordDisconnectedEvent.Reason.MISSED_PINGS);
-					} else if ((System.currentTimeMillis()-client.timer) > timeoutTime && timeoutTime > 0) {
-						Discord4J.LOGGER.warn(LogMarkers.KEEPALIVE, "Connection timed out at {}ms", System.currentTimeMillis()-client.timer);
+					} else if ((System.currentTimeMillis()-timer) > timeoutTime && timeoutTime > 0) {
+						Discord4J.LOGGER.warn(LogMarkers.KEEPALIVE, "Connection timed out at {}ms", System.currentTimeMillis()-timer);
 						disconnect(DiscordDisconnectedEvent.Reason.TIMEOUT);
 					}
 					Discord4J.LOGGER.debug(LogMarkers.KEEPALIVE, "Last ping was not responded to!");
 					missedPingCount.incrementAndGet();
 				}
 
-				long l = System.currentTimeMillis()-client.timer;
+				long l = System.currentTimeMillis()-timer;
 				Discord4J.LOGGER.debug(LogMarkers.KEEPALIVE, "Sending keep alive... ({}). Took {} ms.", System.currentTimeMillis(), l);
-				send(DiscordUtils.GSON.toJson(new KeepAliveRequest(client.lastSequence)));
-				client.timer = System.currentTimeMillis();
+				send(DiscordUtils.GSON.toJson(new KeepAliveRequest(lastSequence)));
+				timer = System.currentTimeMillis();
 				sentPing.set(true);
 			}
 		};
 		executorService.scheduleAtFixedRate(keepAlive,
-				client.timer+client.heartbeat-System.currentTimeMillis(),
-				client.heartbeat, TimeUnit.MILLISECONDS);
+				timer+heartbeat-System.currentTimeMillis(),
+				heartbeat, TimeUnit.MILLISECONDS);
 	}
 
 	/**
@@ -332,156 +386,48 @@ public class DiscordWS {
 	 */
 	@OnWebSocketMessage
 	public final void onMessage(Session session, String message) {
-		JsonParser parser = new JsonParser();
-		JsonObject object = parser.parse(message).getAsJsonObject();
-		if (object.has("message")) {
-			String msg = object.get("message").getAsString();
-			if (msg == null || msg.isEmpty()) {
-				Discord4J.LOGGER.error(LogMarkers.WEBSOCKET, "Received unknown error from Discord. Frame: {}", message);
+		try {
+			onPayload(GatewayDecoder.decode(new StringReader(message), client.cachePolicy));
+		} catch (IOException e) {
+			Discord4J.LOGGER.error(LogMarkers.WEBSOCKET, "Unable to decode frame: {}", message, e);
+		}
+	}
+
+	/**
+	 * Handles a decoded gateway payload.
+	 *
+	 * @param payload The payload.
+	 */
+	private void onPayload(EventResponse payload) {
+		if (payload.message != null) {
+			String msg = payload.message;
+			if (msg.isEmpty()) {
+				Discord4J.LOGGER.error(LogMarkers.WEBSOCKET, "Received unknown error from Discord. Op: {}", payload.op);
 			} else
-				Discord4J.LOGGER.error(LogMarkers.WEBSOCKET, "Received error from Discord: {}. Frame: {}", msg, message);
+				Discord4J.LOGGER.error(LogMarkers.WEBSOCKET, "Received error from Discord: {}. Op: {}", msg, payload.op);
 		}
-		int op = object.get("op").getAsInt();
+		int op = payload.op;
 
-		if (object.has("s") && !object.get("s").isJsonNull())
-			client.lastSequence = object.get("s").getAsLong();
+		if (payload.s != null)
+			lastSequence = payload.s;
 
 		if (op == GatewayOps.DISPATCH.ordinal()) { //Event dispatched
-			String type = object.get("t").getAsString();
-			JsonElement eventObject = object.get("d");
-
-			switch (type) {
-				case "RESUMED":
-					resumed();
-					break;
-
-				case "READY":
-					ready(eventObject);
-					break;
-
-				case "MESSAGE_CREATE":
-					messageCreate(eventObject);
-					break;
-
-				case "TYPING_START":
-					typingStart(eventObject);
-					break;
-
-				case "GUILD_CREATE":
-					guildCreate(eventObject);
-					break;
-
-				case "GUILD_MEMBER_ADD":
-					guildMemberAdd(eventObject);
-					break;
-
-				case "GUILD_MEMBER_REMOVE":
-					guildMemberRemove(eventObject);
-					break;
-
-				case "GUILD_MEMBER_UPDATE":
-					guildMemberUpdate(eventObject);
-					break;
-
-				case "MESSAGE_UPDATE":
-					messageUpdate(eventObject);
-					break;
-
-				case "MESSAGE_DELETE":
-					messageDelete(eventObject);
-					break;
-
-				case "MESSAGE_DELETE_BULK":
-					messageDeleteBulk(eventObject);
-					break;
-
-				case "PRESENCE_UPDATE":
-					presenceUpdate(eventObject);
-					break;
-
-				case "GUILD_DELETE":
-					guildDelete(eventObject);
-					break;
-
-				case "CHANNEL_CREATE":
-					channelCreate(eventObject);
-					break;
-
-				case "CHANNEL_DELETE":
-					channelDelete(eventObject);
-					break;
-
-				case "CHANNEL_PINS_UPDATE"://Fired when pins are changed, this is mostly intended for clients and I already implemented this functionality on MESSAGE_UPDATE so I'm ignoring it
-					//Payload for future reference is:
-					// {
-					// 		"last_pin_timestamp": "TIMESTAMP",
-					// 		"channel_id": "CHANNEL ID"
-					// }
-					//Ignored
-					break;
-
-				case "USER_UPDATE":
-					userUpdate(eventObject);
-					break;
-
-				case "CHANNEL_UPDATE":
-					channelUpdate(eventObject);
-					break;
-
-				case "GUILD_MEMBERS_CHUNK":
-					guildMembersChunk(eventObject);
-					break;
-
-				case "GUILD_UPDATE":
-					guildUpdate(eventObject);
-					break;
-
-				case "GUILD_ROLE_CREATE":
-					guildRoleCreate(eventObject);
-					break;
-
-				case "GUILD_ROLE_UPDATE":
-					guildRoleUpdate(eventObject);
-					break;
-
-				case "GUILD_ROLE_DELETE":
-					guildRoleDelete(eventObject);
-					break;
-
-				case "GUILD_BAN_ADD":
-					guildBanAdd(eventObject);
-					break;
-
-				case "GUILD_BAN_REMOVE":
-					guildBanRemove(eventObject);
-					break;
-
-				case "GUILD_EMOJIS_UPDATE":
-					//Ignored for now TODO: do something with emojis
-					break;
-
-				case "GUILD_INTEGRATIONS_UPDATE":
-					//Ignored for now TODO: do something with integrations
-					break;
-
-				case "VOICE_STATE_UPDATE":
-					voiceStateUpdate(eventObject);
-					break;
-
-				case "VOICE_SERVER_UPDATE":
-					voiceServerUpdate(eventObject);
-					break;
-
-				default:
-					Discord4J.LOGGER.warn(LogMarkers.WEBSOCKET, "Unknown message received: {}, REPORT THIS TO THE DISCORD4J DEV! (ignoring): {}", type, message);
+			String type = payload.t;
+			Object eventObject = payload.d;
+
+			String partitionKey = getPartitionKey(type, eventObject);
+			if (type.equals("READY") || type.equals("RESUMED")) { //The connection state must be updated before any other event is processed
+				dispatch(type, eventObject);
+			} else {
+				client.eventLanes.submit(partitionKey, () -> dispatch(type, eventObject));
 			}
 		} else if (op == GatewayOps.HEARTBEAT.ordinal()) { //We received a heartbeat, time to send one back
-			send(DiscordUtils.GSON.toJson(new KeepAliveRequest(client.lastSequence)));
+			send(DiscordUtils.GSON.toJson(new KeepAliveRequest(lastSequence)));
 		} else if (op == GatewayOps.RECONNECT.ordinal()) { //Gateway is redirecting us
-			RedirectResponse redirectResponse = DiscordUtils.GSON.fromJson(object.getAsJsonObject("d"), RedirectResponse.class);
+			RedirectResponse redirectResponse = (RedirectResponse) payload.d;
 			Discord4J.LOGGER.info(LogMarkers.WEBSOCKET, "Received a gateway redirect request, closing the socket at reopening at {}", redirectResponse.url);
 			try {
-				client.ws = new DiscordWS(client, redirectResponse.url, timeoutTime, maxMissedPingCount, isDaemon, maxReconnectAttempts, async);
+				client.shards.replace(this, new DiscordWS(client, redirectResponse.url, shard, timeoutTime, maxMissedPingCount, isDaemon, maxReconnectAttempts, async));
 				disconnect(DiscordDisconnectedEvent.Reason.RECONNECTING);
 			} catch (Exception e) {
 				Discord4J.LOGGER.error(LogMarkers.WEBSOCKET, "Discord4J Internal Exception", e);
@@ -492,16 +438,16 @@ public class DiscordWS {
 		} else if (op == GatewayOps.HELLO.ordinal()) {
 			connected();
 
-			HelloResponse helloResponse = DiscordUtils.GSON.fromJson(object.get("d"), HelloResponse.class);
+			HelloResponse helloResponse = (HelloResponse) payload.d;
 
-			client.heartbeat = helloResponse.heartbeat_interval;
+			heartbeat = helloResponse.heartbeat_interval;
 			startKeepalive();
 
-			if (client.sessionId != null) {
+			if (sessionId != null) {
 				handleReconnect();
 			} else if (!client.getToken().isEmpty()) {
-				send(DiscordUtils.GSON.toJson(new ConnectRequest(client.getToken(), "Java",
-						Discord4J.NAME, Discord4J.NAME, "", "", LARGE_THRESHOLD, true)));
+				client.shards.queueIdentify(() -> send(DiscordUtils.GSON.toJson(new ConnectRequest(client.getToken(), "Java",
+						Discord4J.NAME, Discord4J.NAME, "", "", LARGE_THRESHOLD, !client.transportCompression, shard, client.shards.getShardCount()))));
 			} else {
 				Discord4J.LOGGER.error(LogMarkers.WEBSOCKET, "Use the login() method to set your token first!");
 			}
@@ -510,7 +456,7 @@ public class DiscordWS {
 			if (!sentPing.get()) {
 				Discord4J.LOGGER.warn(LogMarkers.KEEPALIVE, "Received pong without sending ping! Is the websocket out of sync?");
 			} else {
-				pingResponseTime.set(System.currentTimeMillis()-client.timer);
+				pingResponseTime.set(System.currentTimeMillis()-timer);
 				Discord4J.LOGGER.trace(LogMarkers.KEEPALIVE, "Received pong... Response time is {}ms", pingResponseTime.get());
 				sentPing.set(false);
 				missedPingCount.set(0);
@@ -520,6 +466,224 @@ public class DiscordWS {
 		}
 	}
 
+	/**
+	 * Handles a dispatched event.
+	 *
+	 * @param type The event type.
+	 * @param eventObject The event's data.
+	 */
+	private void dispatch(String type, Object eventObject) {
+		switch (type) {
+			case "RESUMED":
+				resumed();
+				break;
+
+			case "READY":
+				ready((ReadyEventResponse) eventObject);
+				break;
+
+			case "MESSAGE_CREATE":
+				messageCreate((MessageResponse) eventObject);
+				break;
+
+			case "TYPING_START":
+				typingStart((TypingEventResponse) eventObject);
+				break;
+
+			case "GUILD_CREATE":
+				guildCreate((GuildResponse) eventObject);
+				break;
+
+			case "GUILD_MEMBER_ADD":
+				guildMemberAdd((GuildMemberAddEventResponse) eventObject);
+				break;
+
+			case "GUILD_MEMBER_REMOVE":
+				guildMemberRemove((GuildMemberRemoveEventResponse) eventObject);
+				break;
+
+			case "GUILD_MEMBER_UPDATE":
+				guildMemberUpdate((GuildMemberUpdateEventResponse) eventObject);
+				break;
+
+			case "MESSAGE_UPDATE":
+				messageUpdate((MessageResponse) eventObject);
+				break;
+
+			case "MESSAGE_DELETE":
+				messageDelete((MessageDeleteEventResponse) eventObject);
+				break;
+
+			case "MESSAGE_DELETE_BULK":
+				messageDeleteBulk((MessageDeleteBulkEventResponse) eventObject);
+				break;
+
+			case "PRESENCE_UPDATE":
+				if (eventObject != null) //Skipped by the decoder if presences aren't cached
+					presenceUpdate((PresenceUpdateEventResponse) eventObject);
+				break;
+
+			case "GUILD_DELETE":
+				guildDelete((GuildResponse) eventObject);
+				break;
+
+			case "CHANNEL_CREATE":
+				channelCreate((JsonElement) eventObject);
+				break;
+
+			case "CHANNEL_DELETE":
+				channelDelete((ChannelResponse) eventObject);
+				break;
+
+			case "CHANNEL_PINS_UPDATE"://Fired when pins are changed, this is mostly intended for clients and I already implemented this functionality on MESSAGE_UPDATE so I'm ignoring it
+				//Payload for future reference is:
+				// {
+				// 		"last_pin_timestamp": "TIMESTAMP",
+				// 		"channel_id": "CHANNEL ID"
+				// }
+				//Ignored
+				break;
+
+			case "USER_UPDATE":
+				userUpdate((UserUpdateEventResponse) eventObject);
+				break;
+
+			case "CHANNEL_UPDATE":
+				channelUpdate((ChannelUpdateEventResponse) eventObject);
+				break;
+
+			case "GUILD_MEMBERS_CHUNK":
+				guildMembersChunk((GuildMemberChunkEventResponse) eventObject);
+				break;
+
+			case "GUILD_UPDATE":
+				guildUpdate((GuildResponse) eventObject);
+				break;
+
+			case "GUILD_ROLE_CREATE":
+				guildRoleCreate((GuildRoleEventResponse) eventObject);
+				break;
+
+			case "GUILD_ROLE_UPDATE":
+				guildRoleUpdate((GuildRoleEventResponse) eventObject);
+				break;
+
+			case "GUILD_ROLE_DELETE":
+				guildRoleDelete((GuildRoleDeleteEventResponse) eventObject);
+				break;
+
+			case "GUILD_BAN_ADD":
+				guildBanAdd((GuildBanEventResponse) eventObject);
+				break;
+
+			case "GUILD_BAN_REMOVE":
+				guildBanRemove((GuildBanEventResponse) eventObject);
+				break;
+
+			case "GUILD_EMOJIS_UPDATE":
+				//Ignored for now TODO: do something with emojis
+				break;
+
+			case "GUILD_INTEGRATIONS_UPDATE":
+				//Ignored for now TODO: do something with integrations
+				break;
+
+			case "VOICE_STATE_UPDATE":
+				voiceStateUpdate((VoiceStateResponse) eventObject);
+				break;
+
+			case "VOICE_SERVER_UPDATE":
+				voiceServerUpdate((VoiceUpdateResponse) eventObject);
+				break;
+
+			default:
+				Discord4J.LOGGER.warn(LogMarkers.WEBSOCKET, "Unknown message received: {}, REPORT THIS TO THE DISCORD4J DEV! (ignoring): {}", type, eventObject);
+		}
+	}
+
+	/**
+	 * Gets the key which determines the event lane an event is processed on. This is the id of the guild the event
+	 * belongs to or the channel id for private channel events, so that each guild's events are processed in order.
+	 * <p>
+	 * NOTE: This is called on the websocket thread in the order events are received, it must not depend on the cache
+	 * (which is filled by the lanes). Events which only carry a channel id are routed via {@link #channelGuilds}
+	 * instead.
+	 *
+	 * @param type The event type.
+	 * @param eventObject The event's data.
+	 * @return The partition key, or null if the event doesn't belong to a guild or channel.
+	 */
+	private String getPartitionKey(String type, Object eventObject) {
+		if (eventObject instanceof ReadyEventResponse) {
+			for (GuildResponse guild : ((ReadyEventResponse) eventObject).guilds)
+				addChannelRoutes(guild);
+			return null;
+		} else if (eventObject instanceof GuildResponse) {
+			GuildResponse guild = (GuildResponse) eventObject;
+			if (!type.equals("GUILD_DELETE"))
+				addChannelRoutes(guild);
+			else if (!guild.unavailable) //The guild was left
+				channelGuilds.values().removeIf(guild.id::equals);
+			return guild.id;
+		} else if (eventObject instanceof ChannelResponse) {
+			ChannelResponse channel = (ChannelResponse) eventObject;
+			if (type.equals("CHANNEL_DELETE"))
+				channelGuilds.remove(channel.id);
+			return channel.guild_id == null ? channel.id : channel.guild_id;
+		} else if (eventObject instanceof MessageResponse)
+			return getChannelPartitionKey(((MessageResponse) eventObject).guild_id, ((MessageResponse) eventObject).channel_id);
+		else if (eventObject instanceof MessageDeleteEventResponse)
+			return getChannelPartitionKey(((MessageDeleteEventResponse) eventObject).guild_id, ((MessageDeleteEventResponse) eventObject).channel_id);
+		else if (eventObject instanceof MessageDeleteBulkEventResponse)
+			return getChannelPartitionKey(((MessageDeleteBulkEventResponse) eventObject).guild_id, ((MessageDeleteBulkEventResponse) eventObject).channel_id);
+		else if (eventObject instanceof TypingEventResponse)
+			return getChannelPartitionKey(((TypingEventResponse) eventObject).guild_id, ((TypingEventResponse) eventObject).channel_id);
+		else if (eventObject instanceof GuildMemberAddEventResponse)
+			return ((GuildMemberAddEventResponse) eventObject).guild_id;
+		else if (eventObject instanceof GuildMemberRemoveEventResponse)
+			return ((GuildMemberRemoveEventResponse) eventObject).guild_id;
+		else if (eventObject instanceof GuildMemberUpdateEventResponse)
+			return ((GuildMemberUpdateEventResponse) eventObject).guild_id;
+		else if (eventObject instanceof GuildMemberChunkEventResponse)
+			return ((GuildMemberChunkEventResponse) eventObject).guild_id;
+		else if (eventObject instanceof GuildRoleEventResponse)
+			return ((GuildRoleEventResponse) eventObject).guild_id;
+		else if (eventObject instanceof GuildRoleDeleteEventResponse)
+			return ((GuildRoleDeleteEventResponse) eventObject).guild_id;
+		else if (eventObject instanceof GuildBanEventResponse)
+			return ((GuildBanEventResponse) eventObject).guild_id;
+		else if (eventObject instanceof PresenceUpdateEventResponse)
+			return ((PresenceUpdateEventResponse) eventObject).guild_id;
+		else if (eventObject instanceof VoiceStateResponse)
+			return ((VoiceStateResponse) eventObject).guild_id;
+		else if (eventObject instanceof VoiceUpdateResponse)
+			return ((VoiceUpdateResponse) eventObject).guild_id;
+		else if (eventObject instanceof JsonObject) { //Channel creation
+			JsonObject object = (JsonObject) eventObject;
+			String id = object.has("id") ? object.get("id").getAsString() : null;
+			if (object.has("guild_id") && !object.get("guild_id").isJsonNull()) {
+				String guildID = object.get("guild_id").getAsString();
+				if (id != null)
+					channelGuilds.put(id, guildID);
+				return guildID;
+			}
+			return id;
+		}
+		return null;
+	}
+
+	private String getChannelPartitionKey(String guildID, String channelID) {
+		if (guildID != null)
+			return guildID;
+		return channelGuilds.getOrDefault(channelID, channelID); //Private channels aren't routed, they use their own id
+	}
+
+	private void addChannelRoutes(GuildResponse guild) {
+		if (guild.channels != null)
+			for (ChannelResponse channel : guild.channels)
+				channelGuilds.put(channel.id, guild.id);
+	}
+
 	private void connected() {
 		isConnected.set(true);
 		startingUp.set(false);
@@ -531,7 +695,7 @@ public class DiscordWS {
 	}
 
 	private void handleReconnect() {
-		send(DiscordUtils.GSON.toJson(new ResumeRequest(client.sessionId, client.lastSequence, client.getToken())));
+		send(DiscordUtils.GSON.toJson(new ResumeRequest(sessionId, lastSequence, client.getToken())));
 	}
 
 	private void resumed() {
@@ -539,9 +703,9 @@ public class DiscordWS {
 		client.dispatcher.dispatch(new DiscordReconnectedEvent());
 	}
 
-	private void ready(JsonElement eventObject) {
-		final ReadyEventResponse event = DiscordUtils.GSON.fromJson(eventObject, ReadyEventResponse.class);
-		Discord4J.LOGGER.info(LogMarkers.WEBSOCKET, "Connected to the Discord websocket v"+event.v);
+	private void ready(ReadyEventResponse event) {
+		Discord4J.LOGGER.info(LogMarkers.WEBSOCKET, "Connected to the Discord websocket v{} (shard {}/{}).", event.v,
+				shard, client.shards.getShardCount());
 
 		client.isReady = true;
 
@@ -549,34 +713,48 @@ public class DiscordWS {
 		isReconnecting.set(false);
 		isConnected.set(true); //Redundancy due to how reconnects work
 
-		new RequestBuilder(client).setAsync(true).doAction(() -> { //Ready event handling 1/2
-			client.sessionId = event.session_id;
+		//Processed before any event of this session is handed to the lanes, so guild events always see our user
+		sessionId = event.session_id;
 
-			client.ourUser = DiscordUtils.getUserFromJSON(client, event.user);
+		client.ourUser = DiscordUtils.getUserFromJSON(client, event.user);
 
-			Discord4J.LOGGER.debug(LogMarkers.KEEPALIVE, "Received heartbeat interval of {}.", client.heartbeat);
+		Discord4J.LOGGER.debug(LogMarkers.KEEPALIVE, "Received heartbeat interval of {}.", heartbeat);
 
-			Discord4J.LOGGER.info(LogMarkers.WEBSOCKET, "Connected to {} guilds.", event.guilds.length);
-			if (event.guilds.length > MessageList.MAX_GUILD_COUNT) //Disable initial caching for performance
-				MessageList.shouldDownloadHistoryAutomatically(false);
+		Discord4J.LOGGER.info(LogMarkers.WEBSOCKET, "Connected to {} guilds.", event.guilds.length);
+		//Disable initial caching for performance, unless the message cache budget already bounds it
+		if (event.guilds.length > MessageList.MAX_GUILD_COUNT && !client.messageCache.isLimited())
+			MessageList.shouldDownloadHistoryAutomatically(false);
 
-			for (GuildResponse guildResponse : event.guilds) {
-				if (guildResponse.unavailable) { //Guild can't be reached, so we ignore it
-					continue;
-				}
+		for (GuildResponse guildResponse : event.guilds) {
+			if (guildResponse.unavailable) { //Guild can't be reached, so we ignore it
+				continue;
+			}
 
-				IGuild guild = DiscordUtils.getGuildFromJSON(client, guildResponse);
-				if (guild != null)
-					client.guildList.add(guild);
+			IGuild guild = DiscordUtils.getGuildFromJSON(client, guildResponse);
+			if (guild != null) {
+				client.guildList.add(guild);
+				client.index.addGuild(guild);
 			}
+		}
 
-			guildsToWaitFor.set(event.guilds.length - client.getGuilds().size());
-			Discord4J.LOGGER.trace(LogMarkers.WEBSOCKET, "Initially loaded {}/{} guilds.", client.getGuilds().size(), event.guilds.length);
+		int loaded = (int) Arrays.stream(event.guilds).filter(guild -> client.getGuildByID(guild.id) != null).count();
+		guildsToWaitFor.set(event.guilds.length - loaded);
+		Discord4J.LOGGER.trace(LogMarkers.WEBSOCKET, "Initially loaded {}/{} guilds.", loaded, event.guilds.length);
+
+		for (PrivateChannelResponse privateChannelResponse : event.private_channels) {
+			PrivateChannel channel = (PrivateChannel) DiscordUtils.getPrivateChannelFromJSON(client, privateChannelResponse);
+			client.privateChannels.add(channel);
+			client.index.addChannel(channel);
+		}
 
+		new RequestBuilder(client).setAsync(true).doAction(() -> { //Waits for the remaining guilds without blocking the websocket
 			if (!async) {
 				final int initialCount = guildsToWaitFor.get();
 				for (int i = 0; i < initialCount; i++) {
 					client.dispatcher.waitFor((GuildCreateEvent createEvent) -> { //Wait for guilds
+						if (client.shards.getShardForGuild(createEvent.getGuild().getID()) != shard)
+							return false; //Handled by another shard
+
 						guildsToWaitFor.set(guildsToWaitFor.get() - 1);
 						Discord4J.LOGGER.trace(LogMarkers.WEBSOCKET, "Loaded {}/{} guilds.", event.guilds.length - guildsToWaitFor.get(), event.guilds.length);
 						return true;
@@ -592,21 +770,16 @@ public class DiscordWS {
 				}
 			}
 			return true;
-		}).andThen(() -> { //Ready event handling 2/2
-			for (PrivateChannelResponse privateChannelResponse : event.private_channels) {
-				PrivateChannel channel = (PrivateChannel) DiscordUtils.getPrivateChannelFromJSON(client, privateChannelResponse);
-				client.privateChannels.add(channel);
-			}
-
+		}).andThen(() -> {
 			Discord4J.LOGGER.debug(LogMarkers.WEBSOCKET, "Logged in as {} (ID {}).", client.ourUser.getName(), client.ourUser.getID());
 
-			client.dispatcher.dispatch(new ReadyEvent());
+			if (client.shards.markReady(shard)) //Only dispatched once every shard is ready
+				client.dispatcher.dispatch(new ReadyEvent());
 			return true;
 		}).execute();
 	}
 
-	private void messageCreate(JsonElement eventObject) {
-		MessageResponse event = DiscordUtils.GSON.fromJson(eventObject, MessageResponse.class);
+	private void messageCreate(MessageResponse event) {
 		boolean mentioned = event.mention_everyone;
 
 		Channel channel = (Channel) client.getChannelByID(event.channel_id);
@@ -666,8 +839,7 @@ public class DiscordWS {
 		}
 	}
 
-	private void typingStart(JsonElement eventObject) {
-		TypingEventResponse event = DiscordUtils.GSON.fromJson(eventObject, TypingEventResponse.class);
+	private void typingStart(TypingEventResponse event) {
 
 		User user;
 		Channel channel = (Channel) client.getChannelByID(event.channel_id);
@@ -684,53 +856,59 @@ public class DiscordWS {
 		}
 	}
 
-	private void guildCreate(JsonElement eventObject) {
-		GuildResponse event = DiscordUtils.GSON.fromJson(eventObject, GuildResponse.class);
+	private void guildCreate(GuildResponse event) {
 		if (event.unavailable) { //Guild can't be reached, so we ignore it
 			Discord4J.LOGGER.warn(LogMarkers.WEBSOCKET, "Guild with id {} is unavailable, ignoring it. Is there an outage?", event.id);
 			return;
 		}
 
-		Guild guild = (Guild) DiscordUtils.getGuildFromJSON(client, event);
-		client.guildList.add(guild);
+		Guild guild = (Guild) client.getGuildByID(event.id);
+		if (guild != null) { //Only the differences to the CACHED guild are applied, e.g. after a reconnect
+			GuildReconciler.reconcile(client, guild, event).forEach(client.dispatcher::dispatch);
+		} else {
+			guild = (Guild) DiscordUtils.getGuildFromJSON(client, event);
+			client.guildList.add(guild);
+			client.index.addGuild(guild);
+		}
 		client.dispatcher.dispatch(new GuildCreateEvent(guild));
 		Discord4J.LOGGER.debug(LogMarkers.EVENTS, "New guild has been created/joined! \"{}\" with ID {}.", guild.getName(), guild.getID());
 	}
 
-	private void guildMemberAdd(JsonElement eventObject) {
-		GuildMemberAddEventResponse event = DiscordUtils.GSON.fromJson(eventObject, GuildMemberAddEventResponse.class);
+	private void guildMemberAdd(GuildMemberAddEventResponse event) {
 		String guildID = event.guild_id;
 		Guild guild = (Guild) client.getGuildByID(guildID);
 		if (guild != null) {
-			User user = (User) DiscordUtils.getUserFromGuildMemberResponse(client, guild, new GuildResponse.MemberResponse(event.user, event.roles));
-			guild.addUser(user);
+			User user = DiscordUtils.isCachedMember(client, event.user.id) ?
+					(User) DiscordUtils.getUserFromGuildMemberResponse(client, guild, new GuildResponse.MemberResponse(event.user, event.roles)) :
+					DiscordUtils.getUserFromJSON(client, event.user);
 			LocalDateTime timestamp = DiscordUtils.convertFromTimestamp(event.joined_at);
 			Discord4J.LOGGER.debug(LogMarkers.EVENTS, "User \"{}\" joined guild \"{}\".", user.getName(), guild.getName());
 			client.dispatcher.dispatch(new UserJoinEvent(guild, user, timestamp));
 		}
 	}
 
-	private void guildMemberRemove(JsonElement eventObject) {
-		GuildMemberRemoveEventResponse event = DiscordUtils.GSON.fromJson(eventObject, GuildMemberRemoveEventResponse.class);
+	private void guildMemberRemove(GuildMemberRemoveEventResponse event) {
 		String guildID = event.guild_id;
 		Guild guild = (Guild) client.getGuildByID(guildID);
 		if (guild != null) {
 			User user = (User) guild.getUserByID(event.user.id);
+			if (user == null && !client.cachePolicy.cachesMembers()) //Members aren't cached, but the event is still useful
+				user = DiscordUtils.getUserFromJSON(client, event.user);
+
 			if (user != null) {
-				guild.getUsers().remove(user);
-				guild.getJoinTimes().remove(user);
+				guild.removeUser(user);
 				Discord4J.LOGGER.debug(LogMarkers.EVENTS, "User \"{}\" has been removed from or left guild \"{}\".", user.getName(), guild.getName());
 				client.dispatcher.dispatch(new UserLeaveEvent(guild, user));
 			}
 		}
 	}
 
-	private void guildMemberUpdate(JsonElement eventObject) {
-		GuildMemberUpdateEventResponse event = DiscordUtils.GSON.fromJson(eventObject, GuildMemberUpdateEventResponse.class);
+	private void guildMemberUpdate(GuildMemberUpdateEventResponse event) {
 		Guild guild = (Guild) client.getGuildByID(event.guild_id);
 		User user = (User) client.getUserByID(event.user.id);
+		Member member = guild == null ? null : guild.getMember(event.user.id);
 
-		if (guild != null && user != null) {
+		if (member != null && user != null) {
 			List<IRole> oldRoles = new ArrayList<>(user.getRolesForGuild(guild));
 			boolean rolesChanged = oldRoles.size() != event.roles.length+1;//Add one for the @everyone role
 			if (!rolesChanged) {
@@ -749,26 +927,29 @@ public class DiscordWS {
 			}
 
 			if (rolesChanged) {
-				user.getRolesForGuild(guild).clear();
-				for (String role : event.roles)
-					user.addRole(guild.getID(), guild.getRoleByID(role));
+				List<IRole> roles = new ArrayList<>();
+				for (String role : event.roles) {
+					IRole roleObj = guild.getRoleByID(role);
+					if (roleObj != null)
+						roles.add(roleObj);
+				}
 
-				user.addRole(guild.getID(), guild.getEveryoneRole());
+				roles.add(guild.getEveryoneRole());
+				member.setRoles(roles);
 
 				client.dispatcher.dispatch(new UserRoleUpdateEvent(oldRoles, user.getRolesForGuild(guild), user, guild));
 			}
 
 			if (!user.getNicknameForGuild(guild).equals(Optional.ofNullable(event.nick))) {
 				String oldNick = user.getNicknameForGuild(guild).orElse(null);
-				user.addNick(guild.getID(), event.nick);
+				member.setNick(event.nick);
 
 				client.dispatcher.dispatch(new NickNameChangeEvent(guild, user, oldNick, event.nick));
 			}
 		}
 	}
 
-	private void messageUpdate(JsonElement eventObject) {
-		MessageResponse event = DiscordUtils.GSON.fromJson(eventObject, MessageResponse.class);
+	private void messageUpdate(MessageResponse event) {
 		String id = event.id;
 		String channelID = event.channel_id;
 
@@ -794,8 +975,7 @@ public class DiscordWS {
 		}
 	}
 
-	private void messageDelete(JsonElement eventObject) {
-		MessageDeleteEventResponse event = DiscordUtils.GSON.fromJson(eventObject, MessageDeleteEventResponse.class);
+	private void messageDelete(MessageDeleteEventResponse event) {
 		String id = event.id;
 		String channelID = event.channel_id;
 		Channel channel = (Channel) client.getChannelByID(channelID);
@@ -813,15 +993,13 @@ public class DiscordWS {
 		}
 	}
 
-	private void messageDeleteBulk(JsonElement eventObject) { //TODO: maybe add a separate event for this?
-		MessageDeleteBulkEventResponse event = DiscordUtils.GSON.fromJson(eventObject, MessageDeleteBulkEventResponse.class);
+	private void messageDeleteBulk(MessageDeleteBulkEventResponse event) { //TODO: maybe add a separate event for this?
 		for (String id : event.ids) {
-			messageDelete(DiscordUtils.GSON.toJsonTree(new MessageDeleteEventResponse(id, event.channel_id)));
+			messageDelete(new MessageDeleteEventResponse(id, event.channel_id));
 		}
 	}
 
-	private void presenceUpdate(JsonElement eventObject) {
-		PresenceUpdateEventResponse event = DiscordUtils.GSON.fromJson(eventObject, PresenceUpdateEventResponse.class);
+	private void presenceUpdate(PresenceUpdateEventResponse event) {
 		Status status = DiscordUtils.getStatusFromJSON(event.game);
 		Presences presence = status.getType() == Status.StatusType.STREAM ?
 				Presences.STREAMING : Presences.valueOf(event.status.toUpperCase());
@@ -852,10 +1030,11 @@ public class DiscordWS {
 		}
 	}
 
-	private void guildDelete(JsonElement eventObject) {
-		GuildResponse event = DiscordUtils.GSON.fromJson(eventObject, GuildResponse.class);
+	private void guildDelete(GuildResponse event) {
 		Guild guild = (Guild) client.getGuildByID(event.id);
 		client.getGuilds().remove(guild);
+		client.index.removeGuild(guild);
+		client.memberRequests.cancel(event.id);
 		if (event.unavailable) { //Guild can't be reached
 			Discord4J.LOGGER.warn(LogMarkers.WEBSOCKET, "Guild with id {} is unavailable, is there an outage?", event.id);
 			client.dispatcher.dispatch(new GuildUnavailableEvent(event.id));
@@ -880,7 +1059,9 @@ public class DiscordWS {
 			if (contained)
 				return; // we already have this PM channel; no need to create another.
 
-			client.privateChannels.add(DiscordUtils.getPrivateChannelFromJSON(client, event));
+			IPrivateChannel channel = DiscordUtils.getPrivateChannelFromJSON(client, event);
+			client.privateChannels.add(channel);
+			client.index.addChannel(channel);
 
 		} else { // Regular channel.
 			ChannelResponse event = DiscordUtils.GSON.fromJson(eventObject, ChannelResponse.class);
@@ -900,29 +1081,29 @@ public class DiscordWS {
 		}
 	}
 
-	private void channelDelete(JsonElement eventObject) {
-		ChannelResponse event = DiscordUtils.GSON.fromJson(eventObject, ChannelResponse.class);
+	private void channelDelete(ChannelResponse event) {
 		if (event.type.equalsIgnoreCase("text")) {
 			Channel channel = (Channel) client.getChannelByID(event.id);
 			if (channel != null) {
-				if (!channel.isPrivate())
-					channel.getGuild().getChannels().remove(channel);
-				else
+				if (!channel.isPrivate()) {
+					((Guild) channel.getGuild()).removeChannel(channel);
+				} else {
 					client.privateChannels.remove(channel);
+					client.index.removeChannel(channel);
+				}
 
 				client.dispatcher.dispatch(new ChannelDeleteEvent(channel));
 			}
 		} else if (event.type.equalsIgnoreCase("voice")) {
 			VoiceChannel channel = (VoiceChannel) client.getVoiceChannelByID(event.id);
 			if (channel != null) {
-				channel.getGuild().getVoiceChannels().remove(channel);
+				((Guild) channel.getGuild()).removeVoiceChannel(channel);
 				client.dispatcher.dispatch(new VoiceChannelDeleteEvent(channel));
 			}
 		}
 	}
 
-	private void userUpdate(JsonElement eventObject) {
-		UserUpdateEventResponse event = DiscordUtils.GSON.fromJson(eventObject, UserUpdateEventResponse.class);
+	private void userUpdate(UserUpdateEventResponse event) {
 		User newUser = (User) client.getUserByID(event.id);
 		if (newUser != null) {
 			IUser oldUser = newUser.copy();
@@ -931,8 +1112,7 @@ public class DiscordWS {
 		}
 	}
 
-	private void channelUpdate(JsonElement eventObject) {
-		ChannelUpdateEventResponse event = DiscordUtils.GSON.fromJson(eventObject, ChannelUpdateEventResponse.class);
+	private void channelUpdate(ChannelUpdateEventResponse event) {
 		if (!event.is_private) {
 			if (event.type.equalsIgnoreCase("text")) {
 				Channel toUpdate = (Channel) client.getChannelByID(event.id);
@@ -956,28 +1136,24 @@ public class DiscordWS {
 		}
 	}
 
-	private void guildMembersChunk(JsonElement eventObject) {
-		GuildMemberChunkEventResponse event = DiscordUtils.GSON.fromJson(eventObject, GuildMemberChunkEventResponse.class);
+	private void guildMembersChunk(GuildMemberChunkEventResponse event) {
 		Guild guildToUpdate = (Guild) client.getGuildByID(event.guild_id);
 		if (guildToUpdate == null) {
 			Discord4J.LOGGER.warn(LogMarkers.WEBSOCKET, "Can't receive guild members chunk for guild id {}, the guild is null!", event.guild_id);
 			return;
 		}
 
-		for (GuildResponse.MemberResponse member : event.members) {
-			IUser user = DiscordUtils.getUserFromGuildMemberResponse(client, guildToUpdate, member);
-			guildToUpdate.addUser(user);
-		}
+		DiscordUtils.addMembersFromJSON(client, guildToUpdate, event.members);
+		client.memberRequests.onChunk(event.guild_id, event.members.length);
 	}
 
-	private void guildUpdate(JsonElement eventObject) {
-		GuildResponse guildResponse = DiscordUtils.GSON.fromJson(eventObject, GuildResponse.class);
+	private void guildUpdate(GuildResponse guildResponse) {
 		Guild toUpdate = (Guild) client.getGuildByID(guildResponse.id);
 
 		if (toUpdate != null) {
 			IGuild oldGuild = toUpdate.copy();
 
-			toUpdate = (Guild) DiscordUtils.getGuildFromJSON(client, guildResponse);
+			GuildReconciler.reconcile(client, toUpdate, guildResponse).forEach(client.dispatcher::dispatch);
 
 			if (!toUpdate.getOwnerID().equals(oldGuild.getOwnerID())) {
 				client.dispatcher.dispatch(new GuildTransferOwnershipEvent(oldGuild.getOwner(), toUpdate.getOwner(), toUpdate));
@@ -987,8 +1163,7 @@ public class DiscordWS {
 		}
 	}
 
-	private void guildRoleCreate(JsonElement eventObject) {
-		GuildRoleEventResponse event = DiscordUtils.GSON.fromJson(eventObject, GuildRoleEventResponse.class);
+	private void guildRoleCreate(GuildRoleEventResponse event) {
 		IGuild guild = client.getGuildByID(event.guild_id);
 		if (guild != null) {
 			IRole role = DiscordUtils.getRoleFromJSON(guild, event.role);
@@ -996,8 +1171,7 @@ public class DiscordWS {
 		}
 	}
 
-	private void guildRoleUpdate(JsonElement eventObject) {
-		GuildRoleEventResponse event = DiscordUtils.GSON.fromJson(eventObject, GuildRoleEventResponse.class);
+	private void guildRoleUpdate(GuildRoleEventResponse event) {
 		IGuild guild = client.getGuildByID(event.guild_id);
 		if (guild != null) {
 			IRole toUpdate = guild.getRoleByID(event.role.id);
@@ -1009,34 +1183,30 @@ public class DiscordWS {
 		}
 	}
 
-	private void guildRoleDelete(JsonElement eventObject) {
-		GuildRoleDeleteEventResponse event = DiscordUtils.GSON.fromJson(eventObject, GuildRoleDeleteEventResponse.class);
+	private void guildRoleDelete(GuildRoleDeleteEventResponse event) {
 		IGuild guild = client.getGuildByID(event.guild_id);
 		if (guild != null) {
 			IRole role = guild.getRoleByID(event.role_id);
 			if (role != null) {
-				guild.getRoles().remove(role);
+				((Guild) guild).removeRole(role);
 				client.dispatcher.dispatch(new RoleDeleteEvent(role, guild));
 			}
 		}
 	}
 
-	private void guildBanAdd(JsonElement eventObject) {
-		GuildBanEventResponse event = DiscordUtils.GSON.fromJson(eventObject, GuildBanEventResponse.class);
+	private void guildBanAdd(GuildBanEventResponse event) {
 		IGuild guild = client.getGuildByID(event.guild_id);
 		if (guild != null) {
 			IUser user = DiscordUtils.getUserFromJSON(client, event.user);
 			if (client.getUserByID(user.getID()) != null) {
-				guild.getUsers().remove(user);
-				((Guild) guild).getJoinTimes().remove(user);
+				((Guild) guild).removeUser(user);
 			}
 
 			client.dispatcher.dispatch(new UserBanEvent(user, guild));
 		}
 	}
 
-	private void guildBanRemove(JsonElement eventObject) {
-		GuildBanEventResponse event = DiscordUtils.GSON.fromJson(eventObject, GuildBanEventResponse.class);
+	private void guildBanRemove(GuildBanEventResponse event) {
 		IGuild guild = client.getGuildByID(event.guild_id);
 		if (guild != null) {
 			IUser user = DiscordUtils.getUserFromJSON(client, event.user);
@@ -1045,16 +1215,18 @@ public class DiscordWS {
 		}
 	}
 
-	private void voiceStateUpdate(JsonElement eventObject) {
-		VoiceStateResponse event = DiscordUtils.GSON.fromJson(eventObject, VoiceStateResponse.class);
+	private void voiceStateUpdate(VoiceStateResponse event) {
 		IGuild guild = client.getGuildByID(event.guild_id);
+		if (!client.cachePolicy.cachesVoiceStates() && !event.user_id.equals(client.getOurUser().getID()))
+			return;
 
 		if (guild != null) {
 			IVoiceChannel channel = guild.getVoiceChannelByID(event.channel_id);
 			User user = (User) guild.getUserByID(event.user_id);
-			if (user != null) {
-				user.setIsDeaf(guild.getID(), event.deaf);
-				user.setIsMute(guild.getID(), event.mute);
+			Member member = ((Guild) guild).getMember(event.user_id);
+			if (user != null && member != null) {
+				member.setIsDeaf(event.deaf);
+				member.setIsMute(event.mute);
 				user.setIsDeafLocally(event.self_deaf);
 				user.setIsMutedLocally(event.self_mute);
 
@@ -1087,8 +1259,7 @@ public class DiscordWS {
 		}
 	}
 
-	private void voiceServerUpdate(JsonElement eventObject) {
-		VoiceUpdateResponse event = DiscordUtils.GSON.fromJson(eventObject, VoiceUpdateResponse.class);
+	private void voiceServerUpdate(VoiceUpdateResponse event) {
 		try {
 			event.endpoint = event.endpoint.substring(0, event.endpoint.indexOf(":"));
 			client.voiceConnections.put(client.getGuildByID(event.guild_id), DiscordVoiceWS.connect(event, client));
@@ -1099,23 +1270,13 @@ public class DiscordWS {
 
 	@OnWebSocketMessage
 	public void onMessage(Session session, byte[] buf, int offset, int length) {
-		//Converts binary data to readable string data
+		//Inflates the binary data and decodes it directly
 		try {
-			InflaterInputStream inputStream = new InflaterInputStream(new ByteArrayInputStream(buf));
-			BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-
-			StringBuilder sb = new StringBuilder();
-			String read;
-			while ((read = reader.readLine()) != null) {
-				sb.append(read);
-			}
-
-			String data = sb.toString();
-			reader.close();
-			inputStream.close();
-
-			onMessage(session, data);
-		} catch (IOException e) {
+			Reader message = client.transportCompression ? decompressor.inflateStream(buf, offset, length)
+					: decompressor.inflate(buf, offset, length);
+			if (message != null) //Otherwise the message is split over several frames
+				onPayload(GatewayDecoder.decode(message, client.cachePolicy));
+		} catch (IOException | DataFormatException e) {
 			Discord4J.LOGGER.error(LogMarkers.WEBSOCKET, "Discord4J Internal Exception", e);
 		}
 	}
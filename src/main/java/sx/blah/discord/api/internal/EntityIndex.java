@@ -0,0 +1,278 @@
+package sx.blah.discord.api.internal;
+
+import sx.blah.discord.handle.obj.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A client-wide index of all cached entities, keyed by their snowflake ids. This allows for constant time lookups by
+ * id regardless of the amount of guilds the client is in.
+ */
+public class EntityIndex {
+
+	/**
+	 * All cached guilds (key = guild id).
+	 */
+	private final Map<Long, IGuild> guilds = new ConcurrentHashMap<>();
+
+	/**
+	 * All cached text and private channels (key = channel id).
+	 */
+	private final Map<Long, IChannel> channels = new ConcurrentHashMap<>();
+
+	/**
+	 * All cached voice channels (key = channel id).
+	 */
+	private final Map<Long, IVoiceChannel> voiceChannels = new ConcurrentHashMap<>();
+
+	/**
+	 * All cached roles (key = role id).
+	 */
+	private final Map<Long, IRole> roles = new ConcurrentHashMap<>();
+
+	/**
+	 * All cached guild members, shared between all of their guilds (key = user id).
+	 */
+	private final Map<Long, UserReference> users = new ConcurrentHashMap<>();
+
+	/**
+	 * Converts a String id into its numeric snowflake representation.
+	 *
+	 * @param id The id.
+	 * @return The snowflake, or -1 if the id isn't a valid snowflake.
+	 */
+	public static long toSnowflake(String id) {
+		if (id == null)
+			return -1;
+
+		try {
+			return Long.parseUnsignedLong(id);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Gets a cached guild.
+	 *
+	 * @param id The guild id.
+	 * @return The guild, or null if it isn't cached.
+	 */
+	public IGuild getGuild(String id) {
+		return guilds.get(toSnowflake(id));
+	}
+
+	/**
+	 * Gets a cached text or private channel.
+	 *
+	 * @param id The channel id.
+	 * @return The channel, or null if it isn't cached.
+	 */
+	public IChannel getChannel(String id) {
+		return channels.get(toSnowflake(id));
+	}
+
+	/**
+	 * Gets a cached voice channel.
+	 *
+	 * @param id The channel id.
+	 * @return The voice channel, or null if it isn't cached.
+	 */
+	public IVoiceChannel getVoiceChannel(String id) {
+		return voiceChannels.get(toSnowflake(id));
+	}
+
+	/**
+	 * Gets a cached role.
+	 *
+	 * @param id The role id.
+	 * @return The role, or null if it isn't cached.
+	 */
+	public IRole getRole(String id) {
+		return roles.get(toSnowflake(id));
+	}
+
+	/**
+	 * Gets a cached guild member.
+	 *
+	 * @param id The user id.
+	 * @return The user, or null if they aren't in any cached guild.
+	 */
+	public IUser getUser(String id) {
+		UserReference reference = users.get(toSnowflake(id));
+		return reference == null ? null : reference.user;
+	}
+
+	/**
+	 * Gets all cached guild members, each user is only contained once.
+	 *
+	 * @return The users.
+	 */
+	public List<IUser> getUsers() {
+		List<IUser> list = new ArrayList<>(users.size());
+		for (UserReference reference : users.values())
+			list.add(reference.user);
+		return list;
+	}
+
+	/**
+	 * Indexes a guild along with all of its channels and roles. Its members were already registered when they were added
+	 * to the guild.
+	 *
+	 * @param guild The guild.
+	 */
+	public void addGuild(IGuild guild) {
+		guilds.put(toSnowflake(guild.getID()), guild);
+		guild.getChannels().forEach(this::addChannel);
+		guild.getVoiceChannels().forEach(this::addVoiceChannel);
+		guild.getRoles().forEach(this::addRole);
+	}
+
+	/**
+	 * Removes a guild along with all of its channels and roles from the index. Members are only removed if they no
+	 * longer share a guild with the client.
+	 *
+	 * @param guild The guild.
+	 */
+	public void removeGuild(IGuild guild) {
+		if (guild == null)
+			return;
+
+		guilds.remove(toSnowflake(guild.getID()));
+		guild.getChannels().forEach(this::removeChannel);
+		guild.getVoiceChannels().forEach(this::removeVoiceChannel);
+		guild.getRoles().forEach(this::removeRole);
+		guild.getUsers().forEach(user -> releaseUser(user, guild));
+	}
+
+	/**
+	 * Indexes a text or private channel.
+	 *
+	 * @param channel The channel.
+	 */
+	public void addChannel(IChannel channel) {
+		channels.put(toSnowflake(channel.getID()), channel);
+	}
+
+	/**
+	 * Removes a text or private channel from the index.
+	 *
+	 * @param channel The channel.
+	 */
+	public void removeChannel(IChannel channel) {
+		channels.remove(toSnowflake(channel.getID()));
+	}
+
+	/**
+	 * Indexes a voice channel.
+	 *
+	 * @param channel The voice channel.
+	 */
+	public void addVoiceChannel(IVoiceChannel channel) {
+		voiceChannels.put(toSnowflake(channel.getID()), channel);
+	}
+
+	/**
+	 * Removes a voice channel from the index.
+	 *
+	 * @param channel The voice channel.
+	 */
+	public void removeVoiceChannel(IVoiceChannel channel) {
+		voiceChannels.remove(toSnowflake(channel.getID()));
+	}
+
+	/**
+	 * Indexes a role.
+	 *
+	 * @param role The role.
+	 */
+	public void addRole(IRole role) {
+		roles.put(toSnowflake(role.getID()), role);
+	}
+
+	/**
+	 * Removes a role from the index.
+	 *
+	 * @param role The role.
+	 */
+	public void removeRole(IRole role) {
+		roles.remove(toSnowflake(role.getID()));
+	}
+
+	/**
+	 * Registers a new membership of a user. The first user object registered for an id is shared by all guilds, until
+	 * the last of them releases it.
+	 *
+	 * @param user The user.
+	 * @param guild The guild the user is a member of.
+	 * @return The shared user object.
+	 */
+	public IUser addUser(IUser user, IGuild guild) {
+		return users.compute(toSnowflake(user.getID()), (id, reference) -> {
+			if (reference == null)
+				reference = new UserReference(user);
+			reference.guilds.put(toSnowflake(guild.getID()), guild);
+			return reference;
+		}).user;
+	}
+
+	/**
+	 * Releases a membership of a user, the user is removed from the index once they are no longer a member of any
+	 * guild.
+	 *
+	 * @param user The user.
+	 * @param guild The guild the user is no longer a member of.
+	 */
+	public void releaseUser(IUser user, IGuild guild) {
+		users.computeIfPresent(toSnowflake(user.getID()), (id, reference) -> {
+			reference.guilds.remove(toSnowflake(guild.getID()));
+			return reference.guilds.isEmpty() ? null : reference;
+		});
+	}
+
+	/**
+	 * Gets the guilds a user is a CACHED member of.
+	 *
+	 * @param userID The user id.
+	 * @return The guilds.
+	 */
+	public List<IGuild> getGuildsOfUser(String userID) {
+		List<IGuild> guilds = new ArrayList<>();
+		users.computeIfPresent(toSnowflake(userID), (id, reference) -> { //Reads the guilds while holding the entry's lock
+			guilds.addAll(reference.guilds.values());
+			return reference;
+		});
+		return guilds;
+	}
+
+	/**
+	 * Clears the entire index.
+	 */
+	public void clear() {
+		guilds.clear();
+		channels.clear();
+		voiceChannels.clear();
+		roles.clear();
+		users.clear();
+	}
+
+	/**
+	 * A shared user along with the amount of guilds it is a member of.
+	 */
+	private static class UserReference {
+
+		final IUser user;
+		/**
+		 * The guilds the user is a member of (key = guild id), the user is indexed while this isn't empty.
+		 */
+		final Map<Long, IGuild> guilds = new HashMap<>();
+
+		UserReference(IUser user) {
+			this.user = user;
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package sx.blah.discord.api.internal;
+
+import sx.blah.discord.Discord4J;
+import sx.blah.discord.util.LogMarkers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This processes gateway events on a fixed amount of worker lanes. Events are assigned to a lane by a partition key
+ * (usually the guild id), so events of the same guild are processed in order while unrelated guilds are processed in
+ * parallel.
+ * <p>
+ * Each lane has a bounded queue, when it is full the submitting (websocket) thread blocks until there is room again.
+ * This way a slow lane applies back-pressure to the gateway connection instead of buffering events indefinitely.
+ * <p>
+ * The lane threads are started with the first event submitted to them and stopped by {@link #shutdown()}.
+ */
+public class EventLanes {
+
+	/**
+	 * The default amount of lanes.
+	 */
+	public static final int DEFAULT_LANE_COUNT = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * The default capacity of each lane's queue.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	private final Lane[] lanes;
+
+	/**
+	 * The amount of events which had to wait for room in a full lane queue.
+	 */
+	private final AtomicLong blockedSubmits = new AtomicLong();
+
+	/**
+	 * @param laneCount The amount of lanes, if this is less than 1 events are processed on the submitting thread.
+	 * @param queueCapacity The capacity of each lane's queue.
+	 */
+	public EventLanes(int laneCount, int queueCapacity) {
+		lanes = new Lane[Math.max(0, laneCount)];
+		for (int i = 0; i < lanes.length; i++)
+			lanes[i] = new Lane(i, queueCapacity);
+	}
+
+	/**
+	 * Submits an event to be processed.
+	 *
+	 * @param partitionKey The key determining the lane (i.e. a guild id), or null to use the first lane.
+	 * @param handler The event handler.
+	 */
+	public void submit(String partitionKey, Runnable handler) {
+		if (lanes.length == 0) {
+			handler.run();
+			return;
+		}
+
+		Lane lane = lanes[getLane(partitionKey)];
+		if (lane.thread == null)
+			lane.start();
+		if (!lane.queue.offer(handler)) {
+			blockedSubmits.incrementAndGet();
+			try {
+				lane.queue.put(handler);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				Discord4J.LOGGER.error(LogMarkers.WEBSOCKET, "Interrupted while waiting for event lane {}, the event has been dropped!", lane.id);
+			}
+		}
+	}
+
+	/**
+	 * Stops all lane threads, events which weren't processed yet are dropped. The lanes are started again when the next
+	 * event is submitted.
+	 */
+	public void shutdown() {
+		for (Lane lane : lanes)
+			lane.stop();
+	}
+
+	/**
+	 * Gets the lane a partition key is assigned to.
+	 *
+	 * @param partitionKey The partition key.
+	 * @return The lane index.
+	 */
+	public int getLane(String partitionKey) {
+		if (partitionKey == null || lanes.length == 0)
+			return 0;
+
+		return Math.floorMod(Long.hashCode(EntityIndex.toSnowflake(partitionKey)), lanes.length);
+	}
+
+	/**
+	 * Gets the amount of lanes.
+	 *
+	 * @return The lane count.
+	 */
+	public int getLaneCount() {
+		return lanes.length;
+	}
+
+	/**
+	 * Gets the amount of events currently waiting in a lane's queue.
+	 *
+	 * @param lane The lane index.
+	 * @return The queue depth.
+	 */
+	public int getQueueDepth(int lane) {
+		return lanes[lane].queue.size();
+	}
+
+	/**
+	 * Gets the amount of events currently waiting in all lane queues.
+	 *
+	 * @return The total queue depth.
+	 */
+	public int getQueueDepth() {
+		int depth = 0;
+		for (Lane lane : lanes)
+			depth += lane.queue.size();
+		return depth;
+	}
+
+	/**
+	 * Gets the amount of events which had to wait for room in a full lane queue (i.e. how often back-pressure was
+	 * applied to the gateway).
+	 *
+	 * @return The amount of blocked submits.
+	 */
+	public long getBlockedSubmits() {
+		return blockedSubmits.get();
+	}
+
+	/**
+	 * Gets the amount of events processed by a lane.
+	 *
+	 * @param lane The lane index.
+	 * @return The amount of processed events.
+	 */
+	public long getProcessedCount(int lane) {
+		return lanes[lane].processed.get();
+	}
+
+	/**
+	 * Gets the average time a lane's handlers took to process an event.
+	 *
+	 * @param lane The lane index.
+	 * @return The average handler latency (in ns), or 0 if no events were processed.
+	 */
+	public long getAverageLatency(int lane) {
+		long processed = lanes[lane].processed.get();
+		return processed == 0 ? 0 : lanes[lane].totalLatency.get()/processed;
+	}
+
+	/**
+	 * Gets the longest time a lane's handlers took to process an event.
+	 *
+	 * @param lane The lane index.
+	 * @return The max handler latency (in ns).
+	 */
+	public long getMaxLatency(int lane) {
+		return lanes[lane].maxLatency.get();
+	}
+
+	/**
+	 * A single lane, processing its events in order on its own thread.
+	 */
+	private static class Lane implements Runnable {
+
+		final int id;
+		final BlockingQueue<Runnable> queue;
+		final AtomicLong processed = new AtomicLong();
+		final AtomicLong totalLatency = new AtomicLong();
+		final AtomicLong maxLatency = new AtomicLong();
+		volatile Thread thread;
+
+		private Lane(int id, int queueCapacity) {
+			this.id = id;
+			this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		}
+
+		synchronized void start() {
+			if (thread == null) {
+				thread = new Thread(this, "Discord4J Event Lane "+id);
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+
+		synchronized void stop() {
+			if (thread != null) {
+				thread.interrupt();
+				thread = null;
+			}
+			queue.clear();
+		}
+
+		@Override
+		public void run() {
+			while (thread == Thread.currentThread()) {
+				Runnable handler;
+				try {
+					handler = queue.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				long start = System.nanoTime();
+				try {
+					handler.run();
+				} catch (Exception e) {
+					Discord4J.LOGGER.error(LogMarkers.WEBSOCKET, "Discord4J Internal Exception", e);
+				}
+				long latency = System.nanoTime()-start;
+
+				processed.incrementAndGet();
+				totalLatency.addAndGet(latency);
+				maxLatency.accumulateAndGet(latency, Math::max);
+			}
+		}
+	}
+}
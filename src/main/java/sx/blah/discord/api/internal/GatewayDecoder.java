@@ -0,0 +1,162 @@
+package sx.blah.discord.api.internal;
+
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import sx.blah.discord.api.CachePolicy;
+import sx.blah.discord.api.internal.json.responses.*;
+import sx.blah.discord.api.internal.json.responses.events.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This decodes gateway payloads in a single streaming pass. The envelope fields (op, s, t) are read first and the
+ * event data is bound directly into the response class registered for the event, without building a json tree.
+ */
+class GatewayDecoder {
+
+	/**
+	 * The classes dispatched event data is bound to (key = event type). Events mapped to null are ignored so their data
+	 * is skipped, while the data of unknown events is kept as a json tree for logging.
+	 */
+	private static final Map<String, Class<?>> DISPATCH_TYPES = new HashMap<>();
+
+	static {
+		DISPATCH_TYPES.put("RESUMED", null);
+		DISPATCH_TYPES.put("READY", ReadyEventResponse.class);
+		DISPATCH_TYPES.put("MESSAGE_CREATE", MessageResponse.class);
+		DISPATCH_TYPES.put("TYPING_START", TypingEventResponse.class);
+		DISPATCH_TYPES.put("GUILD_CREATE", GuildResponse.class);
+		DISPATCH_TYPES.put("GUILD_MEMBER_ADD", GuildMemberAddEventResponse.class);
+		DISPATCH_TYPES.put("GUILD_MEMBER_REMOVE", GuildMemberRemoveEventResponse.class);
+		DISPATCH_TYPES.put("GUILD_MEMBER_UPDATE", GuildMemberUpdateEventResponse.class);
+		DISPATCH_TYPES.put("MESSAGE_UPDATE", MessageResponse.class);
+		DISPATCH_TYPES.put("MESSAGE_DELETE", MessageDeleteEventResponse.class);
+		DISPATCH_TYPES.put("MESSAGE_DELETE_BULK", MessageDeleteBulkEventResponse.class);
+		DISPATCH_TYPES.put("PRESENCE_UPDATE", PresenceUpdateEventResponse.class);
+		DISPATCH_TYPES.put("GUILD_DELETE", GuildResponse.class);
+		DISPATCH_TYPES.put("CHANNEL_CREATE", JsonElement.class); //The response class depends on is_private
+		DISPATCH_TYPES.put("CHANNEL_DELETE", ChannelResponse.class);
+		DISPATCH_TYPES.put("CHANNEL_PINS_UPDATE", null);
+		DISPATCH_TYPES.put("USER_UPDATE", UserUpdateEventResponse.class);
+		DISPATCH_TYPES.put("CHANNEL_UPDATE", ChannelUpdateEventResponse.class);
+		DISPATCH_TYPES.put("GUILD_MEMBERS_CHUNK", GuildMemberChunkEventResponse.class);
+		DISPATCH_TYPES.put("GUILD_UPDATE", GuildResponse.class);
+		DISPATCH_TYPES.put("GUILD_ROLE_CREATE", GuildRoleEventResponse.class);
+		DISPATCH_TYPES.put("GUILD_ROLE_UPDATE", GuildRoleEventResponse.class);
+		DISPATCH_TYPES.put("GUILD_ROLE_DELETE", GuildRoleDeleteEventResponse.class);
+		DISPATCH_TYPES.put("GUILD_BAN_ADD", GuildBanEventResponse.class);
+		DISPATCH_TYPES.put("GUILD_BAN_REMOVE", GuildBanEventResponse.class);
+		DISPATCH_TYPES.put("GUILD_EMOJIS_UPDATE", null);
+		DISPATCH_TYPES.put("GUILD_INTEGRATIONS_UPDATE", null);
+		DISPATCH_TYPES.put("VOICE_STATE_UPDATE", VoiceStateResponse.class);
+		DISPATCH_TYPES.put("VOICE_SERVER_UPDATE", VoiceUpdateResponse.class);
+	}
+
+	/**
+	 * Decodes a gateway payload.
+	 *
+	 * @param json The raw payload.
+	 * @param policy The client's cache policy, the data of events about objects which aren't cached is skipped.
+	 * @return The decoded payload, with {@link EventResponse#d} bound to the event's response class (or null if the
+	 * payload's data isn't used).
+	 *
+	 * @throws IOException If the payload is malformed.
+	 */
+	static EventResponse decode(Reader json, CachePolicy policy) throws IOException {
+		JsonReader reader = new JsonReader(json);
+		reader.setLenient(true);
+
+		EventResponse payload = new EventResponse();
+		payload.op = -1;
+		boolean hasType = false;
+		JsonElement deferredData = null;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+				case "op":
+					payload.op = reader.nextInt();
+					break;
+
+				case "s":
+					payload.s = nextNullable(reader) ? reader.nextLong() : null;
+					break;
+
+				case "t":
+					payload.t = nextNullable(reader) ? reader.nextString() : null;
+					hasType = true;
+					break;
+
+				case "message":
+					payload.message = nextNullable(reader) ? reader.nextString() : "";
+					break;
+
+				case "d":
+					if (payload.op != -1 && (payload.op != GatewayOps.DISPATCH.ordinal() || hasType)) {
+						payload.d = read(reader, getDataType(payload, policy));
+					} else { //The data came before the envelope so it has to be kept around until the type is known
+						deferredData = DiscordUtils.GSON.getAdapter(JsonElement.class).read(reader);
+					}
+					break;
+
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (deferredData != null) {
+			Class<?> type = getDataType(payload, policy);
+			if (type != null)
+				payload.d = DiscordUtils.GSON.getAdapter(type).fromJsonTree(deferredData);
+		}
+
+		return payload;
+	}
+
+	/**
+	 * Consumes a null value if the next token is one.
+	 *
+	 * @param reader The reader.
+	 * @return True if the next token is a non-null value, false if a null was consumed.
+	 *
+	 * @throws IOException
+	 */
+	private static boolean nextNullable(JsonReader reader) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return false;
+		}
+		return true;
+	}
+
+	private static Object read(JsonReader reader, Class<?> type) throws IOException {
+		if (type == null) {
+			reader.skipValue();
+			return null;
+		}
+		return DiscordUtils.GSON.getAdapter(type).read(reader);
+	}
+
+	/**
+	 * Gets the class the data of a payload should be bound to.
+	 *
+	 * @param payload The payload (with its op and t fields already read).
+	 * @return The class, or null if the data isn't used.
+	 */
+	private static Class<?> getDataType(EventResponse payload, CachePolicy policy) {
+		if (payload.op == GatewayOps.DISPATCH.ordinal() && "PRESENCE_UPDATE".equals(payload.t) && !policy.cachesPresences())
+			return null;
+		else if (payload.op == GatewayOps.DISPATCH.ordinal())
+			return payload.t == null || DISPATCH_TYPES.containsKey(payload.t) ? DISPATCH_TYPES.get(payload.t) : JsonElement.class;
+		else if (payload.op == GatewayOps.HELLO.ordinal())
+			return HelloResponse.class;
+		else if (payload.op == GatewayOps.RECONNECT.ordinal())
+			return RedirectResponse.class;
+		return null;
+	}
+}
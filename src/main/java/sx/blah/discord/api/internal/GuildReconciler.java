@@ -0,0 +1,209 @@
+package sx.blah.discord.api.internal;
+
+import org.apache.commons.lang3.tuple.Pair;
+import sx.blah.discord.api.IDiscordClient;
+import sx.blah.discord.api.events.Event;
+import sx.blah.discord.api.internal.json.generic.RoleResponse;
+import sx.blah.discord.api.internal.json.responses.ChannelResponse;
+import sx.blah.discord.api.internal.json.responses.GuildResponse;
+import sx.blah.discord.api.internal.json.responses.VoiceStateResponse;
+import sx.blah.discord.handle.impl.events.*;
+import sx.blah.discord.handle.impl.obj.Channel;
+import sx.blah.discord.handle.impl.obj.Guild;
+import sx.blah.discord.handle.impl.obj.Member;
+import sx.blah.discord.handle.impl.obj.Role;
+import sx.blah.discord.handle.impl.obj.VoiceChannel;
+import sx.blah.discord.handle.obj.*;
+
+import java.util.*;
+
+/**
+ * This merges a guild json response into an already CACHED guild. Only the roles and channels which actually changed
+ * are touched, and deleted roles are removed from the members in a single pass. Members, presences and voice states
+ * (which are only part of guild creates) are updated in place.
+ * <p>
+ * NOTE: Large guilds only send their online members, so their offline members are kept as CACHED rather than
+ * requested again. Members which left while the client was disconnected are therefore only detected in guilds which
+ * aren't large.
+ */
+public class GuildReconciler {
+
+	/**
+	 * Applies the differences between a CACHED guild and a json response to the guild.
+	 *
+	 * @param client The discord client.
+	 * @param guild The CACHED guild.
+	 * @param json The json response.
+	 * @return The events describing the roles and channels which were created, updated or deleted, in the order they
+	 * should be dispatched.
+	 */
+	public static List<Event> reconcile(IDiscordClient client, Guild guild, GuildResponse json) {
+		List<Event> events = new ArrayList<>();
+
+		guild.setIcon(json.icon);
+		guild.setName(json.name);
+		if (!json.owner_id.equals(guild.getOwnerID()))
+			guild.setOwnerID(json.owner_id);
+		guild.setAFKChannel(json.afk_channel_id);
+		guild.setAfkTimeout(json.afk_timeout);
+		guild.setRegion(json.region);
+
+		if (json.roles != null)
+			reconcileRoles(guild, json.roles, events);
+
+		if (json.channels != null)
+			reconcileChannels(client, guild, json.channels, events);
+
+		if (json.members != null)
+			reconcileMembers(client, guild, json, events);
+
+		if (json.presences != null)
+			DiscordUtils.addPresencesFromJSON(client, guild, json.presences);
+
+		if (json.voice_states != null)
+			reconcileVoiceStates(client, guild, json.voice_states);
+
+		return events;
+	}
+
+	private static void reconcileMembers(IDiscordClient client, Guild guild, GuildResponse json, List<Event> events) {
+		DiscordUtils.addMembersFromJSON(client, guild, json.members);
+		if (json.large || !((DiscordClientImpl) client).cachePolicy.cachesMembers()) //Not every cached member was sent
+			return;
+
+		Set<String> ids = new HashSet<>();
+		for (GuildResponse.MemberResponse member : json.members)
+			ids.add(member.user.id);
+
+		for (IUser user : new ArrayList<>(guild.getUsers())) {
+			if (!ids.contains(user.getID())) {
+				guild.removeUser(user);
+				events.add(new UserLeaveEvent(guild, user));
+			}
+		}
+	}
+
+	private static void reconcileVoiceStates(IDiscordClient client, Guild guild, VoiceStateResponse[] voiceStates) {
+		//The voice states replace the CACHED ones, since users may have left their channels while disconnected
+		for (IUser user : guild.getUsers())
+			user.getConnectedVoiceChannels().removeIf(channel -> guild.equals(channel.getGuild()));
+
+		DiscordUtils.addVoiceStatesFromJSON(client, guild, voiceStates);
+	}
+
+	private static void reconcileRoles(Guild guild, RoleResponse[] roles, List<Event> events) {
+		Set<String> ids = new HashSet<>();
+		for (RoleResponse json : roles) {
+			ids.add(json.id);
+
+			Role role = (Role) guild.getRoleByID(json.id);
+			if (role == null) {
+				events.add(new RoleCreateEvent(DiscordUtils.getRoleFromJSON(guild, json), guild));
+			} else if (isChanged(role, json)) {
+				IRole oldRole = role.copy();
+				events.add(new RoleUpdateEvent(oldRole, DiscordUtils.getRoleFromJSON(guild, json), guild));
+			}
+		}
+
+		Set<IRole> deleted = new HashSet<>();
+		for (IRole role : guild.getRoles()) {
+			if (!ids.contains(role.getID()))
+				deleted.add(role);
+		}
+
+		if (!deleted.isEmpty()) {
+			for (IRole role : deleted) {
+				guild.removeRole(role);
+				events.add(new RoleDeleteEvent(role, guild));
+			}
+
+			for (IUser user : guild.getUsers()) {
+				Member member = guild.getMember(user.getID());
+				if (member != null)
+					member.removeRoles(deleted);
+			}
+			guild.invalidatePermissions();
+		}
+	}
+
+	private static void reconcileChannels(IDiscordClient client, Guild guild, ChannelResponse[] channels,
+										  List<Event> events) {
+		Set<String> ids = new HashSet<>();
+		for (ChannelResponse json : channels) {
+			ids.add(json.id);
+
+			if (json.type.equalsIgnoreCase("text")) {
+				Channel channel = (Channel) guild.getChannelByID(json.id);
+				if (channel == null) {
+					channel = (Channel) DiscordUtils.getChannelFromJSON(client, guild, json);
+					guild.addChannel(channel);
+					events.add(new ChannelCreateEvent(channel));
+				} else if (isChanged(channel, json)) {
+					IChannel oldChannel = channel.copy();
+					events.add(new ChannelUpdateEvent(oldChannel, DiscordUtils.getChannelFromJSON(client, guild, json)));
+				}
+			} else if (json.type.equalsIgnoreCase("voice")) {
+				VoiceChannel channel = (VoiceChannel) guild.getVoiceChannelByID(json.id);
+				if (channel == null) {
+					channel = (VoiceChannel) DiscordUtils.getVoiceChannelFromJSON(client, guild, json);
+					guild.addVoiceChannel(channel);
+					events.add(new VoiceChannelCreateEvent(channel));
+				} else if (isChanged(channel, json) || channel.getUserLimit() != json.user_limit
+						|| channel.getBitrate() != json.bitrate) {
+					IVoiceChannel oldChannel = (IVoiceChannel) channel.copy();
+					events.add(new VoiceChannelUpdateEvent(oldChannel, DiscordUtils.getVoiceChannelFromJSON(client, guild, json)));
+				}
+			}
+		}
+
+		for (IChannel channel : new ArrayList<>(guild.getChannels())) {
+			if (!ids.contains(channel.getID())) {
+				guild.removeChannel(channel);
+				events.add(new ChannelDeleteEvent(channel));
+			}
+		}
+
+		for (IVoiceChannel channel : new ArrayList<>(guild.getVoiceChannels())) {
+			if (!ids.contains(channel.getID())) {
+				guild.removeVoiceChannel(channel);
+				events.add(new VoiceChannelDeleteEvent(channel));
+			}
+		}
+	}
+
+	private static boolean isChanged(Role role, RoleResponse json) {
+		return role.getPosition() != json.position
+				|| role.isHoisted() != json.hoist
+				|| role.isMentionable() != json.mentionable
+				|| (role.getColor().getRGB() & 0xFFFFFF) != json.color
+				|| !Objects.equals(role.getName(), json.name)
+				|| !role.getPermissions().equals(Permissions.getAllowedPermissionsForNumber(json.permissions));
+	}
+
+	private static boolean isChanged(Channel channel, ChannelResponse json) {
+		if (channel.getPosition() != json.position
+				|| !Objects.equals(channel.getName(), json.name)
+				|| !Objects.equals(channel.getTopic(), json.topic))
+			return true;
+
+		Pair<Map<String, IChannel.PermissionOverride>, Map<String, IChannel.PermissionOverride>> overrides =
+				DiscordUtils.getPermissionOverwritesFromJSONs(json.permission_overwrites);
+		return !isSame(channel.getUserOverrides(), overrides.getLeft())
+				|| !isSame(channel.getRoleOverrides(), overrides.getRight());
+	}
+
+	private static boolean isSame(Map<String, IChannel.PermissionOverride> cached,
+								  Map<String, IChannel.PermissionOverride> received) {
+		if (cached.size() != received.size())
+			return false;
+
+		for (Map.Entry<String, IChannel.PermissionOverride> entry : received.entrySet()) {
+			IChannel.PermissionOverride override = cached.get(entry.getKey());
+			if (override == null
+					|| !override.allow().equals(entry.getValue().allow())
+					|| !override.deny().equals(entry.getValue().deny()))
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,197 @@
+package sx.blah.discord.api.internal;
+
+import sx.blah.discord.Discord4J;
+import sx.blah.discord.api.internal.json.requests.GuildMembersRequest;
+import sx.blah.discord.util.LogMarkers;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This requests the offline members of large guilds. Instead of sending one request per guild as soon as it is
+ * received, guild ids are queued per shard and sent in batches of up to {@link #MAX_GUILDS_PER_REQUEST}, at most one
+ * request every {@link #REQUEST_INTERVAL} ms per shard so the gateway's send limit is left room for heartbeats and other
+ * payloads. The chunks still expected for each guild are tracked, see {@link #getFuture(String)}.
+ */
+public class MemberRequestScheduler {
+
+	/**
+	 * The maximum amount of guilds whose members are requested in one request.
+	 */
+	public static final int MAX_GUILDS_PER_REQUEST = 50;
+
+	/**
+	 * The minimum time (in ms) between two member requests sent through the same shard.
+	 */
+	public static final long REQUEST_INTERVAL = 1000;
+
+	/**
+	 * The maximum amount of members discord sends per chunk.
+	 */
+	public static final int CHUNK_SIZE = 1000;
+
+	private final DiscordClientImpl client;
+
+	/**
+	 * The ids of the guilds waiting to be requested (key = shard id).
+	 */
+	private final Map<Integer, Queue<String>> queued = new ConcurrentHashMap<>();
+
+	/**
+	 * The guilds which are being chunked (key = guild id).
+	 */
+	private final Map<String, PendingGuild> pending = new ConcurrentHashMap<>();
+
+	private final AtomicBoolean started = new AtomicBoolean(false);
+
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = Executors.defaultThreadFactory().newThread(r);
+		thread.setName("Discord4J Member Request Scheduler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * @param client The client.
+	 */
+	public MemberRequestScheduler(DiscordClientImpl client) {
+		this.client = client;
+	}
+
+	/**
+	 * Queues a request for all members of a guild.
+	 *
+	 * @param guildID The guild id.
+	 * @param memberCount The total amount of members of the guild, used to determine how many chunks to expect.
+	 * @return The future which completes once all of the guild's members were received.
+	 */
+	public CompletableFuture<Void> request(String guildID, int memberCount) {
+		int chunks = Math.max(1, (memberCount+CHUNK_SIZE-1)/CHUNK_SIZE);
+		PendingGuild guild = pending.compute(guildID, (id, existing) -> {
+			if (existing == null || existing.future.isDone()) //A future from before a reconnect is kept until it completes
+				existing = new PendingGuild(new CompletableFuture<>());
+			existing.remainingChunks = chunks;
+			return existing;
+		});
+
+		queued.computeIfAbsent(client.shards.getShardForGuild(guildID), shard -> new ConcurrentLinkedQueue<>()).add(guildID);
+		if (started.compareAndSet(false, true))
+			executor.scheduleWithFixedDelay(this::sendRequests, 0, REQUEST_INTERVAL, TimeUnit.MILLISECONDS);
+
+		return guild.future;
+	}
+
+	/**
+	 * Records a received member chunk.
+	 *
+	 * @param guildID The guild id.
+	 * @param members The amount of members in the chunk.
+	 */
+	public void onChunk(String guildID, int members) {
+		PendingGuild[] completed = new PendingGuild[1];
+		pending.computeIfPresent(guildID, (id, guild) -> {
+			if (--guild.remainingChunks > 0 && members >= CHUNK_SIZE)
+				return guild;
+
+			completed[0] = guild;
+			return null;
+		});
+
+		if (completed[0] != null) {
+			Discord4J.LOGGER.debug(LogMarkers.WEBSOCKET, "Received all members of guild {}.", guildID);
+			completed[0].future.complete(null);
+		}
+	}
+
+	/**
+	 * Gets the future which completes once all members of a guild were received.
+	 *
+	 * @param guildID The guild id.
+	 * @return The future, it is already completed if the guild's members aren't being requested.
+	 */
+	public CompletableFuture<Void> getFuture(String guildID) {
+		PendingGuild guild = pending.get(guildID);
+		return guild == null ? CompletableFuture.completedFuture(null) : guild.future;
+	}
+
+	/**
+	 * Checks whether the members of a guild are still being requested.
+	 *
+	 * @param guildID The guild id.
+	 * @return True if members are still expected, false if otherwise.
+	 */
+	public boolean isChunking(String guildID) {
+		return pending.containsKey(guildID);
+	}
+
+	/**
+	 * Gets the amount of member chunks which are still expected for a guild.
+	 *
+	 * @param guildID The guild id.
+	 * @return The amount of chunks.
+	 */
+	public int getPendingChunks(String guildID) {
+		PendingGuild guild = pending.get(guildID);
+		return guild == null ? 0 : guild.remainingChunks;
+	}
+
+	/**
+	 * Drops the queued requests of a shard which lost its session. The futures of its guilds are kept, they complete
+	 * once the guilds are requested again after reconnecting.
+	 *
+	 * @param shard The shard id.
+	 */
+	public void clear(int shard) {
+		Queue<String> queue = queued.remove(shard);
+		if (queue != null)
+			queue.clear();
+	}
+
+	/**
+	 * Stops tracking a guild which was left or deleted, its future is cancelled.
+	 *
+	 * @param guildID The guild id.
+	 */
+	public void cancel(String guildID) {
+		PendingGuild guild = pending.remove(guildID);
+		if (guild != null)
+			guild.future.cancel(false);
+	}
+
+	private void sendRequests() {
+		try {
+			for (Map.Entry<Integer, Queue<String>> entry : queued.entrySet()) {
+				DiscordWS ws = client.shards.get(entry.getKey());
+				if (ws == null || !ws.isConnected.get()) //Sent once the shard is connected again
+					continue;
+
+				List<String> guildIDs = new ArrayList<>();
+				String guildID;
+				while (guildIDs.size() < MAX_GUILDS_PER_REQUEST && (guildID = entry.getValue().poll()) != null)
+					if (pending.containsKey(guildID))
+						guildIDs.add(guildID);
+
+				if (!guildIDs.isEmpty()) {
+					Discord4J.LOGGER.debug(LogMarkers.WEBSOCKET, "Requesting the members of {} guilds on shard {}.", guildIDs.size(), entry.getKey());
+					ws.send(new GuildMembersRequest(guildIDs.toArray(new String[guildIDs.size()])));
+				}
+			}
+		} catch (Exception e) {
+			Discord4J.LOGGER.error(LogMarkers.WEBSOCKET, "Discord4J Internal Exception", e);
+		}
+	}
+
+	/**
+	 * A guild whose members are being requested.
+	 */
+	private static class PendingGuild {
+
+		final CompletableFuture<Void> future;
+		volatile int remainingChunks;
+
+		PendingGuild(CompletableFuture<Void> future) {
+			this.future = future;
+		}
+	}
+}
@@ -0,0 +1,403 @@
+package sx.blah.discord.api.internal;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.utils.DateUtils;
+import sx.blah.discord.Discord4J;
+import sx.blah.discord.util.DiscordException;
+import sx.blah.discord.util.LogMarkers;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This schedules REST requests according to discord's rate limits, so requests wait until they are allowed instead of
+ * being rejected.
+ * <p>
+ * Requests are grouped into buckets by their method and route, where all ids except for the major parameters (channel,
+ * guild and webhook ids) are replaced. Each bucket tracks the limit, remaining requests and reset time reported by
+ * discord, and requests of a bucket are released in order as soon as the bucket allows it. The global rate limit holds
+ * back every bucket.
+ * <p>
+ * Requests can either wait blocking ({@link #acquire(String)}) or be queued without holding a thread
+ * ({@link #acquireAsync(String)}).
+ */
+public class RateLimiter {
+
+	/**
+	 * The path segments followed by a major parameter, which is kept in the route.
+	 */
+	private static final String[] MAJOR_PARAMETERS = {"channels", "guilds", "webhooks"};
+
+	/**
+	 * The longest time (in ms) a request waits for the response of an earlier request of a bucket whose limits are not
+	 * known yet, before it is sent anyways.
+	 */
+	private static final long UNKNOWN_BUCKET_TIMEOUT = 5000;
+
+	/**
+	 * The time (in ms) after which buckets which are no longer used are removed.
+	 */
+	private static final long BUCKET_EXPIRY = 60000;
+
+	/**
+	 * Releases queued asynchronous requests once their buckets allow it.
+	 */
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = Executors.defaultThreadFactory().newThread(r);
+		thread.setName("Discord4J Rate Limiter");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+	/**
+	 * When the global rate limit is over (in ms since epoch).
+	 */
+	private volatile long globalReset = 0;
+
+	private final AtomicInteger requestsSinceCleanup = new AtomicInteger();
+
+	/**
+	 * Normalizes a request to the route identifying its bucket.
+	 *
+	 * @param method The http method.
+	 * @param path The url path.
+	 * @return The route.
+	 */
+	public static String getRoute(String method, String path) {
+		StringBuilder route = new StringBuilder(method).append(' ');
+		String previous = "";
+		for (String segment : path.split("/")) {
+			if (segment.isEmpty())
+				continue;
+
+			route.append('/');
+			if (isID(segment) && !isMajorParameter(previous))
+				route.append("{id}");
+			else
+				route.append(segment);
+			previous = segment;
+		}
+		return route.toString();
+	}
+
+	private static boolean isID(String segment) {
+		for (int i = 0; i < segment.length(); i++)
+			if (!Character.isDigit(segment.charAt(i)))
+				return false;
+		return true;
+	}
+
+	private static boolean isMajorParameter(String segment) {
+		for (String parameter : MAJOR_PARAMETERS)
+			if (parameter.equals(segment))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Waits until a request to a route is allowed to be sent. Every call must be followed by a call to
+	 * {@link #update(String, HttpResponse)} once the request is done.
+	 *
+	 * @param route The route of the request.
+	 *
+	 * @throws DiscordException If interrupted while waiting.
+	 */
+	void acquire(String route) throws DiscordException {
+		try {
+			getBucket(route).acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DiscordException("Interrupted while waiting for the rate limit of "+route);
+		}
+	}
+
+	/**
+	 * Queues a request to a route until it is allowed to be sent. Once the returned future completes, the request must
+	 * be followed by a call to {@link #update(String, HttpResponse)} once it is done.
+	 *
+	 * @param route The route of the request.
+	 * @return The future which completes once the request is allowed to be sent.
+	 */
+	CompletableFuture<Void> acquireAsync(String route) {
+		return getBucket(route).acquireAsync();
+	}
+
+	private Bucket getBucket(String route) {
+		if (requestsSinceCleanup.incrementAndGet() >= 1000) {
+			requestsSinceCleanup.set(0);
+			removeExpiredBuckets();
+		}
+
+		return buckets.computeIfAbsent(route, Bucket::new);
+	}
+
+	/**
+	 * Updates the rate limits of a route from a response.
+	 *
+	 * @param route The route of the request.
+	 * @param response The response, or null if the request failed.
+	 */
+	void update(String route, HttpResponse response) {
+		Bucket bucket = buckets.get(route);
+		if (bucket != null)
+			bucket.update(response);
+	}
+
+	/**
+	 * Applies a rate limit received as a 429 response.
+	 *
+	 * @param route The route of the request.
+	 * @param retryAfter The time (in ms) until requests are allowed again.
+	 * @param global Whether the rate limit is global.
+	 */
+	void limit(String route, long retryAfter, boolean global) {
+		long reset = System.currentTimeMillis()+retryAfter;
+		if (global) {
+			globalReset = reset;
+			Discord4J.LOGGER.debug(LogMarkers.API, "Global rate limit hit, requests are held back for {}ms.", retryAfter);
+		} else {
+			Bucket bucket = buckets.get(route);
+			if (bucket != null)
+				bucket.limit(reset);
+		}
+	}
+
+	/**
+	 * Gets the amount of requests of a route which can be sent before its rate limit is hit.
+	 *
+	 * @param route The route, see {@link #getRoute(String, String)}.
+	 * @return The remaining requests, or -1 if the route's limits aren't known.
+	 */
+	public int getRemaining(String route) {
+		Bucket bucket = buckets.get(route);
+		return bucket == null || bucket.limit < 0 ? -1 : bucket.remaining;
+	}
+
+	/**
+	 * Gets when the global rate limit is over.
+	 *
+	 * @return The time (in ms since epoch), which is in the past if no global rate limit is in effect.
+	 */
+	public long getGlobalReset() {
+		return globalReset;
+	}
+
+	private void removeExpiredBuckets() {
+		long expiry = System.currentTimeMillis()-BUCKET_EXPIRY;
+		buckets.values().removeIf(bucket -> bucket.lastUsed < expiry && !bucket.lock.isLocked() && !bucket.lock.hasQueuedThreads()
+				&& bucket.pending.isEmpty());
+	}
+
+	/**
+	 * The rate limit state of a route.
+	 */
+	private class Bucket {
+
+		final String route;
+
+		/**
+		 * Requests hold this (in order) while waiting to be allowed.
+		 */
+		final ReentrantLock lock = new ReentrantLock(true);
+		final Condition updated = lock.newCondition();
+
+		/**
+		 * The maximum amount of requests per reset period, -1 if unknown (before the first response) or 0 if the route
+		 * isn't rate limited.
+		 */
+		int limit = -1;
+		int remaining = 1;
+		long reset = 0;
+
+		/**
+		 * The reset time reported by discord for the current window, which identifies it.
+		 */
+		String window = null;
+		long lastAcquired = 0;
+
+		/**
+		 * The amount of allowed requests whose responses haven't been received yet.
+		 */
+		int inFlight = 0;
+		volatile long lastUsed = System.currentTimeMillis();
+
+		/**
+		 * The asynchronous requests waiting to be allowed, in order.
+		 */
+		final Queue<CompletableFuture<Void>> pending = new ArrayDeque<>();
+
+		/**
+		 * When the next {@link #drain()} is scheduled (in ms since epoch), or 0 if none is.
+		 */
+		long drainAt = 0;
+
+		Bucket(String route) {
+			this.route = route;
+		}
+
+		/**
+		 * Tries to allow a request. NOTE: This must be called while holding the lock.
+		 *
+		 * @return 0 if the request is allowed, otherwise the time (in ms) to wait before trying again.
+		 */
+		private long tryAcquire() {
+			long now = System.currentTimeMillis();
+			lastUsed = now;
+			if (globalReset > now)
+				return globalReset-now;
+
+			if (limit == 0) {
+				inFlight++;
+				return 0;
+			}
+
+			if (remaining <= 0 && limit > 0 && reset <= now) { //A new window, its reset is known once a response arrives
+				remaining = limit;
+				reset = now+UNKNOWN_BUCKET_TIMEOUT;
+			}
+
+			if (remaining > 0) {
+				remaining--;
+				inFlight++;
+				lastAcquired = now;
+				return 0;
+			}
+
+			if (limit < 0) { //Waiting for the first response to learn the limits, up to a point
+				long wait = lastAcquired+UNKNOWN_BUCKET_TIMEOUT-now;
+				if (wait > 0)
+					return wait;
+
+				inFlight++;
+				lastAcquired = now;
+				return 0;
+			}
+
+			Discord4J.LOGGER.trace(LogMarkers.API, "Request to {} is waiting {}ms for its rate limit.", route, reset-now);
+			return reset-now;
+		}
+
+		void acquire() throws InterruptedException {
+			lock.lockInterruptibly();
+			try {
+				long wait;
+				while ((wait = tryAcquire()) > 0)
+					updated.await(wait, TimeUnit.MILLISECONDS);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		CompletableFuture<Void> acquireAsync() {
+			CompletableFuture<Void> permit = new CompletableFuture<>();
+			lock.lock();
+			try {
+				pending.add(permit);
+			} finally {
+				lock.unlock();
+			}
+			drain();
+			return permit;
+		}
+
+		/**
+		 * Allows as many queued asynchronous requests as possible, and schedules itself for when the next one can be
+		 * allowed.
+		 */
+		void drain() {
+			List<CompletableFuture<Void>> allowed = new ArrayList<>();
+			lock.lock();
+			try {
+				while (!pending.isEmpty()) {
+					long wait = tryAcquire();
+					if (wait > 0) {
+						long at = System.currentTimeMillis()+wait;
+						if (drainAt == 0 || at < drainAt) {
+							drainAt = at;
+							SCHEDULER.schedule(this::scheduledDrain, wait, TimeUnit.MILLISECONDS);
+						}
+						break;
+					}
+					allowed.add(pending.poll());
+				}
+			} finally {
+				lock.unlock();
+			}
+			allowed.forEach(permit -> permit.complete(null)); //Outside of the lock, dependents may run synchronously
+		}
+
+		private void scheduledDrain() {
+			lock.lock();
+			try {
+				if (drainAt <= System.currentTimeMillis())
+					drainAt = 0;
+			} finally {
+				lock.unlock();
+			}
+			drain();
+		}
+
+		void update(HttpResponse response) {
+			lock.lock();
+			try {
+				inFlight = Math.max(inFlight-1, 0);
+				if (response != null && response.containsHeader("X-RateLimit-Remaining")) {
+					limit = response.containsHeader("X-RateLimit-Limit") ?
+							Integer.parseInt(response.getFirstHeader("X-RateLimit-Limit").getValue()) : Math.max(limit, 1);
+					//Discord doesn't count the requests which are still in flight yet
+					int reported = Math.max(Integer.parseInt(response.getFirstHeader("X-RateLimit-Remaining").getValue())-inFlight, 0);
+					String window = response.containsHeader("X-RateLimit-Reset") ?
+							response.getFirstHeader("X-RateLimit-Reset").getValue() : null;
+					if (window != null && window.equals(this.window)) { //Responses of a window may arrive out of order
+						remaining = Math.min(remaining, reported);
+					} else {
+						remaining = reported;
+						if (window != null) {
+							this.window = window;
+							reset = getResetTime(response);
+						}
+					}
+				} else if (response != null && limit < 0) {
+					limit = 0; //Not rate limited
+				} else if (limit < 0) { //The request failed, let the next one learn the limits
+					remaining = Math.max(remaining, 1);
+				}
+				updated.signalAll();
+			} finally {
+				lock.unlock();
+			}
+			drain();
+		}
+
+		void limit(long reset) {
+			lock.lock();
+			try {
+				remaining = 0;
+				this.reset = reset;
+				if (limit <= 0)
+					limit = 1;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Converts the reset time of a response to local time, using the response's date to account for clock
+		 * differences.
+		 */
+		private long getResetTime(HttpResponse response) {
+			long reset = Long.parseLong(response.getFirstHeader("X-RateLimit-Reset").getValue())*1000;
+			if (response.containsHeader("Date")) {
+				Date date = DateUtils.parseDate(response.getFirstHeader("Date").getValue());
+				if (date != null)
+					return System.currentTimeMillis()+(reset-date.getTime());
+			}
+			return reset;
+		}
+	}
+}
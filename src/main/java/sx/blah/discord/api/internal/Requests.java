@@ -3,12 +3,20 @@ package sx.blah.discord.api.internal;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
-import org.apache.commons.lang3.tuple.Pair;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.*;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.ssl.SSLContexts;
 import org.apache.http.util.EntityUtils;
 import sx.blah.discord.Discord4J;
 import sx.blah.discord.api.IDiscordClient;
@@ -20,9 +28,7 @@ import sx.blah.discord.util.LogMarkers;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Locale;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.*;
 
 import static sx.blah.discord.Discord4J.*;
 
@@ -32,9 +38,19 @@ import static sx.blah.discord.Discord4J.*;
 public class Requests {
 
 	/**
-	 * This is used when the requests class must be used from a static context.
+	 * The default maximum amount of pooled connections.
 	 */
-	public static final Requests GENERAL_REQUESTS = new Requests(null);
+	public static final int DEFAULT_MAX_CONNECTIONS = 16;
+
+	/**
+	 * The default maximum time (in ms) a connection is kept alive.
+	 */
+	public static final long DEFAULT_KEEP_ALIVE = 60000;
+
+	/**
+	 * The default time (in ms) after which idle connections are closed.
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = 30000;
 
 	/**
 	 * Used to send POST Requests
@@ -62,8 +78,84 @@ public class Requests {
 	 */
 	private final IDiscordClient client;
 
+	/**
+	 * The user-agent, as per @Jake's request
+	 */
+	private final String userAgent = String.format("DiscordBot (%s v%s) - %s %s", URL, VERSION, NAME, DESCRIPTION);
+
+	/**
+	 * The socket factories of all pools. A single ssl context lets new connections resume previous tls sessions, even
+	 * across clients.
+	 */
+	private static final Registry<ConnectionSocketFactory> SOCKET_FACTORIES = RegistryBuilder.<ConnectionSocketFactory>create()
+			.register("http", PlainConnectionSocketFactory.getSocketFactory())
+			.register("https", new SSLConnectionSocketFactory(SSLContexts.createDefault(), SSLConnectionSocketFactory.getDefaultHostnameVerifier()))
+			.build();
+
+	/**
+	 * This is used when the requests class must be used from a static context.
+	 */
+	public static final Requests GENERAL_REQUESTS = new Requests(null);
+
+	/**
+	 * The maximum amount of connections this instance may execute requests on at a time.
+	 */
+	private final int maxConnections;
+
+	/**
+	 * The maximum time (in ms) a connection is kept alive.
+	 */
+	private final long keepAlive;
+
+	/**
+	 * The time (in ms) after which idle connections are closed.
+	 */
+	private final long idleTimeout;
+
+	/**
+	 * The connection pool of this instance, shared by all request types. It is opened on demand and shut down by
+	 * {@link #close()}.
+	 */
+	private volatile PoolingHttpClientConnectionManager connections;
+
+	/**
+	 * Closes the expired and idle connections of {@link #connections}.
+	 */
+	private volatile ScheduledExecutorService evictor;
+
+	/**
+	 * The http client shared by all request types, it is created on demand and released by {@link #close()}.
+	 */
+	private volatile CloseableHttpClient CLIENT;
+
+	/**
+	 * The rate limiter shared by all request types.
+	 */
+	private final RateLimiter rateLimiter = new RateLimiter();
+
+	/**
+	 * Executes asynchronous requests once they are allowed by the rate limiter. It is bounded to the amount of pooled
+	 * connections, so any amount of requests can be in flight while only this many are executed at a time. It is
+	 * created on demand and released by {@link #close()}.
+	 */
+	private volatile ExecutorService executor;
+
 	public Requests(IDiscordClient client) {
+		this(client, DEFAULT_MAX_CONNECTIONS, DEFAULT_KEEP_ALIVE, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * @param client The client used for these requests.
+	 * @param maxConnections The maximum amount of connections used at a time.
+	 * @param keepAlive The maximum time (in ms) a connection is kept alive.
+	 * @param idleTimeout The time (in ms) after which idle connections are closed.
+	 */
+	public Requests(IDiscordClient client, int maxConnections, long keepAlive, long idleTimeout) {
 		this.client = client;
+		this.maxConnections = maxConnections;
+		this.keepAlive = keepAlive;
+		this.idleTimeout = idleTimeout;
+		openPool();
 
 		POST = new Request(HttpPost.class, client);
 		GET = new Request(HttpGet.class, client);
@@ -72,33 +164,130 @@ public class Requests {
 		PUT = new Request(HttpPut.class, client);
 	}
 
+	/**
+	 * Opens the connection pool of this instance and starts evicting its idle connections.
+	 */
+	private synchronized void openPool() {
+		if (connections != null)
+			return;
+
+		PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager(SOCKET_FACTORIES);
+		pool.setMaxTotal(maxConnections);
+		pool.setDefaultMaxPerRoute(maxConnections);
+
+		evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = Executors.defaultThreadFactory().newThread(r);
+			thread.setName("Discord4J Idle Connection Evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		evictor.scheduleWithFixedDelay(() -> {
+			pool.closeExpiredConnections();
+			pool.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+		}, 5, 5, TimeUnit.SECONDS);
+		connections = pool;
+	}
+
+	private CloseableHttpClient getHttpClient() {
+		CloseableHttpClient httpClient = CLIENT;
+		if (httpClient == null) {
+			synchronized (this) {
+				if (CLIENT == null) {
+					openPool();
+					CLIENT = HttpClients.custom()
+							.setUserAgent(userAgent)
+							.setConnectionManager(connections)
+							.setConnectionManagerShared(true) //The pool is shut down by close(), along with its evictor
+							.setKeepAliveStrategy((response, context) -> {
+								long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+								return duration > 0 ? Math.min(duration, keepAlive) : keepAlive;
+							})
+							.disableConnectionState() //Connections aren't tied to a user, so any request can reuse them
+							.build();
+				}
+				httpClient = CLIENT;
+			}
+		}
+		return httpClient;
+	}
+
+	private ExecutorService getExecutor() {
+		ExecutorService executorService = executor;
+		if (executorService == null) {
+			synchronized (this) {
+				if (executor == null) {
+					ThreadPoolExecutor threadPool = new ThreadPoolExecutor(maxConnections, maxConnections, 60, TimeUnit.SECONDS,
+							new LinkedBlockingQueue<>(), r -> {
+						Thread thread = Executors.defaultThreadFactory().newThread(r);
+						thread.setName("Discord4J Async Request Executor");
+						thread.setDaemon(true);
+						return thread;
+					});
+					threadPool.allowCoreThreadTimeOut(true);
+					executor = threadPool;
+				}
+				executorService = executor;
+			}
+		}
+		return executorService;
+	}
+
+	/**
+	 * Releases the http client, the connection pool and the executor of asynchronous requests, this is called when the
+	 * client logs out. Requests which are already queued are still executed, and later requests open them again.
+	 */
+	public synchronized void close() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+		if (CLIENT != null) {
+			try {
+				CLIENT.close();
+			} catch (IOException e) {
+				Discord4J.LOGGER.error(LogMarkers.API, "Discord4J Internal Exception", e);
+			}
+			CLIENT = null;
+		}
+		if (connections != null) {
+			evictor.shutdownNow();
+			connections.shutdown();
+			evictor = null;
+			connections = null;
+		}
+	}
+
+	/**
+	 * Gets the rate limiter which schedules these requests.
+	 *
+	 * @return The rate limiter.
+	 */
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * Gets the statistics of the connection pool of this instance, containing the amount of leased, pending
+	 * (requests waiting for a connection) and available connections.
+	 *
+	 * @return The pool statistics.
+	 */
+	public PoolStats getPoolStats() {
+		PoolingHttpClientConnectionManager pool = connections;
+		return pool == null ? new PoolStats(0, 0, 0, maxConnections) : pool.getTotalStats();
+	}
+
 	/**
 	 * This represents a specific request.
 	 */
 	public final class Request {
-		/**
-		 * The user-agent, as per @Jake's request
-		 */
-		private final String userAgent = String.format("DiscordBot (%s v%s) - %s %s", URL, VERSION, NAME, DESCRIPTION);
 		/**
 		 * The client used for these requests.
 		 */
 		private final IDiscordClient client;
 
-		//Same as HttpClients.createDefault() but with the proper user-agent
-		private final CloseableHttpClient CLIENT = HttpClients.custom().setUserAgent(userAgent).build();
-
 		final Class<? extends HttpUriRequest> requestClass;
 
-		/**
-		 * Keeps track of the time when the global rate limit retry-after interval is over
-		 */
-		private final AtomicLong globalRetryAfter = new AtomicLong(-1);
-		/**
-		 * Keeps track of per-method rate limits. Pair is method, path
-		 */
-		private final Map<Pair<String, String>, Long> retryAfters = new ConcurrentHashMap<>();
-
 		private Request(Class<? extends HttpUriRequest> clazz, IDiscordClient client) {
 			this.requestClass = clazz;
 			this.client = client;
@@ -124,17 +313,8 @@ public class Requests {
 		 * @throws DiscordException
 		 */
 		public String makeRequest(String url, BasicNameValuePair... headers) throws RateLimitException, DiscordException {
-			try {
-				HttpUriRequest request = this.requestClass.getConstructor(String.class).newInstance(url);
-				for (BasicNameValuePair header : headers) {
-					request.addHeader(header.getName(), header.getValue());
-				}
-
-				return request(request);
-			} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | InstantiationException e) {
-				Discord4J.LOGGER.error(LogMarkers.API, "Discord4J Internal Exception", e);
-				return null;
-			}
+			HttpUriRequest request = createRequest(url, null, headers);
+			return request == null ? null : request(request);
 		}
 
 		/**
@@ -149,55 +329,95 @@ public class Requests {
 		 * @throws DiscordException
 		 */
 		public String makeRequest(String url, HttpEntity entity, BasicNameValuePair... headers) throws RateLimitException, DiscordException {
+			HttpUriRequest request = createRequest(url, entity, headers);
+			return request == null ? null : request(request);
+		}
+
+		/**
+		 * Makes a request asynchronously. The request is queued until its rate limit allows it, without holding a
+		 * thread while it waits.
+		 *
+		 * @param url The url to make the request to.
+		 * @param headers The headers to include in the request.
+		 * @return The future of the result (if any) returned by the request. It completes exceptionally with a
+		 * {@link RateLimitException} or {@link DiscordException} if the request fails.
+		 */
+		public CompletableFuture<String> makeRequestAsync(String url, BasicNameValuePair... headers) {
+			HttpUriRequest request = createRequest(url, null, headers);
+			return request == null ? CompletableFuture.completedFuture(null) : requestAsync(request);
+		}
+
+		/**
+		 * Makes a request asynchronously. The request is queued until its rate limit allows it, without holding a
+		 * thread while it waits.
+		 *
+		 * @param url The url to make the request to.
+		 * @param entity Any data to send with the request.
+		 * @param headers The headers to include in the request.
+		 * @return The future of the result (if any) returned by the request. It completes exceptionally with a
+		 * {@link RateLimitException} or {@link DiscordException} if the request fails.
+		 */
+		public CompletableFuture<String> makeRequestAsync(String url, HttpEntity entity, BasicNameValuePair... headers) {
+			HttpUriRequest request = createRequest(url, entity, headers);
+			return request == null ? CompletableFuture.completedFuture(null) : requestAsync(request);
+		}
+
+		/**
+		 * Creates a request.
+		 *
+		 * @param url The url to make the request to.
+		 * @param entity Any data to send with the request, or null.
+		 * @param headers The headers to include in the request.
+		 * @return The request, or null if it couldn't be created.
+		 */
+		private HttpUriRequest createRequest(String url, HttpEntity entity, BasicNameValuePair... headers) {
 			try {
-				if (HttpEntityEnclosingRequestBase.class.isAssignableFrom(this.requestClass)) {
-					HttpEntityEnclosingRequestBase request = (HttpEntityEnclosingRequestBase)
-							this.requestClass.getConstructor(String.class).newInstance(url);
-					for (BasicNameValuePair header : headers) {
-						request.addHeader(header.getName(), header.getValue());
-					}
-					request.setEntity(entity);
-					return request(request);
-				} else {
+				if (entity != null && !HttpEntityEnclosingRequestBase.class.isAssignableFrom(this.requestClass)) {
 					LOGGER.error(LogMarkers.API, "Tried to attach HTTP entity to invalid type! ({})",
 							this.requestClass.getSimpleName());
+					return null;
 				}
+
+				HttpUriRequest request = this.requestClass.getConstructor(String.class).newInstance(url);
+				for (BasicNameValuePair header : headers) {
+					request.addHeader(header.getName(), header.getValue());
+				}
+				if (entity != null)
+					((HttpEntityEnclosingRequestBase) request).setEntity(entity);
+				return request;
 			} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | InstantiationException e) {
 				Discord4J.LOGGER.error(LogMarkers.API, "Discord4J Internal Exception", e);
+				return null;
 			}
-			return null;
 		}
 
 		private String request(HttpUriRequest request) throws DiscordException, RateLimitException {
-			if (globalRetryAfter.get() != -1) {
-				if (System.currentTimeMillis() > globalRetryAfter.get())
-					globalRetryAfter.set(-1);
-				else
-					throw new RateLimitException("Global rate limit exceeded.",
-							globalRetryAfter.get() - System.currentTimeMillis(), request.getMethod(), true);
-			}
-
-			Pair<String, String> methodRequestPair = Pair.of(request.getMethod(), request.getURI().getPath());
+			String route = RateLimiter.getRoute(request.getMethod(), request.getURI().getPath());
+			rateLimiter.acquire(route); //Waits until the route's rate limit allows the request
+			return execute(request, route);
+		}
 
-			if (retryAfters.containsKey(methodRequestPair)) {
-				if (System.currentTimeMillis() > retryAfters.get(methodRequestPair))
-					retryAfters.remove(methodRequestPair);
-				else
-					throw new RateLimitException("Rate limit exceeded.",
-							retryAfters.get(methodRequestPair) - System.currentTimeMillis(),
-							String.format("%s %s", methodRequestPair.getLeft(), methodRequestPair.getRight()), false);
-			}
+		private CompletableFuture<String> requestAsync(HttpUriRequest request) {
+			String route = RateLimiter.getRoute(request.getMethod(), request.getURI().getPath());
+			return rateLimiter.acquireAsync(route).thenApplyAsync(v -> {
+				try {
+					return execute(request, route);
+				} catch (DiscordException | RateLimitException e) {
+					throw new CompletionException(e);
+				}
+			}, getExecutor());
+		}
 
-			try (CloseableHttpResponse response = CLIENT.execute(request)) {
+		/**
+		 * Executes a request which has been allowed by the rate limiter.
+		 */
+		private String execute(HttpUriRequest request, String route) throws DiscordException, RateLimitException {
+			boolean updated = false;
+			try (CloseableHttpResponse response = getHttpClient().execute(request)) {
 				int responseCode = response.getStatusLine().getStatusCode();
 
-				if (response.containsHeader("X-RateLimit-Remaining")) {
-					int remaining = Integer.parseInt(response.getFirstHeader("X-RateLimit-Remaining").getValue());
-					if (remaining == 0) {
-						retryAfters.put(methodRequestPair,
-								Long.parseLong(response.getFirstHeader("X-RateLimit-Reset").getValue())*1000);
-					}
-				}
+				rateLimiter.update(route, response);
+				updated = true;
 
 				String message = "";
 				if (response.getEntity() != null)
@@ -236,14 +456,10 @@ public class Requests {
 				if (responseCode == 429) {
 					RateLimitResponse rateLimitResponse = DiscordUtils.GSON.fromJson(element, RateLimitResponse.class);
 
-					if (rateLimitResponse.global) {
-						globalRetryAfter.set(System.currentTimeMillis()+rateLimitResponse.retry_after);
-					} else {
-						retryAfters.put(methodRequestPair, System.currentTimeMillis()+rateLimitResponse.retry_after);
-					}
+					rateLimiter.limit(route, rateLimitResponse.retry_after, rateLimitResponse.global);
 
 					throw new RateLimitException(rateLimitResponse.message, rateLimitResponse.retry_after,
-							String.format("%s %s", methodRequestPair.getLeft(), methodRequestPair.getRight()),
+							String.format("%s %s", request.getMethod(), request.getURI().getPath()),
 							rateLimitResponse.global);
 				}
 
@@ -254,6 +470,9 @@ public class Requests {
 			} catch (IOException e) {
 				Discord4J.LOGGER.error(LogMarkers.API, "Discord4J Internal Exception", e);
 				return null;
+			} finally {
+				if (!updated)
+					rateLimiter.update(route, null);
 			}
 		}
 	}
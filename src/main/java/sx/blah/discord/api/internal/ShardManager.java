@@ -0,0 +1,314 @@
+package sx.blah.discord.api.internal;
+
+import sx.blah.discord.Discord4J;
+import sx.blah.discord.handle.impl.events.DiscordDisconnectedEvent;
+import sx.blah.discord.util.LogMarkers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This manages the gateway connections (shards) of a client. Each shard has its own {@link DiscordWS} and therefore
+ * its own heartbeat and session state, while guilds are routed to shards by their id.
+ */
+public class ShardManager {
+
+	/**
+	 * The minimum amount of time (in ms) between two identify requests, as enforced by discord.
+	 */
+	public static final long IDENTIFY_DELAY = 5000;
+
+	private final DiscordClientImpl client;
+
+	/**
+	 * The total amount of shards the bot is split over.
+	 */
+	private final int shardCount;
+
+	/**
+	 * The first shard (inclusive) handled by this client.
+	 */
+	private final int firstShard;
+
+	/**
+	 * The last shard (inclusive) handled by this client.
+	 */
+	private final int lastShard;
+
+	/**
+	 * The connections of the shards handled by this client (index = shard id - first shard).
+	 */
+	private final AtomicReferenceArray<DiscordWS> connections;
+
+	/**
+	 * The shards which have received their ready payload.
+	 */
+	private final Set<Integer> readyShards = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The executor which sends queued identify requests, it is created when the first request is queued.
+	 */
+	private ScheduledExecutorService identifyExecutor;
+
+	/**
+	 * When the last queued identify request is sent.
+	 */
+	private long lastIdentify = 0;
+
+	public ShardManager(DiscordClientImpl client, int shardCount, int firstShard, int lastShard) {
+		this.client = client;
+		this.shardCount = shardCount;
+		this.firstShard = firstShard;
+		this.lastShard = lastShard;
+		this.connections = new AtomicReferenceArray<>(lastShard-firstShard+1);
+	}
+
+	/**
+	 * Opens a connection for every shard handled by this client.
+	 *
+	 * @param gateway The gateway to connect to.
+	 * @param async Whether guilds should be loaded asynchronously.
+	 *
+	 * @throws Exception
+	 */
+	public void connect(String gateway, boolean async) throws Exception {
+		for (int shard = firstShard; shard <= lastShard; shard++)
+			connections.set(shard-firstShard, new DiscordWS(client, gateway, shard, client.timeoutTime,
+					client.maxMissedPingCount, client.isDaemon, client.reconnectAttempts, async));
+	}
+
+	/**
+	 * Disconnects every shard.
+	 *
+	 * @param reason The reason for the disconnection.
+	 */
+	public void disconnect(DiscordDisconnectedEvent.Reason reason) {
+		for (DiscordWS ws : getConnections())
+			ws.disconnect(reason);
+	}
+
+	/**
+	 * Sends a message through every shard.
+	 *
+	 * @param object This object is converted to json and sent to the websockets.
+	 */
+	public void send(Object object) {
+		String message = DiscordUtils.GSON.toJson(object);
+		for (DiscordWS ws : getConnections())
+			ws.send(message);
+	}
+
+	/**
+	 * Gets the shard a guild is handled by.
+	 *
+	 * @param guildID The guild id.
+	 * @return The shard id.
+	 */
+	public int getShardForGuild(String guildID) {
+		return (int) ((EntityIndex.toSnowflake(guildID) >>> 22) % shardCount);
+	}
+
+	/**
+	 * Checks whether a guild is handled by this client.
+	 *
+	 * @param guildID The guild id.
+	 * @return True if one of this client's shards handles the guild, false if otherwise.
+	 */
+	public boolean handles(String guildID) {
+		int shard = getShardForGuild(guildID);
+		return shard >= firstShard && shard <= lastShard;
+	}
+
+	/**
+	 * Gets the connection of a shard.
+	 *
+	 * @param shard The shard id.
+	 * @return The connection, or null if the shard isn't connected or isn't handled by this client.
+	 */
+	public DiscordWS get(int shard) {
+		if (shard < firstShard || shard > lastShard)
+			return null;
+		return connections.get(shard-firstShard);
+	}
+
+	/**
+	 * Gets the connection which handles a guild.
+	 *
+	 * @param guildID The guild id.
+	 * @return The connection, or null if the guild's shard isn't connected or isn't handled by this client.
+	 */
+	public DiscordWS getForGuild(String guildID) {
+		return get(getShardForGuild(guildID));
+	}
+
+	/**
+	 * Gets the connection which receives direct messages.
+	 *
+	 * @return The connection, or null if it isn't connected or isn't handled by this client.
+	 */
+	public DiscordWS getPrivateChannelShard() {
+		return get(0);
+	}
+
+	/**
+	 * Gets all open connections.
+	 *
+	 * @return The connections.
+	 */
+	public List<DiscordWS> getConnections() {
+		List<DiscordWS> list = new ArrayList<>();
+		for (int i = 0; i < connections.length(); i++) {
+			DiscordWS ws = connections.get(i);
+			if (ws != null)
+				list.add(ws);
+		}
+		return list;
+	}
+
+	/**
+	 * Replaces the connection of a shard, for example when it is redirected to another gateway.
+	 *
+	 * @param oldConnection The current connection.
+	 * @param newConnection The new connection.
+	 */
+	void replace(DiscordWS oldConnection, DiscordWS newConnection) {
+		connections.compareAndSet(oldConnection.shard-firstShard, oldConnection, newConnection);
+	}
+
+	/**
+	 * Removes the connection of a shard once it has been fully disconnected.
+	 *
+	 * @param connection The connection.
+	 */
+	void remove(DiscordWS connection) {
+		readyShards.remove(connection.shard);
+		connections.compareAndSet(connection.shard-firstShard, connection, null);
+	}
+
+	/**
+	 * Marks a shard as ready.
+	 *
+	 * @param shard The shard id.
+	 * @return True if all of this client's shards are now ready, false if otherwise.
+	 */
+	boolean markReady(int shard) {
+		readyShards.add(shard);
+		return readyShards.size() == connections.length();
+	}
+
+	/**
+	 * Marks a shard as no longer ready (i.e. its session has been invalidated).
+	 *
+	 * @param shard The shard id.
+	 */
+	void markUnready(int shard) {
+		readyShards.remove(shard);
+	}
+
+	/**
+	 * Checks whether any shard is currently ready.
+	 *
+	 * @return True if at least one shard is ready, false if otherwise.
+	 */
+	boolean hasReadyShards() {
+		return !readyShards.isEmpty();
+	}
+
+	/**
+	 * Queues an identify request, these are sent at most once every {@link #IDENTIFY_DELAY} ms across all shards.
+	 *
+	 * @param identify The action sending the identify request.
+	 */
+	synchronized void queueIdentify(Runnable identify) {
+		long now = System.currentTimeMillis();
+		long sendTime = Math.max(now, lastIdentify+IDENTIFY_DELAY);
+		lastIdentify = sendTime;
+
+		if (sendTime > now)
+			Discord4J.LOGGER.debug(LogMarkers.WEBSOCKET, "Identify queued, it will be sent in {}ms.", sendTime-now);
+		if (identifyExecutor == null || identifyExecutor.isShutdown()) {
+			identifyExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = Executors.defaultThreadFactory().newThread(r);
+				thread.setName("Discord4J Identify Queue");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		identifyExecutor.schedule(identify, sendTime-now, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the identify queue, identify requests which weren't sent yet are dropped. The queue is started again when
+	 * the next request is queued.
+	 */
+	synchronized void shutdown() {
+		if (identifyExecutor != null) {
+			identifyExecutor.shutdownNow();
+			identifyExecutor = null;
+		}
+	}
+
+	/**
+	 * Checks whether every shard handled by this client is connected.
+	 *
+	 * @return True if all shards are connected, false if otherwise.
+	 */
+	public boolean isConnected() {
+		for (int i = 0; i < connections.length(); i++) {
+			DiscordWS ws = connections.get(i);
+			if (ws == null || !ws.isConnected.get() || ws.isReconnecting.get())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the average response time of the connected shards.
+	 *
+	 * @return The response time (in ms), or -1 if no response has been received yet.
+	 */
+	public long getResponseTime() {
+		long total = 0;
+		int count = 0;
+		for (DiscordWS ws : getConnections()) {
+			if (ws.getResponseTime() >= 0) {
+				total += ws.getResponseTime();
+				count++;
+			}
+		}
+		return count == 0 ? -1 : total/count;
+	}
+
+	/**
+	 * Gets the total amount of shards the bot is split over.
+	 *
+	 * @return The shard count.
+	 */
+	public int getShardCount() {
+		return shardCount;
+	}
+
+	/**
+	 * Gets the first shard handled by this client.
+	 *
+	 * @return The shard id.
+	 */
+	public int getFirstShard() {
+		return firstShard;
+	}
+
+	/**
+	 * Gets the last shard handled by this client.
+	 *
+	 * @return The shard id.
+	 */
+	public int getLastShard() {
+		return lastShard;
+	}
+}
@@ -0,0 +1,198 @@
+package sx.blah.discord.api.internal;
+
+import java.io.CharArrayReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * This inflates zlib compressed websocket frames. A single {@link Inflater} and growable byte and char buffers are
+ * reused for every frame, so decoding a frame doesn't allocate anything beyond the returned {@link Reader}. Buffers
+ * which grew beyond {@link #MAX_RETAINED_BUFFER_SIZE} for an unusually large frame are dropped again afterwards.
+ * <p>
+ * Frames can either be compressed individually ({@link #inflate(byte[], int, int)}) or be part of a single zlib stream
+ * which spans the whole connection ({@link #inflateStream(byte[], int, int)}). In the latter case, the end of a message
+ * is marked by the zlib sync flush suffix and the inflate context must be {@link #reset()} whenever a new connection
+ * is opened.
+ * <p>
+ * NOTE: A connection should own its own instance and the returned {@link Reader} is only valid until the next frame is
+ * inflated. The native zlib memory is only released once {@link #close()} is called.
+ */
+class ZlibDecompressor {
+
+	/**
+	 * The initial size of the buffers, they grow to fit the largest frame received.
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 8192;
+
+	/**
+	 * The largest size a buffer is kept at between frames.
+	 */
+	private static final int MAX_RETAINED_BUFFER_SIZE = 1024*1024;
+
+	/**
+	 * The suffix of a zlib sync flush (an empty stored block), which terminates each message of a zlib stream.
+	 */
+	private static final byte[] SYNC_FLUSH_SUFFIX = {0x00, 0x00, (byte) 0xff, (byte) 0xff};
+
+	private Inflater inflater = new Inflater();
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private byte[] bytes = new byte[INITIAL_BUFFER_SIZE];
+	private char[] chars = new char[INITIAL_BUFFER_SIZE];
+
+	/**
+	 * Stream frames received so far which don't yet form a complete message.
+	 */
+	private byte[] pending = new byte[0];
+	private int pendingSize = 0;
+
+	/**
+	 * Inflates a complete zlib compressed frame.
+	 *
+	 * @param buf The buffer containing the frame.
+	 * @param offset The offset of the frame in the buffer.
+	 * @param length The length of the frame.
+	 * @return A reader over the decoded (UTF-8) frame.
+	 *
+	 * @throws DataFormatException If the frame isn't valid zlib data.
+	 */
+	synchronized Reader inflate(byte[] buf, int offset, int length) throws DataFormatException {
+		prepare();
+		inflater.reset();
+		inflater.setInput(buf, offset, length);
+
+		int size = 0;
+		while (!inflater.finished()) {
+			if (size == bytes.length)
+				bytes = Arrays.copyOf(bytes, bytes.length*2);
+
+			int inflated = inflater.inflate(bytes, size, bytes.length-size);
+			if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				throw new DataFormatException("Truncated zlib frame");
+			size += inflated;
+		}
+
+		return decode(size);
+	}
+
+	/**
+	 * Inflates a frame which is part of the connection's zlib stream. A message may be split over several frames, so
+	 * frames are buffered until one ends with the sync flush suffix.
+	 *
+	 * @param buf The buffer containing the frame.
+	 * @param offset The offset of the frame in the buffer.
+	 * @param length The length of the frame.
+	 * @return A reader over the decoded (UTF-8) message, or null if the message isn't complete yet.
+	 *
+	 * @throws DataFormatException If the stream isn't valid zlib data.
+	 */
+	synchronized Reader inflateStream(byte[] buf, int offset, int length) throws DataFormatException {
+		prepare();
+		if (pendingSize == 0 && endsWithSyncFlush(buf, offset, length)) { //Common case, the message is a single frame
+			inflater.setInput(buf, offset, length);
+		} else {
+			if (pendingSize+length > pending.length)
+				pending = Arrays.copyOf(pending, Math.max(pendingSize+length, pending.length*2));
+			System.arraycopy(buf, offset, pending, pendingSize, length);
+			pendingSize += length;
+
+			if (!endsWithSyncFlush(pending, 0, pendingSize))
+				return null;
+
+			inflater.setInput(pending, 0, pendingSize);
+			pendingSize = 0;
+		}
+
+		int size = 0;
+		while (true) {
+			if (size == bytes.length)
+				bytes = Arrays.copyOf(bytes, bytes.length*2);
+
+			int inflated = inflater.inflate(bytes, size, bytes.length-size);
+			if (inflater.needsDictionary())
+				throw new DataFormatException("Unexpected zlib dictionary");
+			if (inflated == 0 && (inflater.needsInput() || inflater.finished()))
+				break;
+			size += inflated;
+		}
+
+		return decode(size);
+	}
+
+	/**
+	 * Resets the zlib stream, this must be called whenever a new connection is opened.
+	 */
+	synchronized void reset() {
+		if (inflater == null)
+			inflater = new Inflater();
+		else
+			inflater.reset();
+		pendingSize = 0;
+	}
+
+	/**
+	 * Releases the native zlib memory and the buffers. The decompressor can still be used afterwards, a new inflate
+	 * context is then created.
+	 */
+	synchronized void close() {
+		if (inflater != null) {
+			inflater.end();
+			inflater = null;
+		}
+		pendingSize = 0;
+		bytes = new byte[INITIAL_BUFFER_SIZE];
+		chars = new char[INITIAL_BUFFER_SIZE];
+		pending = new byte[0];
+	}
+
+	/**
+	 * Recreates the inflate context if it was closed and shrinks buffers which grew for a previous large frame.
+	 */
+	private void prepare() {
+		if (inflater == null)
+			inflater = new Inflater();
+		if (bytes.length > MAX_RETAINED_BUFFER_SIZE)
+			bytes = new byte[INITIAL_BUFFER_SIZE];
+		if (chars.length > MAX_RETAINED_BUFFER_SIZE)
+			chars = new char[INITIAL_BUFFER_SIZE];
+		if (pendingSize == 0 && pending.length > MAX_RETAINED_BUFFER_SIZE)
+			pending = new byte[0];
+	}
+
+	private static boolean endsWithSyncFlush(byte[] buf, int offset, int length) {
+		if (length < SYNC_FLUSH_SUFFIX.length)
+			return false;
+
+		for (int i = 0; i < SYNC_FLUSH_SUFFIX.length; i++)
+			if (buf[offset+length-SYNC_FLUSH_SUFFIX.length+i] != SYNC_FLUSH_SUFFIX[i])
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Decodes the first bytes of the byte buffer into the char buffer.
+	 *
+	 * @param size The amount of bytes to decode.
+	 * @return A reader over the decoded chars.
+	 */
+	private Reader decode(int size) {
+		if (chars.length < size) //UTF-8 never decodes to more chars than bytes
+			chars = new char[Math.max(size, chars.length*2)];
+
+		CharBuffer out = CharBuffer.wrap(chars);
+		decoder.reset();
+		decoder.decode(ByteBuffer.wrap(bytes, 0, size), out, true);
+		decoder.flush(out);
+
+		return new CharArrayReader(chars, 0, out.position());
+	}
+}
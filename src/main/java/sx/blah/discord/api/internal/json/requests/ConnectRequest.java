@@ -18,7 +18,11 @@ public class ConnectRequest {
 	public EventObject d;
 
 	public ConnectRequest(String token, String os, String browser, String device, String referrer, String referring_domain, int large_threshold, boolean compress) {
-		d = new EventObject(token, new PropertiesObject(os, browser, device, referrer, referring_domain), large_threshold, compress);
+		this(token, os, browser, device, referrer, referring_domain, large_threshold, compress, 0, 1);
+	}
+
+	public ConnectRequest(String token, String os, String browser, String device, String referrer, String referring_domain, int large_threshold, boolean compress, int shard, int shardCount) {
+		d = new EventObject(token, new PropertiesObject(os, browser, device, referrer, referring_domain), large_threshold, compress, new int[]{shard, shardCount});
 	}
 
 	/**
@@ -51,11 +55,17 @@ public class ConnectRequest {
 		 */
 		public boolean compress;
 
-		public EventObject(String token, PropertiesObject properties, int large_threshold, boolean compress) {
+		/**
+		 * The shard of this connection, in the form [shard id, shard count]
+		 */
+		public int[] shard;
+
+		public EventObject(String token, PropertiesObject properties, int large_threshold, boolean compress, int[] shard) {
 			this.token = token;
 			this.properties = properties;
 			this.large_threshold = large_threshold;
 			this.compress = compress;
+			this.shard = shard;
 		}
 	}
 
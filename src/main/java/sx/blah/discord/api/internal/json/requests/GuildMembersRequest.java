@@ -19,12 +19,16 @@ public class GuildMembersRequest {
 		d = new RequestObject(guild_id);
 	}
 
+	public GuildMembersRequest(String[] guild_ids) {
+		d = new RequestObject(guild_ids);
+	}
+
 	public static class RequestObject {
 
 		/**
-		 * The guild's id
+		 * The guild's id, or an array of guild ids
 		 */
-		public String guild_id;
+		public Object guild_id;
 
 		/**
 		 * String the username starts with or empty for all users.
@@ -39,5 +43,9 @@ public class GuildMembersRequest {
 		public RequestObject(String guild_id) {
 			this.guild_id = guild_id;
 		}
+
+		public RequestObject(String[] guild_ids) {
+			this.guild_id = guild_ids;
+		}
 	}
 }
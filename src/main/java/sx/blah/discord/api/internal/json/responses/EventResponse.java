@@ -12,8 +12,9 @@ public class EventResponse {
 
 	/**
 	 * From @Voltana "s is the sequence value - it's used for getting all messages you've missed after a gateway redirect"
+	 * This is null for payloads without a sequence value.
 	 */
-	public int s;
+	public Long s;
 
 	/**
 	 * The opcode for the event. From: https://github.com/RogueException/Discord.Net/blob/dev/src/Discord.Net/API/Client/GatewaySocket/OpCodes.cs
@@ -60,6 +60,11 @@ public class MessageResponse {
 	 */
 	public String channel_id;
 
+	/**
+	 * The id of the guild the channel belongs to, if sent by discord
+	 */
+	public String guild_id;
+
 	/**
 	 * The users mentioned in the message
 	 */
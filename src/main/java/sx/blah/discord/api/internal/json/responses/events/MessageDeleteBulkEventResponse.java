@@ -13,4 +13,8 @@ public class MessageDeleteBulkEventResponse {
 	 * The id of the channel the messages belong to.
 	 */
 	public String channel_id;
+	/**
+	 * The id of the guild the channel belongs to, if sent by discord.
+	 */
+	public String guild_id;
 }
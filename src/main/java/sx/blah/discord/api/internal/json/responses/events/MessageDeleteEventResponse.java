@@ -15,6 +15,11 @@ public class MessageDeleteEventResponse {
 	 */
 	public String channel_id;
 
+	/**
+	 * The guild the channel belongs to, if sent by discord
+	 */
+	public String guild_id;
+
 	public MessageDeleteEventResponse() {
 
 	}
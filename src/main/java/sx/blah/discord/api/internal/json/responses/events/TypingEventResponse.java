@@ -19,4 +19,9 @@ public class TypingEventResponse {
 	 * The channel id for where this is occurring
 	 */
 	public String channel_id;
+
+	/**
+	 * The guild id for where this is occurring, if sent by discord
+	 */
+	public String guild_id;
 }
@@ -10,6 +10,7 @@ import sx.blah.discord.api.IDiscordClient;
 import sx.blah.discord.api.internal.DiscordClientImpl;
 import sx.blah.discord.api.internal.DiscordEndpoints;
 import sx.blah.discord.api.internal.DiscordUtils;
+import sx.blah.discord.api.internal.EntityIndex;
 import sx.blah.discord.handle.impl.events.ChannelUpdateEvent;
 import sx.blah.discord.handle.impl.events.MessageSendEvent;
 import sx.blah.discord.handle.obj.*;
@@ -24,7 +25,11 @@ import sx.blah.discord.util.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class Channel implements IChannel {
@@ -94,6 +99,33 @@ public class Channel implements IChannel {
 	 */
 	protected final IDiscordClient client;
 
+	/**
+	 * The maximum amount of permissions bitmasks CACHED per channel.
+	 */
+	public static final int MAX_CACHED_PERMISSIONS = 10000;
+
+	/**
+	 * The CACHED permissions bitmasks of members in this channel (key = user id), this holds at most
+	 * {@link #MAX_CACHED_PERMISSIONS} entries.
+	 */
+	private final Map<Long, CachedPermissions> permissionsCache = new ConcurrentHashMap<>();
+
+	/**
+	 * This is incremented whenever the permission overrides of this channel change, which invalidates the
+	 * {@link #permissionsCache}.
+	 */
+	private final AtomicLong permissionsVersion = new AtomicLong();
+
+	/**
+	 * The bitmask containing every permission.
+	 */
+	private static final long ALL_PERMISSIONS = toMask(EnumSet.allOf(Permissions.class));
+
+	/**
+	 * The bitmask of {@link Permissions#ADMINISTRATOR}.
+	 */
+	private static final long ADMINISTRATOR = toMask(EnumSet.of(Permissions.ADMINISTRATOR));
+
 	public Channel(IDiscordClient client, String name, String id, IGuild parent, String topic, int position, Map<String, PermissionOverride> roleOverrides, Map<String, PermissionOverride> userOverrides) {
 		this.client = client;
 		this.name = name;
@@ -200,6 +232,37 @@ public class Channel implements IChannel {
 		}
 	}
 
+	@Override
+	public CompletableFuture<IMessage> sendMessageAsync(String content) {
+		return sendMessageAsync(content, false);
+	}
+
+	@Override
+	public CompletableFuture<IMessage> sendMessageAsync(String content, boolean tts) {
+		try {
+			DiscordUtils.checkPermissions(client, this, EnumSet.of(Permissions.SEND_MESSAGES));
+		} catch (MissingPermissionsException e) {
+			return DiscordUtils.failedFuture(e);
+		}
+
+		if (!client.isReady()) {
+			Discord4J.LOGGER.error(LogMarkers.HANDLE, "Bot has not signed in yet!");
+			return CompletableFuture.completedFuture(null);
+		}
+
+		return ((DiscordClientImpl) client).REQUESTS.POST.makeRequestAsync(DiscordEndpoints.CHANNELS+id+"/messages",
+				new StringEntity(DiscordUtils.GSON.toJson(new MessageRequest(content, new String[0], tts)), "UTF-8"),
+				new BasicNameValuePair("authorization", client.getToken()),
+				new BasicNameValuePair("content-type", "application/json")).thenApply(json -> {
+			MessageResponse response = DiscordUtils.GSON.fromJson(json, MessageResponse.class);
+
+			if (response == null || response.id == null) //Message didn't send
+				throw new CompletionException(new DiscordException("Message was unable to be sent."));
+
+			return DiscordUtils.getMessageFromJSON(client, this, response);
+		});
+	}
+
 	@Override
 	public IMessage sendFile(InputStream stream, String filename, String content) throws IOException, MissingPermissionsException, RateLimitException, DiscordException {
 		DiscordUtils.checkPermissions(client, this, EnumSet.of(Permissions.SEND_MESSAGES, Permissions.ATTACH_FILES));
@@ -374,51 +437,121 @@ public class Channel implements IChannel {
 
 	@Override
 	public EnumSet<Permissions> getModifiedPermissions(IUser user) {
-		if (isPrivate || getGuild().getOwnerID().equals(user.getID()))
-			return EnumSet.allOf(Permissions.class);
-
-		List<IRole> roles = user.getRolesForGuild(parent);
-		EnumSet<Permissions> permissions = EnumSet.noneOf(Permissions.class);
+		return fromMask(getPermissionsMask(user));
+	}
 
-		roles.stream()
-				.map(this::getModifiedPermissions)
-				.flatMap(EnumSet::stream)
-				.filter(p -> !permissions.contains(p))
-				.forEach(permissions::add);
+	@Override
+	public EnumSet<Permissions> getModifiedPermissions(IRole role) {
+		long mask = toMask(role.getPermissions());
+		PermissionOverride override = getRoleOverrides().get(role.getID());
 
-		PermissionOverride override = getUserOverrides().get(user.getID());
-		List<PermissionOverride> overrideRoles = roles.stream()
-				.filter(r -> roleOverrides.containsKey(r.getID()))
-				.map(role -> roleOverrides.get(role.getID()))
-				.collect(Collectors.toList());
-		Collections.reverse(overrideRoles);
-		for (PermissionOverride roleOverride : overrideRoles) {
-			permissions.addAll(roleOverride.allow());
-			permissions.removeAll(roleOverride.deny());
+		if (override == null) {
+			if ((override = getRoleOverrides().get(parent.getEveryoneRole().getID())) == null)
+				return fromMask(mask);
 		}
 
-		if (override != null) {
-			permissions.addAll(override.allow());
-			permissions.removeAll(override.deny());
+		return fromMask((mask | toMask(override.allow())) & ~toMask(override.deny()));
+	}
+
+	/**
+	 * Gets the permissions a user has in this channel as a bitmask, encoded like
+	 * {@link Permissions#generatePermissionsNumber(EnumSet)}. This is CACHED until the roles or permission overrides
+	 * affecting it change.
+	 *
+	 * @param user The user.
+	 * @return The permissions bitmask.
+	 */
+	public long getPermissionsMask(IUser user) {
+		if (isPrivate)
+			return toMask(getModifiedPermissions(user));
+
+		Member member = ((Guild) parent).getMember(user.getID());
+		long guildVersion = ((Guild) parent).getPermissionsVersion();
+		long channelVersion = permissionsVersion.get();
+		long memberVersion = member == null ? -1 : member.getRolesVersion();
+		long userID = EntityIndex.toSnowflake(user.getID());
+
+		CachedPermissions cached = permissionsCache.get(userID);
+		if (cached != null && cached.isValid(guildVersion, channelVersion, memberVersion))
+			return cached.mask;
+
+		long mask = computePermissionsMask(user);
+		if (cached == null && permissionsCache.size() >= MAX_CACHED_PERMISSIONS) {
+			//Stale entries are dropped first, if the cache is still full it is emptied rather than growing further
+			permissionsCache.values().removeIf(entry -> entry.guildVersion != guildVersion || entry.channelVersion != channelVersion);
+			if (permissionsCache.size() >= MAX_CACHED_PERMISSIONS)
+				permissionsCache.clear();
 		}
+		permissionsCache.put(userID, new CachedPermissions(mask, guildVersion, channelVersion, memberVersion));
+		return mask;
+	}
 
-		return permissions;
+	/**
+	 * Removes the CACHED permissions of a user, this must be called when the user leaves the guild.
+	 *
+	 * @param userID The user id.
+	 */
+	public void removeCachedPermissions(String userID) {
+		permissionsCache.remove(EntityIndex.toSnowflake(userID));
 	}
 
-	@Override
-	public EnumSet<Permissions> getModifiedPermissions(IRole role) {
-		EnumSet<Permissions> base = role.getPermissions();
-		PermissionOverride override = getRoleOverrides().get(role.getID());
+	/**
+	 * Computes the permissions of a user: the permissions of the user's roles, modified by the @everyone override,
+	 * then the overrides of the user's roles and finally the user's own override.
+	 */
+	private long computePermissionsMask(IUser user) {
+		if (parent.getOwnerID().equals(user.getID()))
+			return ALL_PERMISSIONS;
 
-		if (override == null) {
-			if ((override = getRoleOverrides().get(parent.getEveryoneRole().getID())) == null)
-				return base;
+		IRole everyone = parent.getEveryoneRole();
+		List<IRole> roles = user.getRolesForGuild(parent);
+
+		long mask = everyone == null ? 0 : toMask(everyone.getPermissions());
+		for (IRole role : roles)
+			mask |= toMask(role.getPermissions());
+
+		if ((mask & ADMINISTRATOR) != 0)
+			return ALL_PERMISSIONS;
+
+		PermissionOverride everyoneOverride = everyone == null ? null : roleOverrides.get(everyone.getID());
+		if (everyoneOverride != null)
+			mask = (mask & ~toMask(everyoneOverride.deny())) | toMask(everyoneOverride.allow());
+
+		long allow = 0, deny = 0;
+		for (IRole role : roles) {
+			PermissionOverride override;
+			if (!role.equals(everyone) && (override = roleOverrides.get(role.getID())) != null) {
+				allow |= toMask(override.allow());
+				deny |= toMask(override.deny());
+			}
 		}
+		mask = (mask & ~deny) | allow;
+
+		PermissionOverride userOverride = userOverrides.get(user.getID());
+		if (userOverride != null)
+			mask = (mask & ~toMask(userOverride.deny())) | toMask(userOverride.allow());
+
+		return mask;
+	}
 
-		base.addAll(override.allow().stream().collect(Collectors.toList()));
-		override.deny().forEach(base::remove);
+	/**
+	 * Invalidates the CACHED permissions of all members in this channel. This must be called whenever the permission
+	 * overrides of this channel change.
+	 */
+	public void invalidatePermissions() {
+		permissionsVersion.incrementAndGet();
+	}
+
+	private static long toMask(EnumSet<Permissions> permissions) {
+		return Permissions.generatePermissionsNumber(permissions) & 0xFFFFFFFFL;
+	}
 
-		return base;
+	private static EnumSet<Permissions> fromMask(long mask) {
+		EnumSet<Permissions> permissions = EnumSet.noneOf(Permissions.class);
+		for (Permissions permission : Permissions.values())
+			if (permission.hasPermission((int) mask, false))
+				permissions.add(permission);
+		return permissions;
 	}
 
 	/**
@@ -429,6 +562,7 @@ public class Channel implements IChannel {
 	 */
 	public void addUserOverride(String userId, PermissionOverride override) {
 		userOverrides.put(userId, override);
+		invalidatePermissions();
 	}
 
 	/**
@@ -439,6 +573,7 @@ public class Channel implements IChannel {
 	 */
 	public void addRoleOverride(String roleId, PermissionOverride override) {
 		roleOverrides.put(roleId, override);
+		invalidatePermissions();
 	}
 
 	@Override
@@ -449,6 +584,7 @@ public class Channel implements IChannel {
 				new BasicNameValuePair("authorization", client.getToken()));
 
 		userOverrides.remove(user.getID());
+		invalidatePermissions();
 	}
 
 	@Override
@@ -459,6 +595,7 @@ public class Channel implements IChannel {
 				new BasicNameValuePair("authorization", client.getToken()));
 
 		roleOverrides.remove(role.getID());
+		invalidatePermissions();
 	}
 
 	@Override
@@ -502,10 +639,9 @@ public class Channel implements IChannel {
 
 	@Override
 	public List<IUser> getUsersHere() {
-		return parent.getUsers().stream().filter((user) -> {
-			EnumSet<Permissions> permissions = getModifiedPermissions(user);
-			return Permissions.READ_MESSAGES.hasPermission(Permissions.generatePermissionsNumber(permissions), true);
-		}).collect(Collectors.toList());
+		return parent.getUsers().stream()
+				.filter(user -> Permissions.READ_MESSAGES.hasPermission((int) getPermissionsMask(user), true))
+				.collect(Collectors.toList());
 	}
 
 	@Override
@@ -580,4 +716,28 @@ public class Channel implements IChannel {
 
 		return this.getClass().isAssignableFrom(other.getClass()) && ((IChannel) other).getID().equals(getID());
 	}
+
+	/**
+	 * The permissions of a member, along with the versions of the guild and channel permissions and of the member's
+	 * roles it was computed from.
+	 */
+	private static class CachedPermissions {
+
+		final long mask;
+		final long guildVersion;
+		final long channelVersion;
+		final long memberVersion;
+
+		CachedPermissions(long mask, long guildVersion, long channelVersion, long memberVersion) {
+			this.mask = mask;
+			this.guildVersion = guildVersion;
+			this.channelVersion = channelVersion;
+			this.memberVersion = memberVersion;
+		}
+
+		boolean isValid(long guildVersion, long channelVersion, long memberVersion) {
+			return this.guildVersion == guildVersion && this.channelVersion == channelVersion
+					&& this.memberVersion == memberVersion;
+		}
+	}
 }
@@ -6,7 +6,9 @@ import sx.blah.discord.Discord4J;
 import sx.blah.discord.api.IDiscordClient;
 import sx.blah.discord.api.internal.DiscordClientImpl;
 import sx.blah.discord.api.internal.DiscordEndpoints;
+import sx.blah.discord.api.internal.DiscordObjectList;
 import sx.blah.discord.api.internal.DiscordUtils;
+import sx.blah.discord.api.internal.EntityIndex;
 import sx.blah.discord.handle.audio.IAudioManager;
 import sx.blah.discord.handle.audio.impl.AudioManager;
 import sx.blah.discord.handle.impl.events.GuildUpdateEvent;
@@ -19,30 +21,31 @@ import sx.blah.discord.util.*;
 import java.io.UnsupportedEncodingException;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class Guild implements IGuild {
 	/**
 	 * All text channels in the guild.
 	 */
-	protected final List<IChannel> channels;
+	protected final DiscordObjectList<IChannel> channels;
 
 	/**
 	 * All voice channels in the guild.
 	 */
-	protected final List<IVoiceChannel> voiceChannels;
+	protected final DiscordObjectList<IVoiceChannel> voiceChannels;
 
 	/**
 	 * All users connected to the guild.
 	 */
-	protected final List<IUser> users;
+	protected final DiscordObjectList<IUser> users;
 
 	/**
-	 * The joined timetamps for users.
+	 * The membership records of the users in this guild (key = user id).
 	 */
-	protected final Map<IUser, LocalDateTime> joinTimes;
+	protected final Map<Long, Member> members;
 
 	/**
 	 * The name of the guild.
@@ -72,7 +75,7 @@ public class Guild implements IGuild {
 	/**
 	 * The roles the guild contains.
 	 */
-	protected final List<IRole> roles;
+	protected final DiscordObjectList<IRole> roles;
 
 	/**
 	 * The channel where those who are afk are moved to.
@@ -98,28 +101,39 @@ public class Guild implements IGuild {
 	 */
 	protected final IDiscordClient client;
 
+	/**
+	 * This is incremented whenever the owner, roles or role permissions of this guild change, which invalidates the
+	 * permissions CACHED by its channels. Changes of a member's roles only invalidate that member's permissions, see
+	 * {@link Member}.
+	 */
+	private final AtomicLong permissionsVersion = new AtomicLong();
+
 	public Guild(IDiscordClient client, String name, String id, String icon, String ownerID, String afkChannel, int afkTimeout, String region) {
-		this(client, name, id, icon, ownerID, afkChannel, afkTimeout, region, new CopyOnWriteArrayList<>(), new CopyOnWriteArrayList<>(), new CopyOnWriteArrayList<>(), new CopyOnWriteArrayList<>(), new ConcurrentHashMap<>());
+		this(client, name, id, icon, ownerID, afkChannel, afkTimeout, region, new DiscordObjectList<>(), new DiscordObjectList<>(), new DiscordObjectList<>(), new DiscordObjectList<>(), new ConcurrentHashMap<>());
 	}
 
-	public Guild(IDiscordClient client, String name, String id, String icon, String ownerID, String afkChannel, int afkTimeout, String region, List<IRole> roles, List<IChannel> channels, List<IVoiceChannel> voiceChannels, List<IUser> users, Map<IUser, LocalDateTime> joinTimes) {
+	public Guild(IDiscordClient client, String name, String id, String icon, String ownerID, String afkChannel, int afkTimeout, String region, List<IRole> roles, List<IChannel> channels, List<IVoiceChannel> voiceChannels, List<IUser> users, Map<Long, Member> members) {
 		this.client = client;
 		this.name = name;
-		this.voiceChannels = voiceChannels;
-		this.channels = channels;
-		this.users = users;
+		this.voiceChannels = toObjectList(voiceChannels);
+		this.channels = toObjectList(channels);
+		this.users = toObjectList(users);
 		this.id = id;
 		this.icon = icon;
-		this.joinTimes = joinTimes;
+		this.members = members;
 		this.iconURL = String.format(DiscordEndpoints.ICONS, this.id, this.icon);
 		this.ownerID = ownerID;
-		this.roles = roles;
+		this.roles = toObjectList(roles);
 		this.afkChannel = afkChannel;
 		this.afkTimeout = afkTimeout;
 		this.regionID = region;
 		this.audioManager = new AudioManager(this);
 	}
 
+	private static <T extends IDiscordObject<?>> DiscordObjectList<T> toObjectList(List<T> list) {
+		return list instanceof DiscordObjectList ? (DiscordObjectList<T>) list : new DiscordObjectList<>(list);
+	}
+
 	@Override
 	public String getOwnerID() {
 		return ownerID;
@@ -137,6 +151,7 @@ public class Guild implements IGuild {
 	 */
 	public void setOwnerID(String id) {
 		ownerID = id;
+		invalidatePermissions();
 	}
 
 	@Override
@@ -166,9 +181,7 @@ public class Guild implements IGuild {
 
 	@Override
 	public IChannel getChannelByID(String id) {
-		return channels.stream()
-				.filter(c -> c.getID().equalsIgnoreCase(id))
-				.findAny().orElse(null);
+		return channels.get(id);
 	}
 
 	@Override
@@ -178,11 +191,7 @@ public class Guild implements IGuild {
 
 	@Override
 	public IUser getUserByID(String id) {
-		if (users == null)
-			return null;
-		return Arrays.stream(users.toArray(new IUser[users.size()]))
-				.filter(u -> u != null && u.getID() != null && u.getID().equalsIgnoreCase(id))
-				.findAny().orElse(null);
+		return users.get(id);
 	}
 
 	@Override
@@ -227,13 +236,44 @@ public class Guild implements IGuild {
 	}
 
 	/**
-	 * CACHES a user to the guild.
+	 * CACHES a user to the guild. The user is shared with the other guilds through the client's user registry.
+	 *
+	 * @param user The user.
+	 * @return The membership record of the user in this guild.
+	 */
+	public Member addUser(IUser user) {
+		if (!users.containsID(user.getID()))
+			users.add(((DiscordClientImpl) client).index.addUser(user, this));
+
+		return members.computeIfAbsent(EntityIndex.toSnowflake(user.getID()), id -> new Member(this, users.get(user.getID())));
+	}
+
+	/**
+	 * Removes a CACHED user from the guild.
 	 *
 	 * @param user The user.
 	 */
-	public void addUser(IUser user) {
-		if (!this.users.contains(user) && user != null)
-			this.users.add(user);
+	public void removeUser(IUser user) {
+		members.remove(EntityIndex.toSnowflake(user.getID()));
+		if (this.users.remove(user))
+			((DiscordClientImpl) client).index.releaseUser(user, this);
+
+		for (IChannel channel : channels)
+			if (channel instanceof Channel)
+				((Channel) channel).removeCachedPermissions(user.getID());
+		for (IVoiceChannel channel : voiceChannels)
+			if (channel instanceof Channel)
+				((Channel) channel).removeCachedPermissions(user.getID());
+	}
+
+	/**
+	 * Gets the CACHED membership record of a user in this guild.
+	 *
+	 * @param userID The user id.
+	 * @return The membership record, or null if the user isn't a member of this guild.
+	 */
+	public Member getMember(String userID) {
+		return members.get(EntityIndex.toSnowflake(userID));
 	}
 
 	/**
@@ -242,8 +282,18 @@ public class Guild implements IGuild {
 	 * @param channel The channel.
 	 */
 	public void addChannel(IChannel channel) {
-		if (!this.channels.contains(channel) && !(channel instanceof IVoiceChannel) && !(channel instanceof IPrivateChannel))
-			this.channels.add(channel);
+		if (!(channel instanceof IVoiceChannel) && !(channel instanceof IPrivateChannel) && this.channels.add(channel))
+			((DiscordClientImpl) client).index.addChannel(channel);
+	}
+
+	/**
+	 * Removes a CACHED channel from the guild.
+	 *
+	 * @param channel The channel.
+	 */
+	public void removeChannel(IChannel channel) {
+		if (this.channels.remove(channel))
+			((DiscordClientImpl) client).index.removeChannel(channel);
 	}
 
 	@Override
@@ -262,15 +312,42 @@ public class Guild implements IGuild {
 	 * @param role The role.
 	 */
 	public void addRole(IRole role) {
-		if (!this.roles.contains(role))
-			this.roles.add(role);
+		if (this.roles.add(role))
+			((DiscordClientImpl) client).index.addRole(role);
+		invalidatePermissions();
+	}
+
+	/**
+	 * Removes a CACHED role from the guild.
+	 *
+	 * @param role The role.
+	 */
+	public void removeRole(IRole role) {
+		if (this.roles.remove(role))
+			((DiscordClientImpl) client).index.removeRole(role);
+		invalidatePermissions();
+	}
+
+	/**
+	 * Invalidates the CACHED permissions of all members in all channels of this guild. This must be called whenever the
+	 * owner, the roles or the permissions of a role of this guild change.
+	 */
+	public void invalidatePermissions() {
+		permissionsVersion.incrementAndGet();
+	}
+
+	/**
+	 * Gets the version of the permissions of this guild, see {@link #invalidatePermissions()}.
+	 *
+	 * @return The version.
+	 */
+	long getPermissionsVersion() {
+		return permissionsVersion.get();
 	}
 
 	@Override
 	public IRole getRoleByID(String id) {
-		return roles.stream()
-				.filter(r -> r.getID().equalsIgnoreCase(id))
-				.findAny().orElse(null);
+		return roles.get(id);
 	}
 
 	@Override
@@ -285,9 +362,7 @@ public class Guild implements IGuild {
 
 	@Override
 	public IVoiceChannel getVoiceChannelByID(String id) {
-		return voiceChannels.stream()
-				.filter(c -> c.getID().equals(id))
-				.findAny().orElse(null);
+		return voiceChannels.get(id);
 	}
 
 	@Override
@@ -309,8 +384,13 @@ public class Guild implements IGuild {
 	}
 
 	public void addVoiceChannel(IVoiceChannel channel) {
-		if (!voiceChannels.contains(channel) && !(channel instanceof IPrivateChannel))
-			voiceChannels.add(channel);
+		if (!(channel instanceof IPrivateChannel) && voiceChannels.add(channel))
+			((DiscordClientImpl) client).index.addVoiceChannel(channel);
+	}
+
+	public void removeVoiceChannel(IVoiceChannel channel) {
+		if (voiceChannels.remove(channel))
+			((DiscordClientImpl) client).index.removeVoiceChannel(channel);
 	}
 
 	@Override
@@ -669,20 +749,35 @@ public class Guild implements IGuild {
 	}
 
 	/**
-	 * This gets the CACHED join times map.
+	 * This gets a snapshot of the CACHED join times of all members.
 	 *
 	 * @return The join times.
 	 */
 	public Map<IUser, LocalDateTime> getJoinTimes() {
+		Map<IUser, LocalDateTime> joinTimes = new HashMap<>();
+		for (Member member : members.values())
+			if (member.getJoinTime() != null)
+				joinTimes.put(member.getUser(), member.getJoinTime());
 		return joinTimes;
 	}
 
+	/**
+	 * Gets the future which completes once all members of this guild were received. Only the offline members of large
+	 * guilds are requested after the guild is received, the future of any other guild is already completed.
+	 *
+	 * @return The future.
+	 */
+	public CompletableFuture<Void> getMembersFuture() {
+		return ((DiscordClientImpl) client).memberRequests.getFuture(id);
+	}
+
 	@Override
 	public LocalDateTime getJoinTimeForUser(IUser user) throws DiscordException {
-		if (!joinTimes.containsKey(user))
+		Member member = getMember(user.getID());
+		if (member == null || member.getJoinTime() == null)
 			throw new DiscordException("Cannot find user "+user.getDisplayName(this)+" in this guild!");
 
-		return joinTimes.get(user);
+		return member.getJoinTime();
 	}
 
 	@Override
@@ -712,7 +807,7 @@ public class Guild implements IGuild {
 	@Override
 	public IGuild copy() {
 		return new Guild(client, name, id, icon, ownerID, afkChannel, afkTimeout, regionID, roles, channels,
-				voiceChannels, users, joinTimes);
+				voiceChannels, users, members);
 	}
 
 	@Override
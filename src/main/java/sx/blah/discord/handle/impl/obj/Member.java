@@ -0,0 +1,220 @@
+package sx.blah.discord.handle.impl.obj;
+
+import sx.blah.discord.handle.obj.IRole;
+import sx.blah.discord.handle.obj.IUser;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The CACHED membership of a user in a guild. The user object itself is shared between all guilds the user is in, so
+ * everything specific to one guild is stored here.
+ */
+public class Member {
+
+	/**
+	 * The guild.
+	 */
+	protected final Guild guild;
+	/**
+	 * The user.
+	 */
+	protected final IUser user;
+	/**
+	 * The roles the user has in the guild. This list is immutable and replaced as a whole, so readers never see a
+	 * partially updated list.
+	 */
+	protected volatile List<IRole> roles = Collections.emptyList();
+	/**
+	 * This is incremented whenever the roles of the member change, which invalidates the member's permissions CACHED by
+	 * the guild's channels.
+	 */
+	protected volatile long rolesVersion;
+	/**
+	 * The nickname of the user in the guild, or null if the user has none.
+	 */
+	protected volatile String nick;
+	/**
+	 * The time the user joined the guild.
+	 */
+	protected volatile LocalDateTime joinTime;
+	/**
+	 * The deafened status of the user in the guild.
+	 */
+	protected volatile boolean isDeaf;
+	/**
+	 * The muted status of the user in the guild.
+	 */
+	protected volatile boolean isMuted;
+
+	public Member(Guild guild, IUser user) {
+		this.guild = guild;
+		this.user = user;
+	}
+
+	/**
+	 * Gets the guild.
+	 *
+	 * @return The guild.
+	 */
+	public Guild getGuild() {
+		return guild;
+	}
+
+	/**
+	 * Gets the user.
+	 *
+	 * @return The user.
+	 */
+	public IUser getUser() {
+		return user;
+	}
+
+	/**
+	 * Creates a snapshot of this membership for a copy of the user, which doesn't change with the CACHED membership.
+	 *
+	 * @param user The copy of the user.
+	 * @return The snapshot.
+	 */
+	Member copy(IUser user) {
+		Member member = new Member(guild, user);
+		member.roles = roles;
+		member.rolesVersion = rolesVersion;
+		member.nick = nick;
+		member.joinTime = joinTime;
+		member.isDeaf = isDeaf;
+		member.isMuted = isMuted;
+		return member;
+	}
+
+	/**
+	 * Gets the CACHED roles of the user in the guild.
+	 *
+	 * @return The roles, this list is immutable.
+	 */
+	public List<IRole> getRoles() {
+		return roles;
+	}
+
+	/**
+	 * CACHES a role to the member.
+	 *
+	 * @param role The role.
+	 */
+	public synchronized void addRole(IRole role) {
+		if (role != null && !roles.contains(role)) {
+			List<IRole> newRoles = new ArrayList<>(roles.size()+1);
+			newRoles.addAll(roles);
+			newRoles.add(role);
+			this.roles = Collections.unmodifiableList(newRoles);
+			rolesVersion++;
+		}
+	}
+
+	/**
+	 * Replaces the CACHED roles of the member.
+	 *
+	 * @param roles The new roles.
+	 */
+	public synchronized void setRoles(Collection<IRole> roles) {
+		this.roles = Collections.unmodifiableList(new ArrayList<>(roles));
+		rolesVersion++;
+	}
+
+	/**
+	 * Removes CACHED roles from the member.
+	 *
+	 * @param roles The roles to remove.
+	 */
+	public synchronized void removeRoles(Collection<IRole> roles) {
+		List<IRole> newRoles = new ArrayList<>(this.roles);
+		if (newRoles.removeAll(roles)) {
+			this.roles = Collections.unmodifiableList(newRoles);
+			rolesVersion++;
+		}
+	}
+
+	/**
+	 * Gets the version of the roles of the member, it changes whenever the CACHED roles change.
+	 *
+	 * @return The version.
+	 */
+	long getRolesVersion() {
+		return rolesVersion;
+	}
+
+	/**
+	 * Gets the CACHED nickname of the user in the guild.
+	 *
+	 * @return The nickname, or null if the user has none.
+	 */
+	public String getNick() {
+		return nick;
+	}
+
+	/**
+	 * Sets the CACHED nickname of the user in the guild.
+	 *
+	 * @param nick The nickname, or null to remove it.
+	 */
+	public void setNick(String nick) {
+		this.nick = nick;
+	}
+
+	/**
+	 * Gets the CACHED time the user joined the guild.
+	 *
+	 * @return The join time.
+	 */
+	public LocalDateTime getJoinTime() {
+		return joinTime;
+	}
+
+	/**
+	 * Sets the CACHED time the user joined the guild.
+	 *
+	 * @param joinTime The join time.
+	 */
+	public void setJoinTime(LocalDateTime joinTime) {
+		this.joinTime = joinTime;
+	}
+
+	/**
+	 * Gets whether the user is deafened in the guild. This value is CACHED.
+	 *
+	 * @return True if deafened, false if otherwise.
+	 */
+	public boolean isDeaf() {
+		return isDeaf;
+	}
+
+	/**
+	 * Sets whether the user is deafened in the guild. This value is CACHED.
+	 *
+	 * @param isDeaf Whether the user is deafened or not.
+	 */
+	public void setIsDeaf(boolean isDeaf) {
+		this.isDeaf = isDeaf;
+	}
+
+	/**
+	 * Gets whether the user is muted in the guild. This value is CACHED.
+	 *
+	 * @return True if muted, false if otherwise.
+	 */
+	public boolean isMuted() {
+		return isMuted;
+	}
+
+	/**
+	 * Sets whether the user is muted in the guild. This value is CACHED.
+	 *
+	 * @param isMuted Whether the user is muted or not.
+	 */
+	public void setIsMute(boolean isMuted) {
+		this.isMuted = isMuted;
+	}
+}
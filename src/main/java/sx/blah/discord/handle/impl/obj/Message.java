@@ -18,6 +18,7 @@ import sx.blah.discord.util.RateLimitException;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -277,6 +278,29 @@ public class Message implements IMessage {
 		return this;
 	}
 
+	@Override
+	public CompletableFuture<IMessage> editAsync(String content) {
+		if (!this.getAuthor().equals(client.getOurUser()))
+			return DiscordUtils.failedFuture(new MissingPermissionsException("Cannot edit other users' messages!"));
+		if (!client.isReady()) {
+			Discord4J.LOGGER.error(LogMarkers.HANDLE, "Bot has not signed in yet!");
+			return CompletableFuture.completedFuture(this);
+		}
+
+		return ((DiscordClientImpl) client).REQUESTS.PATCH.makeRequestAsync(DiscordEndpoints.CHANNELS+channel.getID()+"/messages/"+id,
+				new StringEntity(DiscordUtils.GSON.toJson(new MessageRequest(content, new String[0], false)), "UTF-8"),
+				new BasicNameValuePair("authorization", client.getToken()),
+				new BasicNameValuePair("content-type", "application/json")).thenApply(json -> {
+			MessageResponse response = DiscordUtils.GSON.fromJson(json, MessageResponse.class);
+
+			IMessage oldMessage = copy();
+			DiscordUtils.getMessageFromJSON(client, channel, response);
+			//See edit(String) for why the event is dispatched here
+			client.getDispatcher().dispatch(new MessageUpdateEvent(oldMessage, this));
+			return this;
+		});
+	}
+
 	/**
 	 * Gets the raw list of mentioned user ids.
 	 *
@@ -326,6 +350,28 @@ public class Message implements IMessage {
 		}
 	}
 
+	@Override
+	public CompletableFuture<Void> deleteAsync() {
+		if (!getAuthor().equals(client.getOurUser())) {
+			if (channel.isPrivate())
+				return DiscordUtils.failedFuture(new DiscordException("Cannot delete the other person's message in a private channel!"));
+
+			try {
+				DiscordUtils.checkPermissions(client, getChannel(), EnumSet.of(Permissions.MANAGE_MESSAGES));
+			} catch (MissingPermissionsException e) {
+				return DiscordUtils.failedFuture(e);
+			}
+		}
+
+		if (!client.isReady()) {
+			Discord4J.LOGGER.error(LogMarkers.HANDLE, "Bot has not signed in yet!");
+			return CompletableFuture.completedFuture(null);
+		}
+
+		return ((DiscordClientImpl) client).REQUESTS.DELETE.makeRequestAsync(DiscordEndpoints.CHANNELS+channel.getID()+"/messages/"+id,
+				new BasicNameValuePair("authorization", client.getToken())).thenApply(response -> null);
+	}
+
 	@Override
 	public Optional<LocalDateTime> getEditedTimestamp() {
 		return Optional.ofNullable(editedTimestamp);
@@ -110,6 +110,8 @@ public class Role implements IRole {
 	 */
 	public void setPermissions(int permissions) {
 		this.permissions = Permissions.getAllowedPermissionsForNumber(permissions);
+		if (guild instanceof Guild)
+			((Guild) guild).invalidatePermissions();
 	}
 
 	@Override
@@ -183,7 +185,21 @@ public class Role implements IRole {
 		return guild;
 	}
 
-	private void edit(Optional<Color> color, Optional<Boolean> hoist, Optional<String> name, Optional<EnumSet<Permissions>> permissions, Optional<Boolean> isMentionable) throws MissingPermissionsException, RateLimitException, DiscordException {
+	/**
+	 * Edits this role, attributes which are empty keep their CACHED value. This allows several attributes to be changed
+	 * with a single request.
+	 *
+	 * @param color The new color.
+	 * @param hoist Whether the role should be hoisted.
+	 * @param name The new name.
+	 * @param permissions The new permissions.
+	 * @param isMentionable Whether the role should be mentionable.
+	 *
+	 * @throws MissingPermissionsException
+	 * @throws RateLimitException
+	 * @throws DiscordException
+	 */
+	public void edit(Optional<Color> color, Optional<Boolean> hoist, Optional<String> name, Optional<EnumSet<Permissions>> permissions, Optional<Boolean> isMentionable) throws MissingPermissionsException, RateLimitException, DiscordException {
 		DiscordUtils.checkPermissions(((Guild) guild).client, guild, Collections.singletonList(this), EnumSet.of(Permissions.MANAGE_ROLES));
 
 		try {
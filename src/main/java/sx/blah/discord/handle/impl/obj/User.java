@@ -7,6 +7,7 @@ import sx.blah.discord.api.IDiscordClient;
 import sx.blah.discord.api.internal.DiscordClientImpl;
 import sx.blah.discord.api.internal.DiscordEndpoints;
 import sx.blah.discord.api.internal.DiscordUtils;
+import sx.blah.discord.api.internal.EntityIndex;
 import sx.blah.discord.api.internal.json.requests.MemberEditRequest;
 import sx.blah.discord.handle.obj.*;
 import sx.blah.discord.util.DiscordException;
@@ -16,7 +17,6 @@ import sx.blah.discord.util.RateLimitException;
 
 import java.io.UnsupportedEncodingException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 public class User implements IUser {
@@ -25,14 +25,6 @@ public class User implements IUser {
 	 * User ID.
 	 */
 	protected final String id;
-	/**
-	 * The roles the user is a part of. (Key = guild id).
-	 */
-	protected final Map<String, List<IRole>> roles;
-	/**
-	 * The nicknames this user has. (Key = guild id).
-	 */
-	protected final Map<String, String> nicks;
 	/**
 	 * The voice channels this user is in.
 	 */
@@ -41,14 +33,6 @@ public class User implements IUser {
 	 * The client that created this object.
 	 */
 	protected final IDiscordClient client;
-	/**
-	 * The muted status of this user. (Key = guild id).
-	 */
-	private final Map<String, Boolean> isMuted = new ConcurrentHashMap<>();
-	/**
-	 * The deafened status of this user. (Key = guild id).
-	 */
-	private final Map<String, Boolean> isDeaf = new ConcurrentHashMap<>();
 	/**
 	 * Display name of the user.
 	 */
@@ -87,6 +71,10 @@ public class User implements IUser {
 	 * The local deafened status of this user.
 	 */
 	private volatile boolean isDeafLocally;
+	/**
+	 * The memberships of this user at the time it was copied (key = guild id), or null if this isn't a copy.
+	 */
+	private volatile Map<Long, Member> memberSnapshots;
 
 	public User(IDiscordClient client, String name, String id, String discriminator, String avatar, Presences presence,
 				boolean isBot) {
@@ -97,8 +85,6 @@ public class User implements IUser {
 		this.avatar = avatar;
 		this.avatarURL = String.format(DiscordEndpoints.AVATARS, this.id, this.avatar);
 		this.presence = presence;
-		this.roles = new ConcurrentHashMap<>();
-		this.nicks = new ConcurrentHashMap<>();
 		this.isBot = isBot;
 	}
 
@@ -203,54 +189,48 @@ public class User implements IUser {
 
 	@Override
 	public List<IRole> getRolesForGuild(IGuild guild) {
-		return roles.getOrDefault(guild.getID(), new ArrayList<>());
+		Member member = getMember(guild);
+		return member == null ? new ArrayList<>() : member.getRoles();
 	}
 
 	@Override
 	public Optional<String> getNicknameForGuild(IGuild guild) {
-		return Optional.ofNullable(nicks.containsKey(guild.getID()) ? nicks.get(guild.getID()) : null);
+		Member member = getMember(guild);
+		return Optional.ofNullable(member == null ? null : member.getNick());
 	}
 
 	/**
-	 * CACHES a nickname to the user.
+	 * Gets the CACHED membership record of this user in a guild.
 	 *
-	 * @param guildID The guild the nickname is for.
-	 * @param nick    The nickname, or null to remove it.
+	 * @param guild The guild.
+	 * @return The membership record, or null if this user isn't a member of the guild.
 	 */
-	public void addNick(String guildID, String nick) {
-		if (nick == null) {
-			if (nicks.containsKey(guildID))
-				nicks.remove(guildID);
-		} else {
-			nicks.put(guildID, nick);
-		}
+	private Member getMember(IGuild guild) {
+		Map<Long, Member> snapshots = memberSnapshots;
+		if (snapshots != null)
+			return guild == null ? null : snapshots.get(EntityIndex.toSnowflake(guild.getID()));
+		return guild instanceof Guild ? ((Guild) guild).getMember(id) : null;
 	}
 
 	/**
-	 * CACHES a role to the user.
+	 * Copies this user. The copy keeps the roles, nickname and voice state the user had in each of their guilds at the
+	 * time it was copied, rather than reading the CACHED memberships which keep changing.
 	 *
-	 * @param guildID The guild the role is for.
-	 * @param role    The role.
+	 * @return The copy.
 	 */
-	public void addRole(String guildID, IRole role) {
-		if (!roles.containsKey(guildID)) {
-			roles.put(guildID, new ArrayList<>());
-		}
-
-		roles.get(guildID).add(role);
-	}
-
 	@Override
 	public IUser copy() {
 		User newUser = new User(client, name, id, discriminator, avatar, presence, isBot);
 		newUser.setStatus(this.status);
-		for (String key : isMuted.keySet())
-			newUser.setIsMute(key, isMuted.get(key));
-		for (String key : isDeaf.keySet())
-			newUser.setIsDeaf(key, isDeaf.get(key));
-		newUser.nicks.putAll(nicks);
-		newUser.roles.putAll(roles);
 		newUser.channels.addAll(channels);
+
+		Map<Long, Member> snapshots = new HashMap<>();
+		for (IGuild guild : ((DiscordClientImpl) client).index.getGuildsOfUser(id)) {
+			Member member = getMember(guild);
+			if (member != null)
+				snapshots.put(EntityIndex.toSnowflake(guild.getID()), member.copy(newUser));
+		}
+		newUser.memberSnapshots = snapshots;
 		return newUser;
 	}
 
@@ -307,34 +287,16 @@ public class User implements IUser {
 		return client.getOrCreatePMChannel(this);
 	}
 
-	/**
-	 * Sets whether the user is muted or not. This value is CACHED.
-	 *
-	 * @param guildID The guild in which this is the case.
-	 * @param isMuted Whether the user is muted or not.
-	 */
-	public void setIsMute(String guildID, boolean isMuted) {
-		this.isMuted.put(guildID, isMuted);
-	}
-
-	/**
-	 * Sets whether the user is deafened or not. This value is CACHED.
-	 *
-	 * @param guildID The guild in which this is the case.
-	 * @param isDeaf  Whether the user is deafened or not.
-	 */
-	public void setIsDeaf(String guildID, boolean isDeaf) {
-		this.isDeaf.put(guildID, isDeaf);
-	}
-
 	@Override
 	public boolean isDeaf(IGuild guild) {
-		return isDeaf.getOrDefault(guild.getID(), false);
+		Member member = getMember(guild);
+		return member != null && member.isDeaf();
 	}
 
 	@Override
 	public boolean isMuted(IGuild guild) {
-		return isMuted.getOrDefault(guild.getID(), false);
+		Member member = getMember(guild);
+		return member != null && member.isMuted();
 	}
 
 	/**
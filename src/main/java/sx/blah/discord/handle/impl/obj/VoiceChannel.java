@@ -7,6 +7,7 @@ import sx.blah.discord.api.IDiscordClient;
 import sx.blah.discord.api.internal.DiscordClientImpl;
 import sx.blah.discord.api.internal.DiscordEndpoints;
 import sx.blah.discord.api.internal.DiscordUtils;
+import sx.blah.discord.api.internal.DiscordWS;
 import sx.blah.discord.handle.impl.events.ChannelUpdateEvent;
 import sx.blah.discord.handle.impl.events.VoiceDisconnectedEvent;
 import sx.blah.discord.handle.obj.*;
@@ -19,6 +20,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 public class VoiceChannel extends Channel implements IVoiceChannel {
@@ -122,7 +124,12 @@ public class VoiceChannel extends Channel implements IVoiceChannel {
 				} else if (!client.isBot() && client.getConnectedVoiceChannels().size() > 0)
 					throw new UnsupportedOperationException("Must be a bot account to have multi-server voice support!");
 
-				((DiscordClientImpl) client).ws.send(DiscordUtils.GSON.toJson(new VoiceChannelRequest(parent.getID(), id, false, false)));
+				DiscordWS ws = ((DiscordClientImpl) client).shards.getForGuild(parent.getID());
+				if (ws == null) {
+					Discord4J.LOGGER.error(LogMarkers.HANDLE, "The shard of guild {} isn't connected! Aborting join request...", parent.getID());
+					return;
+				}
+				ws.send(DiscordUtils.GSON.toJson(new VoiceChannelRequest(parent.getID(), id, false, false)));
 			} else {
 				Discord4J.LOGGER.info(LogMarkers.HANDLE, "Already connected to the voice channel!");
 			}
@@ -134,7 +141,11 @@ public class VoiceChannel extends Channel implements IVoiceChannel {
 	@Override
 	public void leave() {
 		if (client.getConnectedVoiceChannels().contains(this)) {
-			((DiscordClientImpl) client).ws.send(DiscordUtils.GSON.toJson(new VoiceChannelRequest(parent.getID(), null, false, false)));
+			DiscordWS ws = ((DiscordClientImpl) client).shards.getForGuild(parent.getID());
+			if (ws != null)
+				ws.send(DiscordUtils.GSON.toJson(new VoiceChannelRequest(parent.getID(), null, false, false)));
+			else
+				Discord4J.LOGGER.warn(LogMarkers.HANDLE, "The shard of guild {} isn't connected, only closing the voice connection.", parent.getID());
 			if (((DiscordClientImpl) client).voiceConnections.containsKey(parent))
 				((DiscordClientImpl) client).voiceConnections.get(parent).disconnect(VoiceDisconnectedEvent.Reason.LEFT_CHANNEL);
 		} else {
@@ -177,6 +188,16 @@ public class VoiceChannel extends Channel implements IVoiceChannel {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public CompletableFuture<IMessage> sendMessageAsync(String content) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public CompletableFuture<IMessage> sendMessageAsync(String content, boolean tts) {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public IMessage sendFile(File file) throws IOException {
 		throw new UnsupportedOperationException();
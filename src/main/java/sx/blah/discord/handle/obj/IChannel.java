@@ -12,6 +12,7 @@ import java.io.InputStream;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Defines a text channel in a guild/server.
@@ -93,6 +94,27 @@ public interface IChannel extends IDiscordObject<IChannel> {
 	 */
 	IMessage sendMessage(String content, boolean tts) throws MissingPermissionsException, RateLimitException, DiscordException;
 
+	/**
+	 * Sends a message without tts to the desired channel asynchronously.
+	 *
+	 * @param content The content of the message.
+	 * @return The future of the message object representing the sent message. It completes exceptionally with a
+	 * {@link MissingPermissionsException}, {@link RateLimitException} or {@link DiscordException} if the message
+	 * couldn't be sent.
+	 */
+	CompletableFuture<IMessage> sendMessageAsync(String content);
+
+	/**
+	 * Sends a message to the desired channel asynchronously.
+	 *
+	 * @param content The content of the message.
+	 * @param tts Whether the message should use tts or not.
+	 * @return The future of the message object representing the sent message. It completes exceptionally with a
+	 * {@link MissingPermissionsException}, {@link RateLimitException} or {@link DiscordException} if the message
+	 * couldn't be sent.
+	 */
+	CompletableFuture<IMessage> sendMessageAsync(String content, boolean tts);
+
 	/**
 	 * Sends a file to the channel with a message attached.
 	 *
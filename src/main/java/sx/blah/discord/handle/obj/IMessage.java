@@ -7,6 +7,7 @@ import sx.blah.discord.util.MissingPermissionsException;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Represents a discord message.
@@ -103,6 +104,16 @@ public interface IMessage extends IDiscordObject<IMessage> {
 	 */
 	IMessage edit(String content) throws MissingPermissionsException, RateLimitException, DiscordException;
 
+	/**
+	 * Edits the message asynchronously. NOTE: Discord only supports editing YOUR OWN messages!
+	 *
+	 * @param content The new content for the message to contain.
+	 * @return The future of the new message (this). It completes exceptionally with a
+	 * {@link MissingPermissionsException}, {@link RateLimitException} or {@link DiscordException} if the message
+	 * couldn't be edited.
+	 */
+	CompletableFuture<IMessage> editAsync(String content);
+
 	/**
 	 * Returns whether this message mentions everyone.
 	 *
@@ -119,6 +130,15 @@ public interface IMessage extends IDiscordObject<IMessage> {
 	 */
 	void delete() throws MissingPermissionsException, RateLimitException, DiscordException;
 
+	/**
+	 * Deletes the message asynchronously.
+	 *
+	 * @return The future which completes once the message is deleted. It completes exceptionally with a
+	 * {@link MissingPermissionsException}, {@link RateLimitException} or {@link DiscordException} if the message
+	 * couldn't be deleted.
+	 */
+	CompletableFuture<Void> deleteAsync();
+
 	/**
 	 * Gets the time that this message was last edited.
 	 *
@@ -0,0 +1,159 @@
+package sx.blah.discord.util;
+
+import sx.blah.discord.api.IDiscordClient;
+import sx.blah.discord.api.internal.EntityIndex;
+import sx.blah.discord.handle.impl.obj.Embedded;
+import sx.blah.discord.handle.impl.obj.Message;
+import sx.blah.discord.handle.obj.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This encodes the messages of a {@link MessageList} into compact records: ids are kept as longs, timestamps as epoch
+ * micros and the content as UTF-8 in the client's shared {@link MessageArena}. {@link IMessage} views are only created
+ * when a message is accessed.
+ * <p>
+ * NOTE: Views are snapshots, modifying one doesn't modify the cached record. Modified messages must be stored again
+ * with {@link MessageList#update(IMessage)}.
+ */
+class CompactMessageStore {
+
+	/**
+	 * The estimated memory used by a record, excluding its content.
+	 */
+	static final int RECORD_OVERHEAD = 72;
+
+	private final IDiscordClient client;
+	private final IChannel channel;
+	private final MessageArena arena;
+
+	CompactMessageStore(IDiscordClient client, IChannel channel, MessageArena arena) {
+		this.client = client;
+		this.channel = channel;
+		this.arena = arena;
+	}
+
+	/**
+	 * Encodes a message into a record.
+	 *
+	 * @param message The message.
+	 * @return The record.
+	 */
+	Object encode(IMessage message) {
+		CompactMessage record = new CompactMessage();
+		record.id = EntityIndex.toSnowflake(message.getID());
+		record.author = message.getAuthor();
+		record.timestamp = toEpochMicro(message.getTimestamp());
+		record.editedTimestamp = message.getEditedTimestamp().map(CompactMessageStore::toEpochMicro).orElse(Long.MIN_VALUE);
+		record.mentionsEveryone = message.mentionsEveryone();
+		record.pinned = message.isPinned();
+
+		byte[] content = message.getContent() == null ? new byte[0] : message.getContent().getBytes(StandardCharsets.UTF_8);
+		record.content = arena.allocate(content);
+		record.contentLength = content.length;
+
+		if (!message.getMentions().isEmpty()) {
+			record.mentions = new long[message.getMentions().size()];
+			for (int i = 0; i < record.mentions.length; i++)
+				record.mentions[i] = EntityIndex.toSnowflake(message.getMentions().get(i).getID());
+		}
+		if (!message.getRoleMentions().isEmpty()) {
+			record.roleMentions = new long[message.getRoleMentions().size()];
+			for (int i = 0; i < record.roleMentions.length; i++)
+				record.roleMentions[i] = EntityIndex.toSnowflake(message.getRoleMentions().get(i).getID());
+		}
+		if (!message.getAttachments().isEmpty())
+			record.attachments = new ArrayList<>(message.getAttachments());
+		if (!message.getEmbedded().isEmpty()) {
+			record.embedded = new ArrayList<>();
+			for (IMessage.IEmbedded embedded : message.getEmbedded())
+				record.embedded.add((Embedded) embedded);
+		}
+		return record;
+	}
+
+	/**
+	 * Creates a view of a record.
+	 *
+	 * @param record The record.
+	 * @return The message.
+	 */
+	IMessage decode(Object record) {
+		CompactMessage message = (CompactMessage) record;
+		return new Message(client, Long.toString(message.id), arena.read(message.content, message.contentLength),
+				message.author, channel, fromEpochMicro(message.timestamp),
+				message.editedTimestamp == Long.MIN_VALUE ? null : fromEpochMicro(message.editedTimestamp),
+				message.mentionsEveryone, toIDs(message.mentions), toIDs(message.roleMentions),
+				message.attachments == null ? new ArrayList<>() : new ArrayList<>(message.attachments), message.pinned,
+				message.embedded == null ? new ArrayList<>() : new ArrayList<>(message.embedded));
+	}
+
+	/**
+	 * Gets the estimated memory used by a record.
+	 *
+	 * @param record The record.
+	 * @return The estimated size (in bytes).
+	 */
+	int size(Object record) {
+		CompactMessage message = (CompactMessage) record;
+		return RECORD_OVERHEAD+message.contentLength
+				+(message.mentions == null ? 0 : 16+message.mentions.length*8)
+				+(message.roleMentions == null ? 0 : 16+message.roleMentions.length*8)
+				+(message.attachments == null ? 0 : MessageCacheManager.MESSAGE_OVERHEAD)
+				+(message.embedded == null ? 0 : MessageCacheManager.MESSAGE_OVERHEAD);
+	}
+
+	/**
+	 * Frees the content of a record, it can't be decoded afterwards.
+	 *
+	 * @param record The record.
+	 */
+	void release(Object record) {
+		CompactMessage message = (CompactMessage) record;
+		arena.free(message.content, message.contentLength);
+	}
+
+	/**
+	 * Encodes a timestamp. Timestamps are local times, so they are encoded without a time zone: going through the
+	 * system zone would shift times in the hour repeated when daylight saving time ends.
+	 */
+	private static long toEpochMicro(LocalDateTime time) {
+		return time.toEpochSecond(ZoneOffset.UTC)*1000000+time.getNano()/1000;
+	}
+
+	private static LocalDateTime fromEpochMicro(long time) {
+		return LocalDateTime.ofEpochSecond(Math.floorDiv(time, 1000000), (int) Math.floorMod(time, 1000000)*1000, ZoneOffset.UTC);
+	}
+
+	private static List<String> toIDs(long[] ids) {
+		if (ids == null)
+			return new ArrayList<>();
+
+		List<String> list = new ArrayList<>(ids.length);
+		for (long id : ids)
+			list.add(Long.toString(id));
+		return list;
+	}
+
+	/**
+	 * A compactly encoded message.
+	 */
+	private static class CompactMessage {
+		long id;
+		IUser author;
+		long timestamp;
+		long editedTimestamp;
+		long content;
+		int contentLength;
+		boolean mentionsEveryone;
+		boolean pinned;
+		long[] mentions;
+		long[] roleMentions;
+		List<IMessage.Attachment> attachments;
+		List<Embedded> embedded;
+	}
+}
@@ -0,0 +1,137 @@
+package sx.blah.discord.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * This stores the (UTF-8 encoded) content of compactly cached messages in large shared byte slabs, rather than as one
+ * {@link String} per message. Contents are appended to the current slab and referenced by a handle (slab index and
+ * offset), a slab is released once all contents stored in it have been freed.
+ * <p>
+ * NOTE: A single long-lived message keeps its whole slab alive, so the arena is best suited for caches which evict
+ * messages roughly in the order they were added (as {@link MessageList}s do).
+ */
+class MessageArena {
+
+	/**
+	 * The size of a slab, contents larger than this get a slab of their own.
+	 */
+	static final int SLAB_SIZE = 1 << 20;
+
+	/**
+	 * The handle of empty contents, which aren't stored.
+	 */
+	static final long EMPTY = -1;
+
+	private final List<byte[]> slabs = new ArrayList<>();
+
+	/**
+	 * The amount of bytes still referenced in each slab.
+	 */
+	private final List<Integer> liveBytes = new ArrayList<>();
+
+	/**
+	 * Released slab indexes which can be reused.
+	 */
+	private final Deque<Integer> freeSlabs = new ArrayDeque<>();
+
+	private int currentSlab = -1;
+	private int position = SLAB_SIZE;
+	private long allocatedBytes = 0;
+
+	/**
+	 * Stores a content.
+	 *
+	 * @param content The UTF-8 encoded content.
+	 * @return The handle of the content.
+	 */
+	synchronized long allocate(byte[] content) {
+		if (content.length == 0)
+			return EMPTY;
+
+		int slab;
+		int offset;
+		if (content.length > SLAB_SIZE) {
+			slab = newSlab(content.length);
+			offset = 0;
+		} else {
+			if (position+content.length > SLAB_SIZE) {
+				int previous = currentSlab;
+				currentSlab = newSlab(SLAB_SIZE);
+				position = 0;
+				if (previous != -1 && liveBytes.get(previous) == 0)
+					releaseSlab(previous);
+			}
+			slab = currentSlab;
+			offset = position;
+			position += content.length;
+		}
+
+		System.arraycopy(content, 0, slabs.get(slab), offset, content.length);
+		liveBytes.set(slab, liveBytes.get(slab)+content.length);
+		return ((long) slab << 32) | offset;
+	}
+
+	/**
+	 * Reads a content.
+	 *
+	 * @param handle The handle of the content.
+	 * @param length The length (in bytes) of the content.
+	 * @return The decoded content.
+	 */
+	synchronized String read(long handle, int length) {
+		if (handle == EMPTY)
+			return "";
+
+		return new String(slabs.get((int) (handle >>> 32)), (int) handle, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Frees a content.
+	 *
+	 * @param handle The handle of the content.
+	 * @param length The length (in bytes) of the content.
+	 */
+	synchronized void free(long handle, int length) {
+		if (handle == EMPTY)
+			return;
+
+		int slab = (int) (handle >>> 32);
+		int live = liveBytes.get(slab)-length;
+		liveBytes.set(slab, live);
+		if (live == 0 && slab != currentSlab)
+			releaseSlab(slab);
+	}
+
+	/**
+	 * Gets the amount of memory currently allocated for slabs.
+	 *
+	 * @return The allocated memory (in bytes).
+	 */
+	synchronized long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	private int newSlab(int size) {
+		allocatedBytes += size;
+		if (!freeSlabs.isEmpty()) {
+			int slab = freeSlabs.pop();
+			slabs.set(slab, new byte[size]);
+			liveBytes.set(slab, 0);
+			return slab;
+		}
+
+		slabs.add(new byte[size]);
+		liveBytes.add(0);
+		return slabs.size()-1;
+	}
+
+	private void releaseSlab(int slab) {
+		allocatedBytes -= slabs.get(slab).length;
+		slabs.set(slab, null);
+		freeSlabs.push(slab);
+	}
+}
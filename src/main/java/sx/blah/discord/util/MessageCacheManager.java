@@ -0,0 +1,238 @@
+package sx.blah.discord.util;
+
+import sx.blah.discord.Discord4J;
+import sx.blah.discord.handle.obj.IMessage;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This enforces a client-wide budget on the messages cached by all {@link MessageList}s. When the budget is exceeded,
+ * the oldest messages of the least recently used channels are evicted first, so busy channels stay cached.
+ * <p>
+ * The budget can be expressed as a message count, an estimated amount of memory, or both. Messages can optionally be
+ * cached compactly (see {@link CompactMessageStore}), which considerably lowers the memory used per message at the cost
+ * of creating a new message object whenever a cached message is accessed.
+ */
+public class MessageCacheManager {
+
+	/**
+	 * Represents an unlimited budget (-1).
+	 */
+	public static final long UNLIMITED = -1;
+
+	/**
+	 * The estimated memory used by a message object, excluding its content.
+	 */
+	public static final int MESSAGE_OVERHEAD = 256;
+
+	/**
+	 * The maximum amount of cached messages, or {@link #UNLIMITED}.
+	 */
+	private final long maxMessages;
+
+	/**
+	 * The maximum estimated memory (in bytes) used by cached messages, or {@link #UNLIMITED}.
+	 */
+	private final long maxBytes;
+
+	/**
+	 * The arena storing the contents of compactly cached messages, or null if messages aren't cached compactly.
+	 */
+	private final MessageArena arena;
+
+	/**
+	 * The message lists which currently cache messages (key = {@link MessageList#cacheKey}), from least to most
+	 * recently used.
+	 */
+	private final LinkedHashMap<Object, MessageList> lists = new LinkedHashMap<>(16, 0.75F, true);
+
+	private final AtomicLong messages = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxMessages The maximum amount of cached messages, or {@link #UNLIMITED}.
+	 * @param maxBytes The maximum estimated memory (in bytes) used by cached messages, or {@link #UNLIMITED}.
+	 * @param compact Whether messages are cached compactly.
+	 */
+	public MessageCacheManager(long maxMessages, long maxBytes, boolean compact) {
+		this.maxMessages = maxMessages;
+		this.maxBytes = maxBytes;
+		this.arena = compact ? new MessageArena() : null;
+	}
+
+	/**
+	 * Checks whether messages are cached compactly.
+	 *
+	 * @return True if messages are stored as compact records, false if otherwise.
+	 */
+	public boolean isCompact() {
+		return arena != null;
+	}
+
+	MessageArena getArena() {
+		return arena;
+	}
+
+	/**
+	 * Gets the memory allocated to store the contents of compactly cached messages.
+	 *
+	 * @return The allocated memory (in bytes), or 0 if messages aren't cached compactly.
+	 */
+	public long getArenaBytes() {
+		return arena == null ? 0 : arena.getAllocatedBytes();
+	}
+
+	/**
+	 * Estimates the memory used by a cached message.
+	 *
+	 * @param message The message.
+	 * @return The estimated size (in bytes).
+	 */
+	public static int estimateSize(IMessage message) {
+		String content = message.getContent();
+		return MESSAGE_OVERHEAD+(content == null ? 0 : content.length()*2);
+	}
+
+	/**
+	 * Marks a list as used.
+	 *
+	 * @param list The list.
+	 * @param size The current size of the list.
+	 */
+	void touch(MessageList list, int size) {
+		synchronized (lists) {
+			if (size > 0)
+				lists.put(list.cacheKey, list);
+			else
+				lists.remove(list.cacheKey);
+		}
+	}
+
+	/**
+	 * Records a change of a list's contents. This must be called while holding the list's lock, so the size matches.
+	 *
+	 * @param list The list.
+	 * @param messageDelta The change of the amount of messages.
+	 * @param byteDelta The change of the estimated memory.
+	 * @param size The new size of the list.
+	 */
+	void update(MessageList list, int messageDelta, long byteDelta, int size) {
+		messages.addAndGet(messageDelta);
+		bytes.addAndGet(byteDelta);
+		if (messageDelta > 0 || size == 0)
+			touch(list, size);
+	}
+
+	void hit() {
+		hits.incrementAndGet();
+	}
+
+	void miss() {
+		misses.incrementAndGet();
+	}
+
+	/**
+	 * Evicts messages until the budget is met. NOTE: This must not be called while holding the lock of a list.
+	 */
+	void enforceBudget() {
+		while (isOverBudget()) {
+			MessageList victim;
+			synchronized (lists) {
+				Iterator<MessageList> iterator = lists.values().iterator();
+				victim = iterator.hasNext() ? iterator.next() : null;
+			}
+			if (victim == null)
+				return;
+
+			long excessMessages = maxMessages == UNLIMITED ? 0 : messages.get()-maxMessages;
+			long excessBytes = maxBytes == UNLIMITED ? 0 : bytes.get()-maxBytes;
+			int evicted = victim.evict(excessMessages, excessBytes);
+			if (evicted == 0) //The list was emptied concurrently, its next update removes it
+				return;
+
+			evictions.addAndGet(evicted);
+			Discord4J.LOGGER.trace(LogMarkers.UTIL, "Evicted {} cached messages to meet the message cache budget.", evicted);
+		}
+	}
+
+	/**
+	 * Checks whether the cached messages are limited by a budget.
+	 *
+	 * @return True if the amount of messages or their memory is limited, false if otherwise.
+	 */
+	public boolean isLimited() {
+		return maxMessages != UNLIMITED || maxBytes != UNLIMITED;
+	}
+
+	private boolean isOverBudget() {
+		return (maxMessages != UNLIMITED && messages.get() > maxMessages) || (maxBytes != UNLIMITED && bytes.get() > maxBytes);
+	}
+
+	/**
+	 * Gets the maximum amount of cached messages.
+	 *
+	 * @return The maximum amount of messages, or {@link #UNLIMITED}.
+	 */
+	public long getMaxMessages() {
+		return maxMessages;
+	}
+
+	/**
+	 * Gets the maximum estimated memory used by cached messages.
+	 *
+	 * @return The maximum memory (in bytes), or {@link #UNLIMITED}.
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Gets the amount of messages currently cached by all lists.
+	 *
+	 * @return The amount of messages.
+	 */
+	public long getMessageCount() {
+		return messages.get();
+	}
+
+	/**
+	 * Gets the estimated memory used by all cached messages.
+	 *
+	 * @return The estimated memory (in bytes).
+	 */
+	public long getEstimatedBytes() {
+		return bytes.get();
+	}
+
+	/**
+	 * Gets the amount of lookups which were answered from the cache.
+	 *
+	 * @return The amount of hits.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the amount of lookups which had to request messages from discord.
+	 *
+	 * @return The amount of misses.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the amount of messages evicted to meet the budget.
+	 *
+	 * @return The amount of evictions.
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+}
@@ -0,0 +1,168 @@
+package sx.blah.discord.util;
+
+import org.apache.http.message.BasicNameValuePair;
+import sx.blah.discord.api.internal.DiscordClientImpl;
+import sx.blah.discord.api.internal.DiscordEndpoints;
+import sx.blah.discord.api.internal.DiscordUtils;
+import sx.blah.discord.api.internal.json.responses.MessageResponse;
+import sx.blah.discord.handle.obj.IChannel;
+import sx.blah.discord.handle.obj.IMessage;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This iterates over a channel's message history from newest to oldest, requesting it from discord in pages of
+ * {@link MessageList#MESSAGE_CHUNK_COUNT} messages. The next page is requested in the background while the current one
+ * is consumed, and pages which are rate limited are retried once their rate limit has expired. Requests are queued in
+ * their rate limit bucket, so no thread is held while a page waits.
+ * <p>
+ * Unlike {@link MessageList#get(int)}, the messages are NOT added to the channel's message cache, so this is suited for
+ * scanning large histories. Pages can either be consumed asynchronously with {@link #nextPage()}, or message by message
+ * through the {@link Iterator} methods or {@link #stream()} (which block while a page is being requested).
+ * <p>
+ * NOTE: This is not thread safe.
+ */
+public class MessageHistoryIterator implements Iterator<IMessage> {
+
+	private final DiscordClientImpl client;
+	private final IChannel channel;
+
+	/**
+	 * The id of the oldest message requested so far, or null if nothing has been requested yet.
+	 */
+	private volatile String before;
+
+	/**
+	 * Whether the last page has been requested.
+	 */
+	private volatile boolean exhausted = false;
+
+	/**
+	 * The request of the next page.
+	 */
+	private CompletableFuture<List<IMessage>> nextPage;
+
+	/**
+	 * The page currently being consumed by the {@link Iterator} methods.
+	 */
+	private Iterator<IMessage> currentPage = Collections.emptyIterator();
+
+	/**
+	 * @param client The client.
+	 * @param channel The channel whose history to iterate.
+	 * @param before The id of the message to start before (exclusive), or null to start at the newest message.
+	 */
+	MessageHistoryIterator(DiscordClientImpl client, IChannel channel, String before) {
+		this.client = client;
+		this.channel = channel;
+		this.before = before;
+		this.nextPage = requestPage();
+	}
+
+	/**
+	 * Gets the next page of messages (from newest to oldest) and starts requesting the page after it.
+	 *
+	 * @return The future of the page, which is empty once the start of the channel's history has been reached.
+	 */
+	public CompletableFuture<List<IMessage>> nextPage() {
+		CompletableFuture<List<IMessage>> page = nextPage;
+		nextPage = page.thenCompose(messages -> requestPage());
+		return page;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!currentPage.hasNext()) {
+			List<IMessage> page;
+			try {
+				page = nextPage().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new NoSuchElementException("Interrupted while requesting message history.");
+			} catch (ExecutionException e) {
+				throw (NoSuchElementException) new NoSuchElementException("Error requesting message history. (Cause: "
+						+e.getCause().getClass().getSimpleName()+")").initCause(e.getCause());
+			}
+
+			if (page.isEmpty())
+				return false;
+
+			currentPage = page.iterator();
+		}
+		return true;
+	}
+
+	@Override
+	public IMessage next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		return currentPage.next();
+	}
+
+	/**
+	 * Creates a sequential stream over the remaining messages.
+	 *
+	 * @return The stream.
+	 */
+	public Stream<IMessage> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+				Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT), false);
+	}
+
+	/**
+	 * Requests the page after the oldest message requested so far.
+	 *
+	 * @return The future of the page.
+	 */
+	private CompletableFuture<List<IMessage>> requestPage() {
+		if (exhausted)
+			return CompletableFuture.completedFuture(Collections.emptyList());
+
+		String url = DiscordEndpoints.CHANNELS+channel.getID()+"/messages?limit="+MessageList.MESSAGE_CHUNK_COUNT
+				+(before == null ? "" : "&before="+before);
+		CompletableFuture<MessageResponse[]> page = new CompletableFuture<>();
+		fetchPage(url, page);
+		return page.thenApply(responses -> {
+			if (responses.length < MessageList.MESSAGE_CHUNK_COUNT)
+				exhausted = true;
+			if (responses.length == 0)
+				return Collections.<IMessage>emptyList();
+
+			before = responses[responses.length-1].id;
+			List<IMessage> messages = new ArrayList<>(responses.length);
+			for (MessageResponse response : responses)
+				messages.add(DiscordUtils.getMessageFromJSON(client, channel, response));
+			return messages;
+		});
+	}
+
+	/**
+	 * Requests a page. The request waits in its rate limit bucket without holding a thread, and is retried after the
+	 * retry delay if it is rate limited anyways.
+	 *
+	 * @param url The url of the page.
+	 * @param page The future to complete with the page.
+	 */
+	private void fetchPage(String url, CompletableFuture<MessageResponse[]> page) {
+		client.REQUESTS.GET.makeRequestAsync(url, new BasicNameValuePair("authorization", client.getToken())).whenComplete((response, error) -> {
+			Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+			if (cause instanceof RateLimitException) {
+				client.historyLoader.schedule(() -> fetchPage(url, page), ((RateLimitException) cause).getRetryDelay());
+			} else if (cause != null) {
+				page.completeExceptionally(cause);
+			} else {
+				try {
+					page.complete(response == null ? new MessageResponse[0] : DiscordUtils.GSON.fromJson(response, MessageResponse[].class));
+				} catch (Exception e) {
+					page.completeExceptionally(e);
+				}
+			}
+		});
+	}
+}
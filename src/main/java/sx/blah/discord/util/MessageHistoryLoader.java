@@ -0,0 +1,150 @@
+package sx.blah.discord.util;
+
+import sx.blah.discord.Discord4J;
+import sx.blah.discord.api.internal.DiscordClientImpl;
+import sx.blah.discord.api.internal.EntityIndex;
+import sx.blah.discord.handle.obj.IChannel;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This loads the message history of {@link MessageList}s in the background and schedules the retries of rate limited
+ * history requests (including pages of {@link MessageHistoryIterator}s).
+ * <p>
+ * In lazy mode, lists don't load their history when they are created but only when they are first accessed or
+ * {@link MessageList#requestHistory()} is called. A prefetcher then periodically warms the history of the most active
+ * channels (by received messages) so it is likely to be cached when it is needed.
+ */
+public class MessageHistoryLoader {
+
+	/**
+	 * The interval (in ms) between prefetch rounds.
+	 */
+	public static final long PREFETCH_INTERVAL = 30000;
+
+	private final DiscordClientImpl client;
+
+	/**
+	 * Whether history is only loaded on demand.
+	 */
+	private final boolean lazy;
+
+	/**
+	 * The maximum amount of channels warmed per prefetch round.
+	 */
+	private final int prefetchCount;
+
+	/**
+	 * The amount of messages received per channel id since the last prefetch round.
+	 */
+	private final Map<Long, AtomicInteger> activity = new ConcurrentHashMap<>();
+
+	/**
+	 * The executor scheduling history loads, it never waits for a request itself.
+	 */
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = Executors.defaultThreadFactory().newThread(r);
+		thread.setName("Discord4J Message History Loader");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * @param client The client.
+	 * @param lazy Whether history is only loaded on demand.
+	 * @param prefetchCount The maximum amount of channels warmed per prefetch round, if this is less than 1 nothing is
+	 * prefetched.
+	 */
+	public MessageHistoryLoader(DiscordClientImpl client, boolean lazy, int prefetchCount) {
+		this.client = client;
+		this.lazy = lazy;
+		this.prefetchCount = prefetchCount;
+
+		if (lazy && prefetchCount > 0)
+			executor.scheduleWithFixedDelay(this::prefetch, PREFETCH_INTERVAL, PREFETCH_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Checks whether history is only loaded on demand.
+	 *
+	 * @return True if lists don't load their history when they are created, false if otherwise.
+	 */
+	public boolean isLazy() {
+		return lazy;
+	}
+
+	/**
+	 * Gets the maximum amount of channels warmed per prefetch round.
+	 *
+	 * @return The amount of channels.
+	 */
+	public int getPrefetchCount() {
+		return prefetchCount;
+	}
+
+	/**
+	 * Schedules a history request without waiting for its result. Requests which are rate limited should reschedule
+	 * themselves with the retry delay instead of sleeping, so other channels' requests aren't stalled.
+	 *
+	 * @param load The request.
+	 * @param delay The delay (in ms) before the request is made.
+	 */
+	void schedule(Runnable load, long delay) {
+		executor.schedule(() -> {
+			try {
+				load.run();
+			} catch (Exception e) {
+				Discord4J.LOGGER.error(LogMarkers.UTIL, "Discord4J Internal Exception", e);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Records a message received in a channel, this is used to determine which channels to prefetch.
+	 *
+	 * @param channel The channel.
+	 */
+	void recordActivity(IChannel channel) {
+		if (lazy && prefetchCount > 0)
+			activity.computeIfAbsent(EntityIndex.toSnowflake(channel.getID()), id -> new AtomicInteger()).incrementAndGet();
+	}
+
+	/**
+	 * Requests the history of the most active channels which haven't loaded it yet.
+	 */
+	private void prefetch() {
+		try {
+			List<Map.Entry<Long, Integer>> channels = new ArrayList<>();
+			activity.forEach((id, count) -> {
+				int value = count.getAndSet(0);
+				if (value > 0)
+					channels.add(new AbstractMap.SimpleEntry<>(id, value));
+				else
+					activity.remove(id);
+			});
+			channels.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+
+			int prefetched = 0;
+			for (Map.Entry<Long, Integer> channel : channels) {
+				if (prefetched >= prefetchCount)
+					break;
+
+				MessageList list = client.messageLists.get(Long.toString(channel.getKey()));
+				if (list != null && !list.hasLoadedHistory()) {
+					list.requestHistory();
+					prefetched++;
+				}
+			}
+
+			if (prefetched > 0)
+				Discord4J.LOGGER.debug(LogMarkers.UTIL, "Prefetching the message history of {} channels.", prefetched);
+		} catch (Exception e) {
+			Discord4J.LOGGER.error(LogMarkers.UTIL, "Discord4J Internal Exception", e);
+		}
+	}
+}
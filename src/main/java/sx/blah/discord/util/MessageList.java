@@ -8,6 +8,7 @@ import sx.blah.discord.api.IDiscordClient;
 import sx.blah.discord.api.internal.DiscordClientImpl;
 import sx.blah.discord.api.internal.DiscordEndpoints;
 import sx.blah.discord.api.internal.DiscordUtils;
+import sx.blah.discord.api.internal.EntityIndex;
 import sx.blah.discord.api.internal.Requests;
 import sx.blah.discord.handle.impl.events.*;
 import sx.blah.discord.handle.obj.*;
@@ -16,7 +17,9 @@ import sx.blah.discord.api.internal.json.responses.MessageResponse;
 
 import java.io.UnsupportedEncodingException;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class is a custom implementation of {@link List} for retrieving discord messages.
@@ -27,9 +30,9 @@ import java.util.concurrent.ConcurrentLinkedDeque;
 public class MessageList extends AbstractList<IMessage> implements List<IMessage> {
 
 	/**
-	 * This is used to cache message objects to prevent unnecessary queries.
+	 * This is used to cache message objects to prevent unnecessary queries, sorted from newest to oldest.
 	 */
-	private final ConcurrentLinkedDeque<IMessage> messageCache = new ConcurrentLinkedDeque<>();
+	private final MessageRingBuffer messageCache;
 
 	/**
 	 * This represents the amount of messages to fetch from discord every time the index goes out of bounds.
@@ -42,10 +45,21 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 	public static final int UNLIMITED_CAPACITY = -1;
 
 	/**
-	 * This is the max number of guild before the list stops automatically loading its history.
+	 * This is the max number of guild before the list stops automatically loading its history, unless the client's
+	 * message cache is limited (see {@link MessageCacheManager#isLimited()}).
 	 */
 	public static final int MAX_GUILD_COUNT = 10;
 
+	/**
+	 * The maximum amount of messages discord lets you delete in one bulk delete.
+	 */
+	public static final int MAX_BULK_DELETE = 100;
+
+	/**
+	 * The maximum age (in days) of messages discord lets you bulk delete, older messages have to be deleted one by one.
+	 */
+	public static final int MAX_BULK_DELETE_AGE = 14;
+
 	/**
 	 * The client that this list is respecting.
 	 */
@@ -56,11 +70,6 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 	 */
 	private final IChannel channel;
 
-	/**
-	 * The event listener for this list instance. This is used to update the list when messages are received/removed/etc.
-	 */
-	private final MessageListEventListener listener;
-
 	/**
 	 * This is true if the client object has permission to read this channel's messages.
 	 */
@@ -72,6 +81,28 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 	 */
 	private volatile int capacity = 256;
 
+	/**
+	 * The amount of messages loaded as this list's initial history.
+	 */
+	private volatile int initialContents = MESSAGE_CHUNK_COUNT;
+
+	/**
+	 * This is true once this list's initial history has been loaded.
+	 */
+	private volatile boolean historyLoaded = false;
+
+	/**
+	 * The pending load of the initial history, concurrent requests share it.
+	 */
+	private CompletableFuture<Boolean> historyRequest;
+	private final Object historyLock = new Object();
+
+	/**
+	 * Identifies this list in the {@link MessageCacheManager}. Lists can't be keys themselves, since their hash code
+	 * and equality depend on (and access) their contents.
+	 */
+	final Object cacheKey = new Object();
+
 	/**
 	 * This determines whether message history is automatically loaded.
 	 */
@@ -87,22 +118,136 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 
 		this.client = (DiscordClientImpl) client;
 		this.channel = channel;
+		this.messageCache = new MessageRingBuffer(this.client.messageCache.isCompact() ?
+				new CompactMessageStore(client, channel, this.client.messageCache.getArena()) : null);
 
 		updatePermissions();
 
-		listener = new MessageListEventListener(this);
-		client.getDispatcher().registerListener(listener);
+		this.client.messageLists.register(channel, this);
 	}
 
 	/**
 	 * @param client The client for this list to respect.
 	 * @param channel The channel to retrieve messages from.
-	 * @param initialContents The initial amount of messages to have cached when this list is constructed.
+	 * @param initialContents The initial amount of messages to have cached when this list is constructed. If the client
+	 * loads history lazily, these are only loaded once the list is first accessed.
 	 */
 	public MessageList(IDiscordClient client, IChannel channel, int initialContents) {
 		this(client, channel);
+		this.initialContents = initialContents;
+
+		if (!this.client.historyLoader.isLazy() && loadInitialMessages)
+			requestHistory();
+	}
+
+	/**
+	 * This requests this list's initial history to be loaded in the background, if it hasn't been loaded yet.
+	 * Concurrent requests are merged into a single load. NOTE: Nothing is loaded if the client's
+	 * {@link sx.blah.discord.api.CachePolicy} doesn't cache message history.
+	 *
+	 * @return The future of whether the history was loaded successfully.
+	 */
+	public CompletableFuture<Boolean> requestHistory() {
+		if (!client.cachePolicy.cachesMessageHistory())
+			return CompletableFuture.completedFuture(false);
+
+		synchronized (historyLock) {
+			if (historyLoaded)
+				return CompletableFuture.completedFuture(true);
+
+			if (historyRequest == null) {
+				historyRequest = new CompletableFuture<>();
+				client.historyLoader.schedule(this::loadHistory, 0);
+			}
+
+			return historyRequest;
+		}
+	}
+
+	/**
+	 * This creates an iterator over the channel's whole message history, from newest to oldest. The history is
+	 * requested page by page in the background and is NOT added to this list's cache.
+	 *
+	 * @return The history iterator.
+	 */
+	public MessageHistoryIterator getHistory() {
+		return getHistory(null);
+	}
+
+	/**
+	 * This creates an iterator over the channel's message history before a message, from newest to oldest. The history
+	 * is requested page by page in the background and is NOT added to this list's cache.
+	 *
+	 * @param beforeID The id of the message to start before (exclusive), or null to start at the newest message.
+	 * @return The history iterator.
+	 */
+	public MessageHistoryIterator getHistory(String beforeID) {
+		return new MessageHistoryIterator(client, channel, beforeID);
+	}
 
-		RequestBuffer.request(() -> load(initialContents));
+	/**
+	 * This checks whether this list's initial history has been loaded.
+	 *
+	 * @return True if the history has been loaded, false if otherwise.
+	 */
+	public boolean hasLoadedHistory() {
+		return historyLoaded;
+	}
+
+	/**
+	 * Loads the initial history. The request is queued by the rate limiter without holding the history loader's thread
+	 * or this list's lock, which is only taken to merge the received messages. A rate limited load is rescheduled on the
+	 * history loader rather than waited for.
+	 */
+	private void loadHistory() {
+		if (historyLoaded || !hasPermission) {
+			completeHistoryRequest(historyLoaded);
+			return;
+		}
+
+		String beforeID;
+		synchronized (this) {
+			beforeID = size() == 0 ? null : messageCache.last().getID();
+		}
+
+		client.REQUESTS.GET.makeRequestAsync(getMessagesURL(initialContents, beforeID),
+				new BasicNameValuePair("authorization", client.getToken())).whenComplete((response, error) -> {
+			Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+			if (cause instanceof RateLimitException) {
+				client.historyLoader.schedule(this::loadHistory, ((RateLimitException) cause).getRetryDelay());
+				return;
+			}
+
+			boolean success = false;
+			try {
+				if (cause != null) {
+					Discord4J.LOGGER.error(LogMarkers.UTIL, "Discord4J Internal Exception", cause);
+				} else {
+					MessageResponse[] messages = response == null ? null : DiscordUtils.GSON.fromJson(response, MessageResponse[].class);
+					synchronized (this) {
+						success = mergeMessages(messages, initialContents);
+						historyLoaded = true;
+						purge();
+					}
+				}
+			} catch (Exception e) {
+				Discord4J.LOGGER.error(LogMarkers.UTIL, "Discord4J Internal Exception", e);
+			}
+
+			client.messageCache.enforceBudget();
+			completeHistoryRequest(success);
+		});
+	}
+
+	private void completeHistoryRequest(boolean success) {
+		CompletableFuture<Boolean> request;
+		synchronized (historyLock) {
+			request = historyRequest;
+			historyRequest = null;
+		}
+
+		if (request != null)
+			request.complete(success);
 	}
 
 	/**
@@ -114,20 +259,34 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 	 * @return The message object for this index.
 	 */
 	@Override
-	public synchronized IMessage get(int index) {
-		while (size() <= index) {
-			try {
-				if (!load(MESSAGE_CHUNK_COUNT))
-					throw new ArrayIndexOutOfBoundsException();
-			} catch (Exception e) {
-				throw new ArrayIndexOutOfBoundsException("Error querying for additional messages. (Cause: "+e.getClass().getSimpleName()+")");
+	public IMessage get(int index) {
+		IMessage message;
+		synchronized (this) {
+			if (size() > index)
+				client.messageCache.hit();
+			else
+				client.messageCache.miss();
+
+			if (size() <= index && !client.cachePolicy.cachesMessageHistory())
+				throw new ArrayIndexOutOfBoundsException("Message history isn't cached by this client.");
+
+			while (size() <= index) {
+				try {
+					if (!loadMessages(MESSAGE_CHUNK_COUNT))
+						throw new ArrayIndexOutOfBoundsException();
+					historyLoaded = true;
+				} catch (Exception e) {
+					throw new ArrayIndexOutOfBoundsException("Error querying for additional messages. (Cause: "+e.getClass().getSimpleName()+")");
+				}
 			}
-		}
 
-		IMessage message = (IMessage) messageCache.toArray()[index];
+			message = messageCache.get(index);
+			client.messageCache.touch(this, size());
 
-		purge();
+			purge();
+		}
 
+		client.messageCache.enforceBudget();
 		return message;
 	}
 
@@ -137,43 +296,93 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 	 *
 	 * @return The amount of messages cleared.
 	 */
-	public int purge() {
+	public synchronized int purge() {
+		int purged = 0;
 		if (capacity >= 0) {
-			int start = size();
-
-			Object[] cache = messageCache.toArray();
-			for (int i = start-1; i >= capacity; i--) {
-				messageCache.remove((IMessage) cache[i]);
+			long initialBytes = messageCache.getEstimatedBytes();
+			while (messageCache.size() > capacity) {
+				messageCache.removeLast();
+				purged++;
 			}
+			if (purged > 0)
+				client.messageCache.update(this, -purged, messageCache.getEstimatedBytes()-initialBytes, size());
+		}
 
-			return start-size();
+		return purged;
+	}
+
+	/**
+	 * Evicts the oldest messages of this list to meet the {@link MessageCacheManager}'s budget.
+	 *
+	 * @param messages The amount of messages to evict.
+	 * @param bytes The estimated amount of memory to free.
+	 * @return The amount of messages evicted.
+	 */
+	synchronized int evict(long messages, long bytes) {
+		int evicted = 0;
+		long initialBytes = messageCache.getEstimatedBytes();
+		while (messageCache.size() > 0 && (evicted < messages || initialBytes-messageCache.getEstimatedBytes() < bytes)) {
+			messageCache.removeLast();
+			evicted++;
 		}
+		client.messageCache.update(this, -evicted, messageCache.getEstimatedBytes()-initialBytes, size());
+		return evicted;
+	}
 
-		return 0;
+	/**
+	 * Drops all cached messages, this is called once the channel of this list has been removed.
+	 */
+	synchronized void release() {
+		evict(Long.MAX_VALUE, 0);
 	}
 
 	private boolean queryMessages(int messageCount) throws DiscordException, RateLimitException {
-		if (!hasPermission)
-			return false;
-
-		int initialSize = size();
+		return mergeMessages(fetchMessages(messageCount, size() == 0 ? null : messageCache.last().getID()), messageCount);
+	}
 
-		String queryParams = "?limit="+messageCount;
-		if (initialSize != 0)
-			queryParams += "&before="+messageCache.getLast().getID();
+	/**
+	 * Requests a page of messages from discord, this doesn't modify the list.
+	 *
+	 * @param messageCount The amount of messages to request.
+	 * @param beforeID The id of the message to request messages before, or null to request the newest messages.
+	 * @return The messages, or null if none could be requested.
+	 *
+	 * @throws DiscordException
+	 * @throws RateLimitException
+	 */
+	private MessageResponse[] fetchMessages(int messageCount, String beforeID) throws DiscordException, RateLimitException {
+		if (!hasPermission)
+			return null;
 
-		String response = ((DiscordClientImpl) client).REQUESTS.GET.makeRequest(DiscordEndpoints.CHANNELS+channel.getID()+"/messages"+queryParams,
+		String response = client.REQUESTS.GET.makeRequest(getMessagesURL(messageCount, beforeID),
 				new BasicNameValuePair("authorization", client.getToken()));
 
 		if (response == null)
-			return false;
+			return null;
 
-		MessageResponse[] messages = DiscordUtils.GSON.fromJson(response, MessageResponse[].class);
+		return DiscordUtils.GSON.fromJson(response, MessageResponse[].class);
+	}
+
+	private String getMessagesURL(int messageCount, String beforeID) {
+		String queryParams = "?limit="+messageCount;
+		if (beforeID != null)
+			queryParams += "&before="+beforeID;
 
-		if (messages.length == 0) {
+		return DiscordEndpoints.CHANNELS+channel.getID()+"/messages"+queryParams;
+	}
+
+	/**
+	 * Adds a page of requested messages to the list.
+	 *
+	 * @param messages The messages, or null if none were received.
+	 * @param messageCount The amount of messages which were requested.
+	 * @return True if the whole page was added, false if otherwise.
+	 */
+	private synchronized boolean mergeMessages(MessageResponse[] messages, int messageCount) {
+		if (messages == null || messages.length == 0)
 			return false;
-		}
 
+		int initialSize = size();
 		for (MessageResponse messageResponse : messages) {
 			if (!add(DiscordUtils.getMessageFromJSON(client, channel, messageResponse), true))
 				return false;
@@ -190,7 +399,9 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 	 */
 	@Override
 	public boolean add(IMessage message) {
-		return add(message, false);
+		boolean cacheChanged = add(message, false);
+		client.messageCache.enforceBudget();
+		return cacheChanged;
 	}
 
 	/**
@@ -202,21 +413,10 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 	 * @return True if the object was successfully cached, false if otherwise.
 	 */
 	private synchronized boolean add(IMessage message, boolean skipPurge) {
-		if (messageCache.contains(message))
-			return false;
-
-		int initialSize = size();
-
-		if (initialSize == 0) {
-			messageCache.add(message);
-		} else {
-			if (MessageComparator.REVERSED.compare(message, messageCache.getFirst()) > -1)
-				messageCache.addLast(message);
-			else
-				messageCache.addFirst(message);
-		}
-
-		boolean cacheChanged = initialSize != size();
+		long initialBytes = messageCache.getEstimatedBytes();
+		boolean cacheChanged = messageCache.add(message);
+		if (cacheChanged)
+			client.messageCache.update(this, 1, messageCache.getEstimatedBytes()-initialBytes, size());
 
 		if (!skipPurge)
 			purge();
@@ -224,14 +424,30 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 		return cacheChanged;
 	}
 	
+	/**
+	 * This stores a modified version of a cached message. This is only needed if the client caches messages compactly,
+	 * in which case the messages returned by this list are copies of the cached ones.
+	 *
+	 * @param message The modified message.
+	 * @return True if the message was cached by this list, false if otherwise.
+	 */
+	public synchronized boolean update(IMessage message) {
+		long initialBytes = messageCache.getEstimatedBytes();
+		if (!messageCache.replace(message))
+			return false;
+
+		client.messageCache.update(this, 0, messageCache.getEstimatedBytes()-initialBytes, size());
+		return true;
+	}
+
 	/**
 	 * This checks if a message with the provided id is cached my this list.
 	 *
 	 * @param id The id.
 	 * @return True if found, false if otherwise.
 	 */
-	public boolean contains(String id) {
-		return messageCache.stream().filter(it -> it.getID().equals(id)).findFirst().isPresent();
+	public synchronized boolean contains(String id) {
+		return messageCache.contains(EntityIndex.toSnowflake(id));
 	}
 
 	/**
@@ -249,10 +465,18 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 	 * @return The amount of messages in the internal message cache.
 	 */
 	@Override
-	public int size() {
+	public synchronized int size() {
 		return messageCache.size();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized Object[] toArray() {
+		return messageCache.toArray();
+	}
+
 	@Override
 	public void sort(Comparator<? super IMessage> c) {
 		throw new UnsupportedOperationException();
@@ -263,7 +487,12 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 		if (!(o instanceof IMessage) || !((IMessage) o).getChannel().equals(channel))
 			return false;
 
-		return messageCache.remove(o);
+		long initialBytes = messageCache.getEstimatedBytes();
+		if (!messageCache.remove(EntityIndex.toSnowflake(((IMessage) o).getID())))
+			return false;
+
+		client.messageCache.update(this, -1, messageCache.getEstimatedBytes()-initialBytes, size());
+		return true;
 	}
 
 	/**
@@ -274,7 +503,7 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 		if (index >= size())
 			throw new ArrayIndexOutOfBoundsException();
 
-		IMessage message = get(index);
+		IMessage message = messageCache.get(index);
 
 		boolean result = remove(message);
 
@@ -334,8 +563,18 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 	 * @return The message object found, or null if nonexistent.
 	 */
 	public IMessage get(String id) {
-		IMessage message = stream().filter((m) -> m.getID().equalsIgnoreCase(id)).findFirst().orElse(null);
-		
+		IMessage message;
+		synchronized (this) {
+			message = messageCache.get(EntityIndex.toSnowflake(id));
+			if (message != null) {
+				client.messageCache.hit();
+				client.messageCache.touch(this, size());
+			} else {
+				client.messageCache.miss();
+			}
+		}
+
+
 		if (message == null && hasPermission && client.isReady())
 			try {
 				return DiscordUtils.getMessageFromJSON(client, channel,
@@ -360,6 +599,12 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 	 * @throws RateLimitException
 	 */
 	public boolean load(int messageCount) throws RateLimitException {
+		boolean success = loadMessages(messageCount);
+		client.messageCache.enforceBudget();
+		return success;
+	}
+
+	private boolean loadMessages(int messageCount) throws RateLimitException {
 		try {
 			boolean success = queryMessages(messageCount);
 
@@ -553,7 +798,10 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 	}
 
 	/**
-	 * This "bulk deletes" a list of messages. (Note: Only 100 messages can be deleted at a time).
+	 * This "bulk deletes" a list of messages. Discord only allows 100 messages to be deleted at a time, so larger lists
+	 * are deleted in chunks of {@link #MAX_BULK_DELETE} messages. Duplicate messages are only deleted once, and messages
+	 * older than {@link #MAX_BULK_DELETE_AGE} days (or all messages in private channels) are deleted one by one since
+	 * discord refuses to bulk delete them.
 	 *
 	 * @param messages The messages to delete.
 	 *
@@ -567,19 +815,48 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 		if (!client.isBot())
 			throw new DiscordException("You must be a bot to bulk delete!");
 
-		if (messages.size() > 100)
-			throw new DiscordException("You can only delete 100 messages at a time!");
+		Map<String, IMessage> unique = new LinkedHashMap<>();
+		for (IMessage message : messages)
+			unique.putIfAbsent(message.getID(), message);
 
-		try {
-			client.REQUESTS.POST.makeRequest(DiscordEndpoints.CHANNELS + channel.getID() + "/messages/bulk_delete",
-					new StringEntity(DiscordUtils.GSON.toJson(new BulkDeleteRequest(messages))),
-					new BasicNameValuePair("content-type", "application/json"),
-					new BasicNameValuePair("authorization", client.getToken()));
-		} catch (UnsupportedEncodingException e) {
-			Discord4J.LOGGER.error(LogMarkers.UTIL, "Discord4J Internal Exception", e);
+		List<IMessage> bulk = new ArrayList<>(unique.size());
+		for (IMessage message : unique.values()) {
+			if (channel.isPrivate() || !isBulkDeletable(message))
+				message.delete();
+			else
+				bulk.add(message);
+		}
+
+		for (int i = 0; i < bulk.size(); i += MAX_BULK_DELETE) {
+			List<IMessage> chunk = bulk.subList(i, Math.min(i+MAX_BULK_DELETE, bulk.size()));
+			if (chunk.size() == 1) { //Discord requires at least 2 messages per bulk delete
+				chunk.get(0).delete();
+				continue;
+			}
+
+			try {
+				client.REQUESTS.POST.makeRequest(DiscordEndpoints.CHANNELS + channel.getID() + "/messages/bulk_delete",
+						new StringEntity(DiscordUtils.GSON.toJson(new BulkDeleteRequest(chunk))),
+						new BasicNameValuePair("content-type", "application/json"),
+						new BasicNameValuePair("authorization", client.getToken()));
+			} catch (UnsupportedEncodingException e) {
+				Discord4J.LOGGER.error(LogMarkers.UTIL, "Discord4J Internal Exception", e);
+			}
 		}
 	}
 
+	/**
+	 * Checks whether a message is recent enough to be bulk deleted, based on the time encoded in its id.
+	 *
+	 * @param message The message.
+	 * @return True if the message is younger than {@link #MAX_BULK_DELETE_AGE} days, false if otherwise.
+	 */
+	static boolean isBulkDeletable(IMessage message) {
+		long created = DiscordUtils.DISCORD_EPOCH.longValue()+(EntityIndex.toSnowflake(message.getID()) >>> 22);
+		//A minute of leeway so messages don't expire while the request is queued
+		return System.currentTimeMillis()-created < TimeUnit.DAYS.toMillis(MAX_BULK_DELETE_AGE)-TimeUnit.MINUTES.toMillis(1);
+	}
+
 	/**
 	 * This sets whether MessageLists should automatically fetch message history on initialization. This is
 	 * automatically disabled if the number of guilds logged into exceeds {@link MessageList#MAX_GUILD_COUNT}.
@@ -600,7 +877,7 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 		return loadInitialMessages;
 	}
 
-	private void updatePermissions() {
+	void updatePermissions() {
 		try {
 			DiscordUtils.checkPermissions(client, channel, EnumSet.of(Permissions.READ_MESSAGES, Permissions.READ_MESSAGE_HISTORY));
 			hasPermission = true;
@@ -612,8 +889,12 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 	}
 
 	/**
-	 * This is used to automatically update the message list.
+	 * This used to automatically update the message list.
+	 *
+	 * @deprecated Message lists are kept up to date by the client's {@link MessageListRouter}, so registering this is
+	 * no longer needed. It only updates its list if the router doesn't (i.e. the list was replaced for its channel).
 	 */
+	@Deprecated
 	public static class MessageListEventListener {
 
 		private volatile MessageList list;
@@ -622,29 +903,31 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 			this.list = list;
 		}
 
+		private boolean isRouted() {
+			return list.client.messageLists.get(list.channel.getID()) == list;
+		}
+
 		@EventSubscriber
 		public void onMessageReceived(MessageReceivedEvent event) {
-			if (event.getMessage().getChannel().equals(list.channel)) {
+			if (!isRouted() && event.getMessage().getChannel().equals(list.channel)) {
 				list.add(event.getMessage());
 			}
 		}
 
 		@EventSubscriber
 		public void onMessageSent(MessageSendEvent event) {
-			if (event.getMessage().getChannel().equals(list.channel)) {
+			if (!isRouted() && event.getMessage().getChannel().equals(list.channel)) {
 				list.add(event.getMessage());
 			}
 		}
 
 		@EventSubscriber
 		public void onMessageDelete(MessageDeleteEvent event) {
-			if (event.getMessage().getChannel().equals(list.channel)) {
+			if (!isRouted() && event.getMessage().getChannel().equals(list.channel)) {
 				list.remove(event.getMessage());
 			}
 		}
 
-		//The following are to unregister this listener to optimize the event dispatcher.
-
 		@EventSubscriber
 		public void onChannelDelete(ChannelDeleteEvent event) {
 			if (event.getChannel().equals(list.channel)) {
@@ -659,37 +942,35 @@ public class MessageList extends AbstractList<IMessage> implements List<IMessage
 			}
 		}
 
-		//The following are to update the hasPermission boolean
-
 		@EventSubscriber
 		public void onRoleUpdate(RoleUpdateEvent event) {
-			if (!(list.channel instanceof IPrivateChannel) && event.getGuild().equals(list.channel.getGuild()) &&
+			if (!isRouted() && !(list.channel instanceof IPrivateChannel) && event.getGuild().equals(list.channel.getGuild()) &&
 					list.client.getOurUser().getRolesForGuild(list.channel.getGuild()).contains(event.getNewRole()))
 				list.updatePermissions();
 		}
 
 		@EventSubscriber
 		public void onGuildUpdate(GuildUpdateEvent event) {
-			if (!(list.channel instanceof IPrivateChannel) && event.getNewGuild().equals(list.channel.getGuild()))
+			if (!isRouted() && !(list.channel instanceof IPrivateChannel) && event.getNewGuild().equals(list.channel.getGuild()))
 				list.updatePermissions();
 		}
 
 		@EventSubscriber
 		public void onUserRoleUpdate(UserRoleUpdateEvent event) {
-			if (!(list.channel instanceof IPrivateChannel) && event.getUser().equals(list.client.getOurUser()) && event.getGuild().equals(list.channel.getGuild()))
+			if (!isRouted() && !(list.channel instanceof IPrivateChannel) && event.getUser().equals(list.client.getOurUser()) && event.getGuild().equals(list.channel.getGuild()))
 				list.updatePermissions();
 		}
 
 		@EventSubscriber
 		public void onGuildTransferOwnership(GuildTransferOwnershipEvent event) {
-			if (!(list.channel instanceof IPrivateChannel) && event.getGuild().equals(list.channel.getGuild())) {
+			if (!isRouted() && !(list.channel instanceof IPrivateChannel) && event.getGuild().equals(list.channel.getGuild())) {
 				list.updatePermissions();
 			}
 		}
 
 		@EventSubscriber
 		public void onChannelUpdateEvent(ChannelUpdateEvent event) {
-			if (event.getNewChannel().equals(list.channel))
+			if (!isRouted() && event.getNewChannel().equals(list.channel))
 				list.updatePermissions();
 		}
 	}
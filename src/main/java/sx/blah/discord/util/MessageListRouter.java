@@ -0,0 +1,145 @@
+package sx.blah.discord.util;
+
+import sx.blah.discord.api.IDiscordClient;
+import sx.blah.discord.api.events.EventSubscriber;
+import sx.blah.discord.api.internal.DiscordClientImpl;
+import sx.blah.discord.api.internal.EntityIndex;
+import sx.blah.discord.handle.impl.events.*;
+import sx.blah.discord.handle.obj.IChannel;
+import sx.blah.discord.handle.obj.IGuild;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This is the single event listener which keeps every {@link MessageList} of a client up to date. Events are routed to
+ * the list of the affected channel by its id, so the cost of an event doesn't depend on the amount of channels.
+ */
+public class MessageListRouter {
+
+	/**
+	 * The client this router belongs to.
+	 */
+	private final IDiscordClient client;
+
+	/**
+	 * The message lists by channel id.
+	 */
+	private final Map<Long, MessageList> lists = new ConcurrentHashMap<>();
+
+	public MessageListRouter(IDiscordClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * Registers the message list of a channel, replacing the channel's previous list.
+	 *
+	 * @param channel The channel.
+	 * @param list The message list.
+	 */
+	void register(IChannel channel, MessageList list) {
+		MessageList oldList = lists.put(EntityIndex.toSnowflake(channel.getID()), list);
+		if (oldList != null && oldList != list)
+			oldList.release();
+	}
+
+	/**
+	 * Gets the message list registered for a channel.
+	 *
+	 * @param channelID The channel id.
+	 * @return The message list, or null if there is none.
+	 */
+	public MessageList get(String channelID) {
+		return lists.get(EntityIndex.toSnowflake(channelID));
+	}
+
+	/**
+	 * Gets the amount of registered message lists.
+	 *
+	 * @return The amount of lists.
+	 */
+	public int size() {
+		return lists.size();
+	}
+
+	private void updatePermissions(IGuild guild) {
+		for (IChannel channel : guild.getChannels()) {
+			MessageList list = get(channel.getID());
+			if (list != null)
+				list.updatePermissions();
+		}
+	}
+
+	@EventSubscriber
+	public void onMessageReceived(MessageReceivedEvent event) {
+		MessageList list = get(event.getMessage().getChannel().getID());
+		if (list != null) {
+			list.add(event.getMessage());
+			((DiscordClientImpl) client).historyLoader.recordActivity(event.getMessage().getChannel());
+		}
+	}
+
+	@EventSubscriber
+	public void onMessageSent(MessageSendEvent event) {
+		MessageList list = get(event.getMessage().getChannel().getID());
+		if (list != null)
+			list.add(event.getMessage());
+	}
+
+	@EventSubscriber
+	public void onMessageDelete(MessageDeleteEvent event) {
+		MessageList list = get(event.getMessage().getChannel().getID());
+		if (list != null)
+			list.remove(event.getMessage());
+	}
+
+	//The following are to drop the lists of removed channels.
+
+	@EventSubscriber
+	public void onChannelDelete(ChannelDeleteEvent event) {
+		release(event.getChannel());
+	}
+
+	@EventSubscriber
+	public void onGuildRemove(GuildLeaveEvent event) {
+		for (IChannel channel : event.getGuild().getChannels())
+			release(channel);
+	}
+
+	private void release(IChannel channel) {
+		MessageList list = lists.remove(EntityIndex.toSnowflake(channel.getID()));
+		if (list != null)
+			list.release();
+	}
+
+	//The following are to update the hasPermission boolean
+
+	@EventSubscriber
+	public void onRoleUpdate(RoleUpdateEvent event) {
+		if (client.getOurUser().getRolesForGuild(event.getGuild()).contains(event.getNewRole()))
+			updatePermissions(event.getGuild());
+	}
+
+	@EventSubscriber
+	public void onGuildUpdate(GuildUpdateEvent event) {
+		updatePermissions(event.getNewGuild());
+	}
+
+	@EventSubscriber
+	public void onUserRoleUpdate(UserRoleUpdateEvent event) {
+		if (event.getUser().equals(client.getOurUser()))
+			updatePermissions(event.getGuild());
+	}
+
+	@EventSubscriber
+	public void onGuildTransferOwnership(GuildTransferOwnershipEvent event) {
+		updatePermissions(event.getGuild());
+	}
+
+	@EventSubscriber
+	public void onChannelUpdateEvent(ChannelUpdateEvent event) {
+		MessageList list = get(event.getNewChannel().getID());
+		if (list != null)
+			list.updatePermissions();
+	}
+}
@@ -0,0 +1,301 @@
+package sx.blah.discord.util;
+
+import sx.blah.discord.api.internal.EntityIndex;
+import sx.blah.discord.handle.obj.IMessage;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This is the storage backing a {@link MessageList}. Messages are kept in a circular array sorted by their snowflake id
+ * from newest (index 0) to oldest, along with a hash index from id to message.
+ * <p>
+ * This gives constant time indexed access, latest/earliest lookups, lookups by id and insertion/eviction at either end.
+ * Messages which arrive out of order are inserted at their sorted position by shifting the shorter side of the array.
+ * <p>
+ * If a {@link CompactMessageStore} is used, messages are stored as compact records and decoded when accessed.
+ * <p>
+ * NOTE: This is not thread safe, the owning list synchronizes access to it.
+ */
+class MessageRingBuffer {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * The store encoding the messages, or null if the message objects are stored as is.
+	 */
+	private final CompactMessageStore store;
+
+	/**
+	 * The messages (or records), the array length is always a power of two so indexes can be wrapped with a mask.
+	 */
+	private Object[] messages = new Object[INITIAL_CAPACITY];
+
+	/**
+	 * The snowflake ids of the messages, parallel to {@link #messages}.
+	 */
+	private long[] ids = new long[INITIAL_CAPACITY];
+
+	/**
+	 * The estimated sizes of the messages (as of when they were added), parallel to {@link #messages}.
+	 */
+	private int[] sizes = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The total estimated size of the messages.
+	 *
+	 * @see MessageCacheManager#estimateSize(IMessage)
+	 */
+	private long estimatedBytes = 0;
+
+	/**
+	 * The array index of the newest message.
+	 */
+	private int head = 0;
+	private int size = 0;
+
+	/**
+	 * The messages by snowflake id.
+	 */
+	private final Map<Long, Object> index = new HashMap<>();
+
+	/**
+	 * @param store The store encoding the messages, or null to store the message objects as is.
+	 */
+	MessageRingBuffer(CompactMessageStore store) {
+		this.store = store;
+	}
+
+	int size() {
+		return size;
+	}
+
+	long getEstimatedBytes() {
+		return estimatedBytes;
+	}
+
+	/**
+	 * Gets a message by its position.
+	 *
+	 * @param i The position, where 0 is the newest message.
+	 * @return The message.
+	 */
+	IMessage get(int i) {
+		if (i < 0 || i >= size)
+			throw new ArrayIndexOutOfBoundsException(i);
+		return view(messages[slot(i)]);
+	}
+
+	/**
+	 * Gets a message by its id.
+	 *
+	 * @param id The message id.
+	 * @return The message, or null if it isn't stored.
+	 */
+	IMessage get(long id) {
+		Object message = index.get(id);
+		return message == null ? null : view(message);
+	}
+
+	boolean contains(long id) {
+		return index.containsKey(id);
+	}
+
+	/**
+	 * Gets the newest message.
+	 *
+	 * @return The message, or null if empty.
+	 */
+	IMessage first() {
+		return size == 0 ? null : view(messages[head]);
+	}
+
+	/**
+	 * Gets the oldest message.
+	 *
+	 * @return The message, or null if empty.
+	 */
+	IMessage last() {
+		return size == 0 ? null : view(messages[slot(size-1)]);
+	}
+
+	/**
+	 * Inserts a message at its sorted position.
+	 *
+	 * @param message The message.
+	 * @return True if the message was added, false if a message with the same id is already stored.
+	 */
+	boolean add(IMessage message) {
+		long id = EntityIndex.toSnowflake(message.getID());
+		if (index.containsKey(id))
+			return false;
+
+		Object entry = store == null ? message : store.encode(message);
+		index.put(id, entry);
+		int estimatedSize = store == null ? MessageCacheManager.estimateSize(message) : store.size(entry);
+		estimatedBytes += estimatedSize;
+
+		if (size == messages.length)
+			grow();
+
+		if (size == 0 || id > ids[head]) { //Newer than everything, the common case for received messages
+			head = (head-1) & (messages.length-1);
+			set(0, entry, id, estimatedSize);
+		} else if (id < ids[slot(size-1)]) { //Older than everything, the common case for loaded history
+			set(size, entry, id, estimatedSize);
+		} else {
+			int pos = search(id);
+			if (pos < size/2) {
+				head = (head-1) & (messages.length-1);
+				for (int i = 0; i < pos; i++)
+					move(i+1, i);
+			} else {
+				for (int i = size; i > pos; i--)
+					move(i-1, i);
+			}
+			set(pos, entry, id, estimatedSize);
+		}
+		size++;
+		return true;
+	}
+
+	/**
+	 * Replaces a stored message with a modified version of it, this is needed when messages are stored as records.
+	 *
+	 * @param message The modified message.
+	 * @return True if the message was replaced, false if it isn't stored.
+	 */
+	boolean replace(IMessage message) {
+		long id = EntityIndex.toSnowflake(message.getID());
+		if (!index.containsKey(id))
+			return false;
+
+		int slot = slot(search(id));
+		if (store != null)
+			store.release(messages[slot]);
+
+		Object entry = store == null ? message : store.encode(message);
+		int estimatedSize = store == null ? MessageCacheManager.estimateSize(message) : store.size(entry);
+		estimatedBytes += estimatedSize-sizes[slot];
+		index.put(id, entry);
+		messages[slot] = entry;
+		sizes[slot] = estimatedSize;
+		return true;
+	}
+
+	/**
+	 * Removes a message by its id.
+	 *
+	 * @param id The message id.
+	 * @return True if the message was removed, false if it isn't stored.
+	 */
+	boolean remove(long id) {
+		Object message = index.remove(id);
+		if (message == null)
+			return false;
+		if (store != null)
+			store.release(message);
+
+		int pos = search(id);
+		estimatedBytes -= sizes[slot(pos)];
+		if (pos < size/2) {
+			for (int i = pos; i > 0; i--)
+				move(i-1, i);
+			messages[head] = null;
+			head = (head+1) & (messages.length-1);
+		} else {
+			for (int i = pos; i < size-1; i++)
+				move(i+1, i);
+			messages[slot(size-1)] = null;
+		}
+		size--;
+		return true;
+	}
+
+	/**
+	 * Removes the oldest message.
+	 *
+	 * @return True if a message was removed, false if empty.
+	 */
+	boolean removeLast() {
+		if (size == 0)
+			return false;
+
+		int slot = slot(size-1);
+		if (store != null)
+			store.release(messages[slot]);
+		messages[slot] = null;
+		index.remove(ids[slot]);
+		estimatedBytes -= sizes[slot];
+		size--;
+		return true;
+	}
+
+	Object[] toArray() {
+		Object[] array = new Object[size];
+		for (int i = 0; i < size; i++)
+			array[i] = view(messages[slot(i)]);
+		return array;
+	}
+
+	/**
+	 * Finds the position of an id by binary search (the ids are sorted in descending order).
+	 *
+	 * @param id The id.
+	 * @return The position of the id, or the position it should be inserted at if it isn't stored.
+	 */
+	private int search(long id) {
+		int low = 0, high = size-1;
+		while (low <= high) {
+			int mid = (low+high) >>> 1;
+			long midId = ids[slot(mid)];
+			if (midId > id)
+				low = mid+1;
+			else if (midId < id)
+				high = mid-1;
+			else
+				return mid;
+		}
+		return low;
+	}
+
+	private IMessage view(Object message) {
+		return store == null ? (IMessage) message : store.decode(message);
+	}
+
+	private int slot(int i) {
+		return (head+i) & (messages.length-1);
+	}
+
+	private void set(int i, Object message, long id, int estimatedSize) {
+		int slot = slot(i);
+		messages[slot] = message;
+		ids[slot] = id;
+		sizes[slot] = estimatedSize;
+	}
+
+	private void move(int from, int to) {
+		int fromSlot = slot(from), toSlot = slot(to);
+		messages[toSlot] = messages[fromSlot];
+		ids[toSlot] = ids[fromSlot];
+		sizes[toSlot] = sizes[fromSlot];
+	}
+
+	/**
+	 * Doubles the array length, unwrapping the messages so the newest is at index 0.
+	 */
+	private void grow() {
+		Object[] newMessages = new Object[messages.length*2];
+		long[] newIds = new long[ids.length*2];
+		int[] newSizes = new int[sizes.length*2];
+		for (int i = 0; i < size; i++) {
+			newMessages[i] = messages[slot(i)];
+			newIds[i] = ids[slot(i)];
+			newSizes[i] = sizes[slot(i)];
+		}
+		messages = newMessages;
+		ids = newIds;
+		sizes = newSizes;
+		head = 0;
+	}
+}
@@ -0,0 +1,459 @@
+package sx.blah.discord.util;
+
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicNameValuePair;
+import sx.blah.discord.Discord4J;
+import sx.blah.discord.api.IDiscordClient;
+import sx.blah.discord.api.internal.DiscordClientImpl;
+import sx.blah.discord.api.internal.DiscordEndpoints;
+import sx.blah.discord.api.internal.DiscordUtils;
+import sx.blah.discord.api.internal.json.requests.BulkDeleteRequest;
+import sx.blah.discord.handle.impl.obj.Role;
+import sx.blah.discord.handle.obj.*;
+
+import java.awt.Color;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * This batches and coalesces REST requests which are commonly sent in large amounts, like when cleaning up after a
+ * raid.
+ * <p>
+ * Deletes of messages in the same channel are collected for a short window and merged into bulk deletes of up to
+ * {@link MessageList#MAX_BULK_DELETE} messages. Messages which can't be bulk deleted (in private channels, or older than
+ * {@link MessageList#MAX_BULK_DELETE_AGE} days) are deleted one by one instead. Repeated edits of the same message,
+ * nickname or member roles within the window collapse into a single request with the last value, and changes of
+ * different attributes of a role are merged into a single edit of the role. The result of a collapsed request completes
+ * the futures of all edits it replaced. The requests are then scheduled by the client's rate limiter like any other
+ * request.
+ * <p>
+ * NOTE: A batcher which is no longer needed should be {@link #shutdown()}, its threads are only released when idle.
+ */
+public class RequestBatcher {
+
+	/**
+	 * The default time (in ms) requests are collected before they are sent.
+	 */
+	public static final long DEFAULT_WINDOW = 250;
+
+	/**
+	 * The maximum amount of coalesced edits executed at a time.
+	 */
+	public static final int MAX_CONCURRENT_EDITS = 4;
+
+	private final DiscordClientImpl client;
+
+	/**
+	 * The time (in ms) requests are collected before they are sent.
+	 */
+	private final long window;
+
+	/**
+	 * The pending message deletes per channel id.
+	 */
+	private final Map<String, DeleteBatch> deletes = new HashMap<>();
+
+	/**
+	 * The pending edits per key, only the last edit of each key is executed.
+	 */
+	private final Map<String, PendingEdit<?>> edits = new HashMap<>();
+
+	/**
+	 * The attributes changed by the pending edit of each role id, guarded by {@link #edits}.
+	 */
+	private final Map<String, RoleEdit> roleEdits = new HashMap<>();
+
+	/**
+	 * Sends the collected requests once their window has passed.
+	 */
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	/**
+	 * Executes edits which have no asynchronous request.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Whether {@link #shutdown()} has been called. It is checked while holding the lock of {@link #deletes} or
+	 * {@link #edits}, so no request is queued after the pending ones have been collected.
+	 */
+	private volatile boolean isShutdown = false;
+
+	/**
+	 * @param client The client.
+	 */
+	public RequestBatcher(IDiscordClient client) {
+		this(client, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param client The client.
+	 * @param window The time (in ms) requests are collected before they are sent.
+	 */
+	public RequestBatcher(IDiscordClient client, long window) {
+		this.client = (DiscordClientImpl) client;
+		this.window = window;
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_CONCURRENT_EDITS, MAX_CONCURRENT_EDITS, 60,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			Thread thread = Executors.defaultThreadFactory().newThread(r);
+			thread.setName("Discord4J Request Batcher Executor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		this.executor = executor;
+
+		this.scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = Executors.defaultThreadFactory().newThread(r);
+			thread.setName("Discord4J Request Batcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.setKeepAliveTime(60, TimeUnit.SECONDS);
+		scheduler.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Sends all collected requests immediately and stops this batcher's threads. Requests queued afterwards fail with
+	 * an {@link IllegalStateException}.
+	 */
+	public void shutdown() {
+		List<DeleteBatch> pendingDeletes;
+		synchronized (deletes) {
+			isShutdown = true;
+			pendingDeletes = new ArrayList<>(deletes.values());
+			deletes.clear();
+		}
+		List<PendingEdit<?>> pendingEdits;
+		synchronized (edits) {
+			pendingEdits = new ArrayList<>(edits.values());
+			edits.clear();
+		}
+		scheduler.shutdownNow();
+
+		pendingDeletes.forEach(this::send);
+		pendingEdits.forEach(PendingEdit::send);
+		executor.shutdown(); //The edits which were just sent are still executed
+	}
+
+	/**
+	 * Queues a message to be deleted along with the other messages deleted in its channel. A message which is already
+	 * queued isn't queued again.
+	 *
+	 * @param message The message.
+	 * @return The future which completes once the message is deleted.
+	 */
+	public CompletableFuture<Void> delete(IMessage message) {
+		CompletableFuture<Void> future;
+		DeleteBatch full = null;
+		synchronized (deletes) {
+			if (isShutdown)
+				return DiscordUtils.failedFuture(new IllegalStateException("The request batcher has been shut down!"));
+
+			String channelID = message.getChannel().getID();
+			DeleteBatch batch = deletes.get(channelID);
+			if (batch == null) {
+				batch = new DeleteBatch(message.getChannel());
+				deletes.put(channelID, batch);
+				DeleteBatch scheduled = batch;
+				scheduler.schedule(() -> flush(scheduled), window, TimeUnit.MILLISECONDS);
+			}
+
+			future = batch.futures.get(message.getID());
+			if (future != null)
+				return future;
+
+			future = new CompletableFuture<>();
+			batch.messages.add(message);
+			batch.futures.put(message.getID(), future);
+			if (batch.messages.size() >= MessageList.MAX_BULK_DELETE) {
+				deletes.remove(channelID);
+				full = batch;
+			}
+		}
+
+		if (full != null)
+			send(full);
+		return future;
+	}
+
+	/**
+	 * Queues the deletion of a list of messages, see {@link #delete(IMessage)}.
+	 *
+	 * @param messages The messages.
+	 * @return The future which completes once all of the messages are deleted.
+	 */
+	public CompletableFuture<Void> delete(Collection<IMessage> messages) {
+		return CompletableFuture.allOf(messages.stream().map(this::delete).toArray(CompletableFuture[]::new));
+	}
+
+	/**
+	 * Queues an edit of a message, replacing any pending edit of it.
+	 *
+	 * @param message The message.
+	 * @param content The new content of the message.
+	 * @return The future of the edited message.
+	 */
+	public CompletableFuture<IMessage> edit(IMessage message, String content) {
+		return coalesce("message:"+message.getID(), () -> message.editAsync(content));
+	}
+
+	/**
+	 * Queues a change of a user's nickname, replacing any pending change of it.
+	 *
+	 * @param guild The guild.
+	 * @param user The user.
+	 * @param nick The new nickname, or null to remove it.
+	 * @return The future which completes once the nickname is changed.
+	 */
+	public CompletableFuture<Void> setNickname(IGuild guild, IUser user, String nick) {
+		return coalesce("nickname:"+guild.getID()+":"+user.getID(), () -> execute(() -> guild.setUserNickname(user, nick)));
+	}
+
+	/**
+	 * Queues a change of a user's roles, replacing any pending change of them.
+	 *
+	 * @param guild The guild.
+	 * @param user The user.
+	 * @param roles All of the user's new roles.
+	 * @return The future which completes once the roles are changed.
+	 */
+	public CompletableFuture<Void> editUserRoles(IGuild guild, IUser user, IRole[] roles) {
+		return coalesce("roles:"+guild.getID()+":"+user.getID(), () -> execute(() -> guild.editUserRoles(user, roles)));
+	}
+
+	/**
+	 * Queues a change of a role's name, replacing any pending change of it.
+	 *
+	 * @param role The role.
+	 * @param name The new name.
+	 * @return The future which completes once the role is edited.
+	 */
+	public CompletableFuture<Void> changeRoleName(IRole role, String name) {
+		return editRole(role, edit -> edit.name = Optional.of(name));
+	}
+
+	/**
+	 * Queues a change of a role's color, replacing any pending change of it.
+	 *
+	 * @param role The role.
+	 * @param color The new color.
+	 * @return The future which completes once the role is edited.
+	 */
+	public CompletableFuture<Void> changeRoleColor(IRole role, Color color) {
+		return editRole(role, edit -> edit.color = Optional.of(color));
+	}
+
+	/**
+	 * Queues a change of a role's permissions, replacing any pending change of them.
+	 *
+	 * @param role The role.
+	 * @param permissions The new permissions.
+	 * @return The future which completes once the role is edited.
+	 */
+	public CompletableFuture<Void> changeRolePermissions(IRole role, EnumSet<Permissions> permissions) {
+		return editRole(role, edit -> edit.permissions = Optional.of(permissions));
+	}
+
+	/**
+	 * Merges a change into the pending edit of a role, so all attributes changed within the window are sent in one
+	 * request. Separate requests would each send the other attributes from the cache and overwrite one another.
+	 *
+	 * @param role The role.
+	 * @param change The change of the role's attributes.
+	 * @return The future which completes once the role is edited.
+	 */
+	private CompletableFuture<Void> editRole(IRole role, Consumer<RoleEdit> change) {
+		String key = "role:"+role.getID();
+		synchronized (edits) {
+			RoleEdit edit = roleEdits.get(role.getID());
+			if (edit == null || !edits.containsKey(key)) { //The previous edit has already been sent
+				edit = new RoleEdit();
+				roleEdits.put(role.getID(), edit);
+			}
+			change.accept(edit);
+
+			RoleEdit merged = edit;
+			return coalesce(key, () -> {
+				synchronized (edits) {
+					roleEdits.remove(role.getID(), merged);
+				}
+				return execute(() -> ((Role) role).edit(merged.color, Optional.empty(), merged.name, merged.permissions, Optional.empty()));
+			});
+		}
+	}
+
+	/**
+	 * Queues an edit, replacing the pending edit with the same key.
+	 *
+	 * @param key The key identifying what is edited.
+	 * @param edit The edit.
+	 * @param <T> The type of the edit's result.
+	 * @return The future of the result of the edit which is executed.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> CompletableFuture<T> coalesce(String key, Callable<CompletableFuture<T>> edit) {
+		synchronized (edits) {
+			if (isShutdown)
+				return DiscordUtils.failedFuture(new IllegalStateException("The request batcher has been shut down!"));
+
+			PendingEdit<T> pending = (PendingEdit<T>) edits.get(key);
+			if (pending != null) {
+				pending.edit = edit;
+				return pending.result;
+			}
+
+			PendingEdit<T> created = new PendingEdit<>(edit);
+			edits.put(key, created);
+			scheduler.schedule(() -> flush(key), window, TimeUnit.MILLISECONDS);
+			return created.result;
+		}
+	}
+
+	private void flush(String key) {
+		PendingEdit<?> pending;
+		synchronized (edits) {
+			pending = edits.remove(key);
+		}
+		if (pending != null)
+			pending.send();
+	}
+
+	private void flush(DeleteBatch batch) {
+		synchronized (deletes) {
+			if (!deletes.remove(batch.channel.getID(), batch)) //Already sent because it was full
+				return;
+		}
+		send(batch);
+	}
+
+	private void send(DeleteBatch batch) {
+		List<IMessage> bulk = new ArrayList<>(batch.messages.size());
+		for (IMessage message : batch.messages) {
+			//Bulk deletes require a bot, a guild channel and messages younger than two weeks
+			if (batch.channel.isPrivate() || !client.isBot() || !MessageList.isBulkDeletable(message))
+				complete(message.deleteAsync(), Collections.singletonList(batch.futures.get(message.getID())));
+			else
+				bulk.add(message);
+		}
+
+		if (bulk.size() == 1) { //Bulk deletes require at least 2 messages
+			complete(bulk.get(0).deleteAsync(), Collections.singletonList(batch.futures.get(bulk.get(0).getID())));
+		} else if (bulk.size() > 1) {
+			CompletableFuture<?> request;
+			try {
+				DiscordUtils.checkPermissions(client, batch.channel, EnumSet.of(Permissions.MANAGE_MESSAGES));
+				request = client.REQUESTS.POST.makeRequestAsync(DiscordEndpoints.CHANNELS+batch.channel.getID()+"/messages/bulk_delete",
+						new StringEntity(DiscordUtils.GSON.toJson(new BulkDeleteRequest(bulk)), "UTF-8"),
+						new BasicNameValuePair("content-type", "application/json"),
+						new BasicNameValuePair("authorization", client.getToken()));
+			} catch (MissingPermissionsException e) {
+				request = DiscordUtils.failedFuture(e);
+			}
+
+			List<CompletableFuture<Void>> futures = new ArrayList<>(bulk.size());
+			for (IMessage message : bulk)
+				futures.add(batch.futures.get(message.getID()));
+			complete(request, futures);
+		}
+
+		Discord4J.LOGGER.trace(LogMarkers.UTIL, "Deleting {} batched messages in channel {} ({} in bulk).", batch.messages.size(),
+				batch.channel.getID(), bulk.size() > 1 ? bulk.size() : 0);
+	}
+
+	/**
+	 * Completes the futures of deleted messages once their request is done.
+	 *
+	 * @param request The request deleting the messages.
+	 * @param futures The futures of the messages.
+	 */
+	private void complete(CompletableFuture<?> request, List<CompletableFuture<Void>> futures) {
+		request.whenComplete((result, error) -> {
+			for (CompletableFuture<Void> future : futures) {
+				if (error != null)
+					future.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+				else
+					future.complete(null);
+			}
+		});
+	}
+
+	/**
+	 * Executes an edit which has no asynchronous request.
+	 *
+	 * @param edit The edit.
+	 * @return The future which completes once the edit is executed.
+	 */
+	private CompletableFuture<Void> execute(IEdit edit) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				edit.execute();
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+
+	/**
+	 * An edit which throws the usual exceptions of a request.
+	 */
+	@FunctionalInterface
+	private interface IEdit {
+		void execute() throws DiscordException, RateLimitException, MissingPermissionsException;
+	}
+
+	/**
+	 * The messages of a channel which are waiting to be deleted.
+	 */
+	private static class DeleteBatch {
+
+		final IChannel channel;
+		final List<IMessage> messages = new ArrayList<>();
+		final Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+
+		DeleteBatch(IChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+	/**
+	 * The attributes of a role changed within a window, attributes which are empty keep their current value.
+	 */
+	private static class RoleEdit {
+
+		Optional<Color> color = Optional.empty();
+		Optional<String> name = Optional.empty();
+		Optional<EnumSet<Permissions>> permissions = Optional.empty();
+	}
+
+	/**
+	 * The last edit with a key, and the future of its result which is shared by all edits it replaced.
+	 */
+	private static class PendingEdit<T> {
+
+		volatile Callable<CompletableFuture<T>> edit;
+		final CompletableFuture<T> result = new CompletableFuture<>();
+
+		PendingEdit(Callable<CompletableFuture<T>> edit) {
+			this.edit = edit;
+		}
+
+		void send() {
+			CompletableFuture<T> request;
+			try {
+				request = edit.call();
+			} catch (Exception e) {
+				request = DiscordUtils.failedFuture(e);
+			}
+
+			request.whenComplete((value, error) -> {
+				if (error != null)
+					result.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+				else
+					result.complete(value);
+			});
+		}
+	}
+}
@@ -2,20 +2,45 @@ package sx.blah.discord.util;
 
 import sx.blah.discord.Discord4J;
 
-import java.util.List;
+import java.util.ArrayDeque;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Queue;
 import java.util.concurrent.*;
 
 /**
  * This is utility class intended to help with dealing with {@link RateLimitException}s by queueing rate-limited
  * operations until they can be sent.
+ * <p>
+ * Rate-limited requests are queued per bucket and retried in order once their rate limit is over. Retries are
+ * executed by a small pool of threads, so a slow request only delays its own bucket.
  */
 public class RequestBuffer {
 
-	private static final Timer requestTimer = new Timer("Request Buffer Timer", true);
-	private static final Map<String, List<RequestFuture>> requests = new ConcurrentHashMap<>();
+	/**
+	 * The maximum amount of buckets which are retried at the same time.
+	 */
+	public static final int MAX_CONCURRENT_RETRIES = 4;
+
+	private static final ScheduledExecutorService requestScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = Executors.defaultThreadFactory().newThread(r);
+		thread.setName("Request Buffer Scheduler");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final ExecutorService retryExecutor;
+	private static final Map<String, Queue<RequestFuture>> requests = new ConcurrentHashMap<>();
+
+	static {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_CONCURRENT_RETRIES, MAX_CONCURRENT_RETRIES, 60,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			Thread thread = Executors.defaultThreadFactory().newThread(r);
+			thread.setName("Request Buffer Retry Executor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		retryExecutor = executor;
+	}
 
 	/**
 	 * Here it is, the magical method that does it all.
@@ -30,12 +55,14 @@ public class RequestBuffer {
 			Discord4J.LOGGER.debug(LogMarkers.UTIL, "Attempted request rate-limited, queueing retry in {}ms",
 					future.getDelay(TimeUnit.MILLISECONDS));
 
-			if (!requests.containsKey(future.getBucket())) {
-				requests.put(future.getBucket(), new CopyOnWriteArrayList<>());
-				requestTimer.schedule(new RequestTimerTask(future.getBucket()), future.getDelay(TimeUnit.MILLISECONDS));
-			}
-
-			requests.get(future.getBucket()).add(future);
+			requests.compute(future.getBucket(), (bucket, queue) -> {
+				if (queue == null) {
+					queue = new ArrayDeque<>();
+					scheduleRetry(bucket, future.getDelay(TimeUnit.MILLISECONDS));
+				}
+				queue.add(future);
+				return queue;
+			});
 		}
 		return future;
 	}
@@ -56,7 +83,48 @@ public class RequestBuffer {
 	 * @return The number of requests killed.
 	 */
 	public static int killAllRequests() {
-		return requestTimer.purge();
+		int killed = 0;
+		for (String bucket : requests.keySet()) {
+			Queue<RequestFuture> queue = requests.remove(bucket);
+			if (queue != null) {
+				for (RequestFuture future : queue)
+					if (future.cancel(false))
+						killed++;
+			}
+		}
+		return killed;
+	}
+
+	private static void scheduleRetry(String bucket, long delay) {
+		requestScheduler.schedule(() -> retryExecutor.execute(() -> retry(bucket)), Math.max(delay, 0), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Retries the requests of a bucket in order, until one of them is rate-limited again.
+	 *
+	 * @param bucket The bucket.
+	 */
+	private static void retry(String bucket) {
+		while (true) {
+			RequestFuture[] head = new RequestFuture[1];
+			requests.computeIfPresent(bucket, (key, queue) -> {
+				while (!queue.isEmpty() && queue.peek().isDone())
+					queue.poll();
+				head[0] = queue.peek();
+				return queue.isEmpty() ? null : queue;
+			});
+
+			if (head[0] == null)
+				return;
+
+			if (!head[0].tryAgain()) {
+				scheduleRetry(bucket, head[0].getDelay(TimeUnit.MILLISECONDS));
+				return;
+			}
+
+			if (head[0].failure != null)
+				Discord4J.LOGGER.error(LogMarkers.UTIL, "Discord4J Internal Exception", head[0].failure);
+		}
 	}
 
 	/**
@@ -107,14 +175,18 @@ public class RequestBuffer {
 		private volatile boolean isDone = false;
 		private volatile boolean cancelled = false;
 		private volatile T value = null;
+		private volatile RuntimeException failure = null;
 		private volatile long timeForNextRequest;
 		private volatile String bucket;
 		private final IRequest<T> request;
+		private final CountDownLatch completion = new CountDownLatch(1);
 
 		public RequestFuture(IRequest<T> request) {
 			this.request = request;
 
 			tryAgain();
+			if (failure != null) //The first attempt is made by the caller, so it should see the exception
+				throw failure;
 		}
 
 		/**
@@ -124,9 +196,11 @@ public class RequestBuffer {
 		 * @return True if cancelled, false if otherwise (like if the request was already executed).
 		 */
 		@Override
-		public boolean cancel(boolean mayInterruptIfRunning) {
-			if (!isDone())
+		public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+			if (!isDone()) {
 				cancelled = true;
+				completion.countDown();
+			}
 			return isCancelled();
 		}
 
@@ -141,31 +215,66 @@ public class RequestBuffer {
 		}
 
 		/**
-		 * Returns whether or not the request has been executed.
+		 * Returns whether or not the request has been executed, failed or been cancelled.
 		 *
-		 * @return True if executed, false if otherwise.
+		 * @return True if executed, failed or cancelled, false if otherwise.
 		 */
 		@Override
 		public boolean isDone() {
-			return isDone;
+			return isDone || cancelled;
 		}
 
 		/**
-		 * Gets the request return value.
+		 * Gets the request return value, waiting until the request has been executed.
 		 *
-		 * @return The value, or null if it hasn't been executed yet.
+		 * @return The value, or null if the current thread was interrupted while waiting (its interrupt flag is set
+		 * again).
+		 *
+		 * @throws CancellationException If the request was cancelled.
+		 * @throws RuntimeException The exception thrown by the request, if it failed.
 		 */
 		@Override
 		public T get() {
-			return value;
+			try {
+				completion.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			return getNow();
 		}
 
 		/**
-		 * NO-OP
+		 * Gets the request return value, waiting until the request has been executed or the timeout expires.
+		 *
+		 * @param timeout The maximum time to wait.
+		 * @param unit The time unit of the timeout.
+		 * @return The value.
+		 *
+		 * @throws InterruptedException If the current thread was interrupted while waiting.
+		 * @throws ExecutionException If the request failed.
+		 * @throws TimeoutException If the request wasn't executed in time.
+		 * @throws CancellationException If the request was cancelled.
 		 */
 		@Override
 		public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-			throw new UnsupportedOperationException();
+			if (!completion.await(timeout, unit))
+				throw new TimeoutException();
+			try {
+				return getNow();
+			} catch (CancellationException e) {
+				throw e;
+			} catch (RuntimeException e) {
+				throw new ExecutionException(e);
+			}
+		}
+
+		private T getNow() {
+			if (isCancelled())
+				throw new CancellationException();
+			if (failure != null)
+				throw failure;
+			return value;
 		}
 
 		/**
@@ -197,61 +306,38 @@ public class RequestBuffer {
 		 */
 		@Override
 		public int compareTo(Delayed o) {
-			return (int) (getDelay(TimeUnit.MILLISECONDS)-o.getDelay(TimeUnit.MILLISECONDS));
+			return Long.compare(getDelay(TimeUnit.MILLISECONDS), o.getDelay(TimeUnit.MILLISECONDS));
 		}
 
 		/**
 		 * Attempts to execute the request. Queues it again if unable.
 		 *
-		 * @return True if successful, false if otherwise.
+		 * @return True if successful (or failed or cancelled), false if it is still rate-limited.
 		 */
 		protected boolean tryAgain() {
 			if (!isCancelled()) {
 				try {
-					value = request.request();
-					timeForNextRequest = -1;
-					isDone = true;
+					T value = request.request();
+					complete(value, null);
 				} catch (RateLimitException e) {
 					timeForNextRequest = System.currentTimeMillis()+e.getRetryDelay();
 					bucket = e.getMethod();
+				} catch (RuntimeException e) {
+					complete(null, e);
 				}
 			}
-			return isDone() || isCancelled();
+			return isDone();
 		}
-	}
 
-	/**
-	 * Manages request futures to ensure it executes the request eventually.
-	 */
-	private static class RequestTimerTask extends TimerTask {
+		private synchronized void complete(T value, RuntimeException failure) {
+			if (cancelled)
+				return;
 
-		private final String bucket;
-
-		private RequestTimerTask(String bucket) {
-			this.bucket = bucket;
-		}
-
-		@Override
-		public void run() {
-			synchronized (requests) {
-				List<RequestFuture> futures = requests.get(bucket);
-				List<RequestFuture> futuresToRetry = new CopyOnWriteArrayList<>();
-
-				futures.forEach((RequestFuture future) -> {
-					if (!future.tryAgain()) {
-						futuresToRetry.add(future);
-					}
-				});
-
-				if (futuresToRetry.size() > 0 && futuresToRetry.get(0).getDelay(TimeUnit.MILLISECONDS) > 0) {
-					requests.replace(bucket, futuresToRetry);
-					synchronized (requestTimer) {
-						requestTimer.schedule(new RequestTimerTask(bucket), futuresToRetry.get(0).getDelay(TimeUnit.MILLISECONDS));
-					}
-				} else {
-					requests.remove(bucket);
-				}
-			}
+			this.value = value;
+			this.failure = failure;
+			timeForNextRequest = -1;
+			isDone = true;
+			completion.countDown();
 		}
 	}
 }
@@ -362,8 +362,7 @@ public class RequestBuilder {
 						}
 						return !failOnException;
 					});
-					while (!futureResult.isDone()) {}
-					result = futureResult.get();
+					result = futureResult.get(); //Blocks until the request has been executed
 				} else {
 					result = action.execute();
 				}
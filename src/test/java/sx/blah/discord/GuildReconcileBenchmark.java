@@ -0,0 +1,98 @@
+package sx.blah.discord;
+
+import sx.blah.discord.api.ClientBuilder;
+import sx.blah.discord.api.IDiscordClient;
+import sx.blah.discord.api.internal.DiscordUtils;
+import sx.blah.discord.api.internal.GuildReconciler;
+import sx.blah.discord.api.internal.json.generic.RoleResponse;
+import sx.blah.discord.api.internal.json.responses.GuildResponse;
+import sx.blah.discord.api.internal.json.responses.PresenceResponse;
+import sx.blah.discord.api.internal.json.responses.UserResponse;
+import sx.blah.discord.handle.impl.obj.Guild;
+
+/**
+ * Measures how long it takes to reconcile a guild create of a large guild with its CACHED copy, like after a
+ * reconnect. The client never logs in, the guild is built from a generated json response.
+ */
+public class GuildReconcileBenchmark {
+
+	private static final String GUILD_ID = "81384788765712384";
+	private static final int MEMBER_COUNT = 100000;
+	private static final int ROLE_COUNT = 50;
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 20;
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args The amount of members (optional, defaults to 100000).
+	 */
+	public static void main(String... args) throws Exception {
+		int memberCount = args.length > 0 ? Integer.parseInt(args[0]) : MEMBER_COUNT;
+		IDiscordClient client = new ClientBuilder().withToken("benchmark").build();
+		GuildResponse json = createGuild(memberCount);
+
+		long start = System.nanoTime();
+		Guild guild = (Guild) DiscordUtils.getGuildFromJSON(client, json);
+		Discord4J.LOGGER.info("Created a guild with {} members in {}ms.", guild.getUsers().size(),
+				(System.nanoTime()-start)/1000000);
+
+		for (int i = 0; i < WARMUP_ROUNDS; i++)
+			GuildReconciler.reconcile(client, guild, json);
+
+		start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++)
+			GuildReconciler.reconcile(client, guild, json);
+		Discord4J.LOGGER.info("Reconciled an unchanged guild in {}ms on average.", (System.nanoTime()-start)/1000000/ROUNDS);
+
+		start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			json.roles[1].permissions ^= 1; //Every round changes a role, so the role is updated again
+			GuildReconciler.reconcile(client, guild, json);
+		}
+		Discord4J.LOGGER.info("Reconciled a guild with a changed role in {}ms on average.", (System.nanoTime()-start)/1000000/ROUNDS);
+	}
+
+	private static GuildResponse createGuild(int memberCount) {
+		GuildResponse json = new GuildResponse();
+		json.id = GUILD_ID;
+		json.name = "Benchmark";
+		json.owner_id = snowflake(0);
+		json.region = "us-east";
+		json.member_count = memberCount;
+
+		json.roles = new RoleResponse[ROLE_COUNT];
+		for (int i = 0; i < ROLE_COUNT; i++) {
+			RoleResponse role = new RoleResponse();
+			role.id = i == 0 ? GUILD_ID : snowflake(memberCount+i); //The @everyone role has the guild's id
+			role.name = i == 0 ? "@everyone" : "Role "+i;
+			role.position = i;
+			json.roles[i] = role;
+		}
+
+		json.members = new GuildResponse.MemberResponse[memberCount];
+		json.presences = new PresenceResponse[(memberCount+9)/10];
+		for (int i = 0; i < memberCount; i++) {
+			UserResponse user = new UserResponse();
+			user.id = snowflake(i);
+			user.username = "User "+i;
+			user.discriminator = String.format("%04d", i%10000);
+
+			json.members[i] = new GuildResponse.MemberResponse(user, new String[]{json.roles[1+i%(ROLE_COUNT-1)].id});
+			json.members[i].joined_at = "2016-01-01T00:00:00.000000+00:00";
+
+			if (i%10 == 0) {
+				PresenceResponse presence = new PresenceResponse();
+				presence.user = new PresenceResponse.UserResponse();
+				presence.user.id = user.id;
+				presence.status = "online";
+				json.presences[i/10] = presence;
+			}
+		}
+		return json;
+	}
+
+	private static String snowflake(long index) {
+		return Long.toString(100000000000000000L+index);
+	}
+}
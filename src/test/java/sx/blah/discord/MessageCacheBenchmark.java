@@ -0,0 +1,88 @@
+package sx.blah.discord;
+
+import sx.blah.discord.api.ClientBuilder;
+import sx.blah.discord.api.IDiscordClient;
+import sx.blah.discord.handle.impl.obj.Channel;
+import sx.blah.discord.handle.impl.obj.Guild;
+import sx.blah.discord.handle.impl.obj.Message;
+import sx.blah.discord.handle.impl.obj.User;
+import sx.blah.discord.handle.obj.IUser;
+import sx.blah.discord.handle.obj.Permissions;
+import sx.blah.discord.handle.obj.Presences;
+import sx.blah.discord.util.MessageList;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures the heap used by the message cache per message, once with plain message objects and once with the compact
+ * message cache. The clients never log in, the messages are generated.
+ */
+public class MessageCacheBenchmark {
+
+	private static final String GUILD_ID = "81384788765712384";
+	private static final int MESSAGE_COUNT = 1000000;
+	private static final int AUTHOR_COUNT = 1000;
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args The amount of messages (optional, defaults to 1000000).
+	 */
+	public static void main(String... args) throws Exception {
+		int messageCount = args.length > 0 ? Integer.parseInt(args[0]) : MESSAGE_COUNT;
+
+		long plain = measure(new ClientBuilder().withToken("benchmark").withLazyMessageHistory(0), messageCount);
+		Discord4J.LOGGER.info("Plain message cache: {} bytes per message.", plain/messageCount);
+
+		long compact = measure(new ClientBuilder().withToken("benchmark").withLazyMessageHistory(0).withCompactMessageCache(), messageCount);
+		Discord4J.LOGGER.info("Compact message cache: {} bytes per message.", compact/messageCount);
+	}
+
+	/**
+	 * Caches the messages in a client built by a builder.
+	 *
+	 * @return The heap (in bytes) used by the cached messages.
+	 */
+	private static long measure(ClientBuilder builder, int messageCount) throws Exception {
+		IDiscordClient client = builder.build();
+		Guild guild = new Guild(client, "Benchmark", GUILD_ID, null, "0", null, 300, "us-east");
+		Channel channel = new Channel(client, "benchmark", GUILD_ID, guild, null, 0, new ConcurrentHashMap<>(),
+				new ConcurrentHashMap<>()) {
+			@Override
+			public long getPermissionsMask(IUser user) { //The client never logs in, so it has no user to check
+				return Permissions.generatePermissionsNumber(EnumSet.allOf(Permissions.class));
+			}
+		};
+		MessageList messages = channel.getMessages();
+		messages.setCacheCapacity(MessageList.UNLIMITED_CAPACITY);
+
+		User[] authors = new User[AUTHOR_COUNT];
+		for (int i = 0; i < authors.length; i++)
+			authors[i] = new User(client, "User "+i, Long.toString(100000000000000000L+i), "0001", null, Presences.ONLINE, false);
+
+		long before = usedMemory();
+		LocalDateTime start = LocalDateTime.now().minusDays(1);
+		for (int i = 0; i < messageCount; i++) {
+			messages.add(new Message(client, Long.toString(200000000000000000L+i), "Benchmark message number "+i,
+					authors[i%authors.length], channel, start.plusNanos(i*1000000L), null, false, new ArrayList<>(),
+					new ArrayList<>(), new ArrayList<>(), false, new ArrayList<>()));
+		}
+		long used = usedMemory()-before;
+
+		if (messages.size() != messageCount)
+			throw new IllegalStateException("Only "+messages.size()+" of "+messageCount+" messages were cached!");
+		return used;
+	}
+
+	private static long usedMemory() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory()-runtime.freeMemory();
+	}
+}